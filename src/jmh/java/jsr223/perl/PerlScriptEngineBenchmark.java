@@ -0,0 +1,146 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl;
+
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.CharStreams;
+
+import processbuilder.PerlProcessLauncher;
+
+
+/**
+ * Measures a whole evaluation: script delivery, environment, fork and exec, stream pumping and cleanup.
+ * Configuration properties are set as system properties, so that the execution modes and script deliveries
+ * are compared with the JMH parameters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PerlScriptEngineBenchmark {
+
+    private static final String TRIVIAL_SCRIPT = "my $sum = 1 + 1;";
+
+    private static final String LARGE_OUTPUT_SCRIPT = "print \"line $_ of the benchmark output\\n\" for 1 .. 100000;";
+
+    private static final String BINDINGS_SCRIPT = "print $ENV{variables_KEY_1};";
+
+    private static final int LARGE_BINDINGS_SIZE = 10000;
+
+    @Param({ "process", "pool" })
+    public String executionMode;
+
+    @Param({ "file" })
+    public String scriptDelivery;
+
+    @Param({ "environment" })
+    public String bindingsTransport;
+
+    @Param({ "default" })
+    public String processLauncher;
+
+    private PerlScriptEngine perlScriptEngine;
+
+    private ScriptContext context;
+
+    private ScriptContext largeBindingsContext;
+
+    @Setup
+    public void setUp() {
+        System.setProperty(PerlExecutionMode.EXECUTION_MODE_PROPERTY, executionMode);
+        System.setProperty("perl.script.delivery", scriptDelivery);
+        System.setProperty("perl.bindings.transport", bindingsTransport);
+        System.setProperty(PerlProcessLauncher.LAUNCHER_PROPERTY, processLauncher);
+        perlScriptEngine = new PerlScriptEngine();
+        context = createContext(0);
+        largeBindingsContext = createContext(LARGE_BINDINGS_SIZE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.clearProperty(PerlExecutionMode.EXECUTION_MODE_PROPERTY);
+        System.clearProperty("perl.script.delivery");
+        System.clearProperty("perl.bindings.transport");
+        System.clearProperty(PerlProcessLauncher.LAUNCHER_PROPERTY);
+    }
+
+    @Benchmark
+    public Object trivialScript() throws ScriptException {
+        return perlScriptEngine.eval(TRIVIAL_SCRIPT, context);
+    }
+
+    @Benchmark
+    public Object largeOutput() throws ScriptException {
+        return perlScriptEngine.eval(LARGE_OUTPUT_SCRIPT, context);
+    }
+
+    @Benchmark
+    public Object largeBindings() throws ScriptException {
+        return perlScriptEngine.eval(BINDINGS_SCRIPT, largeBindingsContext);
+    }
+
+    private ScriptContext createContext(int variableCount) {
+        Map<String, Serializable> variables = new HashMap<>();
+        for (int i = 0; i < variableCount; i++) {
+            variables.put("KEY_" + i, "value of the benchmark variable " + i);
+        }
+        Bindings bindings = perlScriptEngine.createBindings();
+        bindings.put("variables", variables);
+
+        Writer output = CharStreams.nullWriter();
+        ScriptContext scriptContext = new SimpleScriptContext();
+        scriptContext.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+        scriptContext.setWriter(output);
+        scriptContext.setErrorWriter(output);
+        scriptContext.setReader(null);
+        return scriptContext;
+    }
+}
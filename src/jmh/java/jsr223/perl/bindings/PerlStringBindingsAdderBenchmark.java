@@ -0,0 +1,94 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.bindings;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Measures the flattening of a variables map to environment variables, directly and through the cache an
+ * engine keeps between evaluations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PerlStringBindingsAdderBenchmark {
+
+    @Param({ "10", "1000", "100000" })
+    public int entries;
+
+    private final PerlStringBindingsAdder perlStringBindingsAdder = new PerlStringBindingsAdder();
+
+    private final PerlBindingsEnvironmentCache perlBindingsEnvironmentCache = new PerlBindingsEnvironmentCache(
+            perlStringBindingsAdder);
+
+    private Bindings bindings;
+
+    @Setup
+    public void setUp() {
+        Map<String, String> variables = new HashMap<>();
+        for (int i = 0; i < entries; i++) {
+            variables.put("KEY_" + i, "value of the benchmark variable " + i);
+        }
+        bindings = new SimpleBindings();
+        bindings.put("variables", variables);
+        bindings.put("args", new String[] { "first", "second" });
+    }
+
+    @Benchmark
+    public Map<String, String> addBindingToStringMap() {
+        Map<String, String> environment = new HashMap<>();
+        perlStringBindingsAdder.addBindingToStringMap(bindings, environment);
+        return environment;
+    }
+
+    @Benchmark
+    public Map<String, String> addUnchangedBindingsFromCache() {
+        Map<String, String> environment = new HashMap<>();
+        perlBindingsEnvironmentCache.addBindingsToEnvironment(bindings, environment);
+        return environment;
+    }
+}
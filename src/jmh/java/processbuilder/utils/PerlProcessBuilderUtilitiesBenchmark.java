@@ -0,0 +1,79 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package processbuilder.utils;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.CharStreams;
+
+
+/**
+ * Measures the throughput of the pipe used by the stream pumps, in pipes of 16 MB of text per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PerlProcessBuilderUtilitiesBenchmark {
+
+    private static final int CONTENT_LENGTH = 16 * 1024 * 1024;
+
+    @Param({ "LINE", "BUFFER", "EXIT" })
+    public PerlFlushPolicy flushPolicy;
+
+    private char[] content;
+
+    @Setup
+    public void setUp() {
+        content = new char[CONTENT_LENGTH];
+        Arrays.fill(content, 'x');
+        for (int i = 79; i < CONTENT_LENGTH; i += 80) {
+            content[i] = '\n';
+        }
+    }
+
+    @Benchmark
+    public void pipe() throws IOException {
+        PerlProcessBuilderUtilities.pipe(new CharArrayReader(content), CharStreams.nullWriter(), flushPolicy);
+    }
+}
@@ -27,8 +27,10 @@ package jsr223.perl;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import jsr223.perl.limits.PerlResourceLimits;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 
@@ -39,6 +41,10 @@ public class PerlCommandCreator {
 
     private static final String PERL_COMMAND = "perl";
 
+    private static final String SHELL_COMMAND = "sh";
+
+    private static final String SESSION_COMMAND = "setsid";
+
     /**
      * This method creates a bash command which executes perl with a given perl file.
      *
@@ -57,6 +63,139 @@ public class PerlCommandCreator {
         return command.toArray(new String[command.size()]);
     }
 
+    /**
+     * This method creates a command which executes perl with a script read from its standard input.
+     *
+     * @return A String array which contains the command as a separate @String and each
+     * argument as a separate String.
+     */
+    public String[] createPerlStandardInputExecutionCommand() {
+        List<String> command = new ArrayList<>();
+
+        // Add perl command
+        command.add(PERL_COMMAND);
+
+        // Read the script from standard input
+        command.add("-");
+
+        return command.toArray(new String[command.size()]);
+    }
+
+    /**
+     * This method creates a command which executes perl with the given code passed through the -e switch.
+     *
+     * @param perlCode  Perl code to execute.
+     * @param arguments Arguments made available to the code in @ARGV.
+     * @return A String array which contains the command as a separate @String and each
+     * argument as a separate String.
+     */
+    public String[] createPerlEvaluationCommand(String perlCode, String... arguments) {
+        List<String> command = new ArrayList<>();
+
+        // Add perl command
+        command.add(PERL_COMMAND);
+
+        // Add code to evaluate
+        command.add("-e");
+        command.add(perlCode);
+
+        // Add arguments
+        for (String argument : arguments) {
+            command.add(argument);
+        }
+
+        return command.toArray(new String[command.size()]);
+    }
+
+    /**
+     * This method creates a command which checks the syntax of a given perl file, without executing it.
+     *
+     * @return A String array which contains the command as a separate @String and each
+     * argument as a separate String.
+     */
+    public String[] createPerlSyntaxCheckCommand(File perlFile) {
+        List<String> command = new ArrayList<>();
+
+        // Add perl command
+        command.add(PERL_COMMAND);
+
+        // Compile only
+        command.add("-c");
+
+        // Add filename
+        command.add(perlFile.getPath());
+
+        return command.toArray(new String[command.size()]);
+    }
+
+    /**
+     * This method creates a command which loads a module before executing a given perl command, with the -M
+     * switch.
+     *
+     * @param perlCommand Command created by one of the perl command methods.
+     * @param module      Name of the module.
+     * @return A String array which contains the command as a separate @String and each
+     * argument as a separate String.
+     */
+    public String[] createModuleLoadingCommand(String[] perlCommand, String module) {
+        List<String> command = new ArrayList<>();
+
+        // Add perl command
+        command.add(perlCommand[0]);
+
+        // Load the module before the script
+        command.add("-M" + module);
+
+        // Add the remaining switches and arguments
+        command.addAll(Arrays.asList(perlCommand).subList(1, perlCommand.length));
+
+        return command.toArray(new String[command.size()]);
+    }
+
+    /**
+     * This method creates a command which applies resource limits with the ulimit builtin of sh, then replaces
+     * the shell with a given command.
+     *
+     * @param perlCommand Command created by one of the perl command methods.
+     * @param limits      Limits to apply.
+     * @return A String array which contains the command as a separate @String and each
+     * argument as a separate String.
+     */
+    public String[] createResourceLimitedCommand(String[] perlCommand, PerlResourceLimits limits) {
+        List<String> command = new ArrayList<>();
+
+        // Add shell command
+        command.add(SHELL_COMMAND);
+        command.add("-c");
+        command.add(limits.toUlimitCommands() + " && exec \"$@\"");
+
+        // Name of the shell ($0), the perl command follows as "$@"
+        command.add(PERL_COMMAND);
+        command.addAll(Arrays.asList(perlCommand));
+
+        return command.toArray(new String[command.size()]);
+    }
+
+    /**
+     * This method creates a command which executes a given command as the leader of a new session and process
+     * group, with setsid. The process group id is the pid of the started process.
+     *
+     * @param perlCommand Command created by one of the perl command methods.
+     * @return A String array which contains the command as a separate @String and each
+     * argument as a separate String.
+     */
+    public String[] createSessionLeaderCommand(String[] perlCommand) {
+        List<String> command = new ArrayList<>();
+
+        // Add setsid command
+        command.add(SESSION_COMMAND);
+
+        // Add the command run in the new session
+        command.addAll(Arrays.asList(perlCommand));
+
+        return command.toArray(new String[command.size()]);
+    }
+
     public static String getPerlCommand() {
         return PERL_COMMAND;
     }
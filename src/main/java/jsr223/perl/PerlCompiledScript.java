@@ -0,0 +1,150 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl;
+
+import java.io.Closeable;
+import java.lang.ref.Reference;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+import com.google.common.base.FinalizablePhantomReference;
+import com.google.common.base.FinalizableReferenceQueue;
+import com.google.common.collect.Sets;
+
+import jsr223.perl.bindings.PerlBindingsEnvironmentCache;
+import jsr223.perl.file.cache.PerlScriptCache;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j;
+
+
+/**
+ * A perl script prepared by {@link PerlScriptEngine#compile(String)}: its syntax is checked, its file is kept in
+ * the script cache and its command line is built once. The bindings flattened to environment variables are kept
+ * between evaluations, so an evaluation only flattens the bindings which changed before starting perl.
+ *
+ * The script file is held until the compiled script is closed, or garbage collected if it is not. Each running
+ * evaluation holds the file as well, so closing a compiled script does not affect running evaluations. When
+ * perl.script.cache.enabled is false the file is deleted once it is not held anymore.
+ */
+@Log4j
+public class PerlCompiledScript extends CompiledScript implements Closeable {
+
+    private static final FinalizableReferenceQueue REFERENCE_QUEUE = new FinalizableReferenceQueue();
+
+    // Keeps the cleanups reachable until their compiled script is closed or garbage collected
+    private static final Set<Reference<?>> CLEANUPS = Sets.newConcurrentHashSet();
+
+    private final PerlScriptEngine engine;
+
+    @Getter(AccessLevel.PACKAGE)
+    private final String script;
+
+    @Getter(AccessLevel.PACKAGE)
+    private final PerlScriptCache.CachedScript cachedScript;
+
+    @Getter(AccessLevel.PACKAGE)
+    private final String[] command;
+
+    @Getter(AccessLevel.PACKAGE)
+    private final PerlBindingsEnvironmentCache bindingsCache;
+
+    private final Cleanup cleanup;
+
+    PerlCompiledScript(PerlScriptEngine engine, String script, PerlScriptCache.CachedScript cachedScript,
+            String[] command, PerlBindingsEnvironmentCache bindingsCache) {
+        this.engine = engine;
+        this.script = script;
+        this.cachedScript = cachedScript;
+        this.command = command;
+        this.bindingsCache = bindingsCache;
+        this.cleanup = new Cleanup(this, cachedScript);
+        CLEANUPS.add(cleanup);
+    }
+
+    /**
+     * @throws ScriptException If the compiled script is closed, or if the evaluation fails.
+     */
+    @Override
+    public Object eval(ScriptContext context) throws ScriptException {
+        if (isClosed()) {
+            throw new ScriptException("Compiled perl script is closed.");
+        }
+        return engine.evalCompiled(this, context);
+    }
+
+    @Override
+    public ScriptEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Gives back the script file held by this compiled script, which cannot be evaluated anymore.
+     */
+    @Override
+    public void close() {
+        cleanup.clear();
+        cleanup.release();
+    }
+
+    public boolean isClosed() {
+        return cleanup.released.get();
+    }
+
+    /**
+     * Releases the script file of a compiled script when it is closed or garbage collected. It must not refer to
+     * the compiled script, which would then never be collected.
+     */
+    private static class Cleanup extends FinalizablePhantomReference<PerlCompiledScript> {
+
+        private final PerlScriptCache.CachedScript cachedScript;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Cleanup(PerlCompiledScript compiledScript, PerlScriptCache.CachedScript cachedScript) {
+            super(compiledScript, REFERENCE_QUEUE);
+            this.cachedScript = cachedScript;
+        }
+
+        @Override
+        public void finalizeReferent() {
+            log.debug("Compiled perl script " + cachedScript.getHash() + " was not closed, its file is released.");
+            release();
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                CLEANUPS.remove(this);
+                PerlScriptCache.getInstance().release(cachedScript);
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.script.ScriptException;
+
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import jsr223.perl.metrics.PerlPhase;
+import jsr223.perl.utils.PerlPropertyLoader;
+import lombok.extern.log4j.Log4j;
+import processbuilder.utils.PerlProcessBuilderUtilities;
+
+
+/**
+ * Asynchronous evaluation of a script in a perl process, done once the process has exited and its output
+ * has been piped. No thread waits for the process: a shared watchdog checks it as soon as its output ends,
+ * and every perl.eval.poll.interval.ms milliseconds (default: 10) in case the output is held open.
+ *
+ * On timeout or cancellation the process is asked to terminate, and killed forcibly if still alive after
+ * perl.eval.termination.grace.ms milliseconds (default: 5000). The files of the execution are released once
+ * the process has exited.
+ */
+@Log4j
+abstract class PerlProcessEvaluation extends AbstractFuture<Object> {
+
+    static final String POLL_INTERVAL_PROPERTY = "perl.eval.poll.interval.ms";
+
+    static final String TERMINATION_GRACE_PROPERTY = "perl.eval.termination.grace.ms";
+
+    /**
+     * Shared by all evaluations, it only runs short checks and the completion of evaluations.
+     *
+     * WatchdogHolder is loaded on the first asynchronous evaluation, not before.
+     */
+    private static class WatchdogHolder {
+        private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder().setDaemon(true)
+                                                                                      .setNameFormat("perl-eval-watchdog-%d")
+                                                                                      .build();
+
+        private static final ScheduledThreadPoolExecutor INSTANCE = new ScheduledThreadPoolExecutor(2, THREAD_FACTORY);
+
+        static {
+            INSTANCE.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    private final PerlProcessExecution execution;
+
+    private final long timeoutMillis;
+
+    private volatile ScheduledFuture<?> processCheck;
+
+    private volatile ScheduledFuture<?> timeoutTask;
+
+    private long drainDeadlineMillis = -1;
+
+    private boolean exited;
+
+    PerlProcessEvaluation(PerlProcessExecution execution, long timeoutMillis) {
+        this.execution = execution;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    static ScheduledExecutorService getWatchdog() {
+        return WatchdogHolder.INSTANCE;
+    }
+
+    /**
+     * Computes the result of the evaluation, once the process has exited and its output has been piped.
+     *
+     * @param exitValue Exit value of the process.
+     * @return The result of the evaluation.
+     * @throws ScriptException If the evaluation failed.
+     */
+    protected abstract Object complete(int exitValue) throws ScriptException;
+
+    /**
+     * Starts watching the started process of the execution.
+     */
+    synchronized void watch() {
+        Runnable check = new Runnable() {
+            @Override
+            public void run() {
+                checkProcess();
+            }
+        };
+        long pollInterval = PerlPropertyLoader.getInstance().getLongProperty(POLL_INTERVAL_PROPERTY, 10);
+        processCheck = getWatchdog().scheduleWithFixedDelay(check, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+        execution.getProcessStreams().getOutputCompletion().addListener(check, getWatchdog());
+        if (timeoutMillis > 0) {
+            timeoutTask = getWatchdog().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    execution.getMetrics().setTimedOut(true);
+                    setException(new TimeoutException("Perl script execution timed out after " + timeoutMillis +
+                                                      " ms."));
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void checkProcess() {
+        Process process = execution.getProcess();
+        if (process.isAlive() || processCheck.isCancelled()) {
+            return;
+        }
+        if (!exited) {
+            exited = true;
+            execution.getMetrics().mark(PerlPhase.EXECUTION);
+        }
+        if (!isDone()) {
+            if (!execution.getProcessStreams().isOutputDone()) {
+                // Children started in background may hold the output, they are given the drain timeout
+                long now = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+                if (drainDeadlineMillis < 0) {
+                    drainDeadlineMillis = now + PerlProcessBuilderUtilities.getDrainTimeoutMillis();
+                }
+                if (now < drainDeadlineMillis) {
+                    return;
+                }
+                log.warn("Perl process output was not completely read " +
+                         PerlProcessBuilderUtilities.getDrainTimeoutMillis() +
+                         " ms after the process exit, a child process may still hold it.");
+            }
+            execution.getMetrics().mark(PerlPhase.OUTPUT_DRAIN);
+            Object result = null;
+            Throwable failure = null;
+            try {
+                result = complete(process.exitValue());
+            } catch (ScriptException | RuntimeException e) {
+                failure = e;
+            }
+            // Released before completing the future, so that the metrics are in the variables map
+            processCheck.cancel(false);
+            execution.release();
+            if (failure == null) {
+                set(result);
+            } else {
+                setException(failure);
+            }
+            return;
+        }
+        processCheck.cancel(false);
+        execution.release();
+    }
+
+    @Override
+    protected void afterDone() {
+        if (timeoutTask != null) {
+            timeoutTask.cancel(false);
+        }
+        // A timed out or cancelled evaluation terminates its process, released by the next check after its exit
+        execution.terminate(getWatchdog(),
+                            PerlPropertyLoader.getInstance().getLongProperty(TERMINATION_GRACE_PROPERTY, 5000));
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.script.ScriptContext;
+
+import org.ow2.proactive.scheduler.common.SchedulerConstants;
+import org.ow2.proactive.scheduler.task.SchedulerVars;
+import org.ow2.proactive.utils.CookieBasedProcessTreeKiller;
+
+import jsr223.perl.file.cache.PerlScriptCache;
+import jsr223.perl.metrics.PerlEvaluationMetrics;
+import jsr223.perl.metrics.PerlMetricsRegistry;
+import jsr223.perl.metrics.PerlPhase;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.log4j.Log4j;
+import processbuilder.utils.PerlByteInput;
+import processbuilder.utils.PerlProcessBuilderUtilities;
+import processbuilder.utils.PerlProcessGroupKiller;
+import processbuilder.utils.PerlProcessRegistry;
+import processbuilder.utils.PerlProcessStreams;
+import processbuilder.utils.PerlStreamSinks;
+
+
+/**
+ * A perl process started by the {@link PerlScriptEngine} for one evaluation, together with the files and
+ * registration to release once it has exited, and the metrics of the evaluation. The engine fills it while
+ * preparing the process, so that a failed preparation releases what was already created.
+ */
+@Log4j
+@Getter(AccessLevel.PACKAGE)
+@Setter(AccessLevel.PACKAGE)
+class PerlProcessExecution {
+
+    private final ScriptContext context;
+
+    private final PerlEvaluationMetrics metrics = new PerlEvaluationMetrics();
+
+    private File perlFile;
+
+    private PerlScriptCache.CachedScript cachedScript;
+
+    private File bindingsFile;
+
+    private File resultsFile;
+
+    private File usageFile;
+
+    private CookieBasedProcessTreeKiller processTreeKiller;
+
+    private PerlProcessGroupKiller processGroupKiller;
+
+    private Process process;
+
+    private PerlProcessStreams processStreams;
+
+    private PerlStreamSinks streamSinks = PerlStreamSinks.fromBindings(null);
+
+    private PerlProcessRegistry.Registration registration;
+
+    @Getter(AccessLevel.NONE)
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    PerlProcessExecution(ScriptContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Starts the process, registers it in the {@link PerlProcessRegistry} and attaches the streams of the context.
+     */
+    void start(ProcessBuilder processBuilder, PerlProcessBuilderUtilities processBuilderUtilities)
+            throws IOException {
+        long spawnStart = System.nanoTime();
+        process = processBuilder.start();
+        PerlMetricsRegistry.getInstance().recordSpawn(System.nanoTime() - spawnStart);
+        PerlMetricsRegistry.getInstance().processStarted();
+        if (processGroupKiller != null) {
+            processGroupKiller.track(process);
+        }
+
+        registration = PerlProcessRegistry.getInstance().register(getTaskName(context),
+                                                                  process,
+                                                                  processTreeKiller,
+                                                                  processGroupKiller);
+
+        // Attach streams, the standard input of perl is already redirected to a file input
+        Reader input = PerlByteInput.getFile(context.getReader()) == null ? context.getReader() : null;
+        // Bytes are counted as they are read from the process, whatever the sink
+        processStreams = processBuilderUtilities.attachStreamsToProcess(process,
+                                                                        metrics.countOutput(process.getInputStream()),
+                                                                        metrics.countError(process.getErrorStream()),
+                                                                        context.getWriter(),
+                                                                        context.getErrorWriter(),
+                                                                        input,
+                                                                        streamSinks);
+        metrics.mark(PerlPhase.PROCESS_START);
+    }
+
+    /**
+     * Asks the process to terminate, with SIGTERM on Unix, and kills it forcibly if it is still alive after
+     * the grace period.
+     *
+     * @param scheduler         Scheduler of the forcible kill.
+     * @param gracePeriodMillis Time given to the process to terminate.
+     */
+    void terminate(ScheduledExecutorService scheduler, final long gracePeriodMillis) {
+        final Process terminatedProcess = process;
+        if (terminatedProcess == null || !terminatedProcess.isAlive()) {
+            return;
+        }
+        terminatedProcess.destroy();
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (terminatedProcess.isAlive()) {
+                    log.warn("Perl process did not terminate within " + gracePeriodMillis + " ms, it is killed.");
+                    terminatedProcess.destroyForcibly();
+                }
+            }
+        }, gracePeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Deletes the files of the execution, unregisters the process, kills the remaining children of the
+     * process and records the metrics of the evaluation. Only the first call has an effect.
+     */
+    void release() {
+        if (!released.compareAndSet(false, true)) {
+            return;
+        }
+        // Delete configuration file, a cached file is kept for the next executions
+        if (cachedScript != null) {
+            PerlScriptCache.getInstance().release(cachedScript);
+        } else if (perlFile != null) {
+            boolean deleted = perlFile.delete();
+            if (!deleted) {
+                log.warn("File: " + perlFile.getAbsolutePath() + " was not deleted.");
+            }
+        }
+        deleteFile(bindingsFile);
+        deleteFile(resultsFile);
+        deleteFile(usageFile);
+        if (registration != null) {
+            registration.unregister();
+        }
+        if (processTreeKiller != null) {
+            processTreeKiller.kill();
+        }
+        if (processGroupKiller != null) {
+            processGroupKiller.kill();
+        }
+        if (process != null) {
+            PerlMetricsRegistry.getInstance().processEnded();
+            // Output redirected to file sinks is not read by the engine, the files hold all of it
+            if (streamSinks.getOutput() instanceof File) {
+                metrics.addOutputBytes(((File) streamSinks.getOutput()).length());
+            }
+            if (streamSinks.getError() instanceof File && !streamSinks.getError().equals(streamSinks.getOutput())) {
+                metrics.addErrorBytes(((File) streamSinks.getError()).length());
+            }
+        }
+        metrics.mark(PerlPhase.CLEANUP);
+        PerlMetricsRegistry.getInstance().record(metrics, getVariables(context));
+    }
+
+    /**
+     * @return The variables map of the context, or null if it has none.
+     */
+    static Map<String, Serializable> getVariables(ScriptContext context) {
+        Object variables = context.getBindings(ScriptContext.ENGINE_SCOPE)
+                                  .get(SchedulerConstants.VARIABLES_BINDING_NAME);
+        return variables instanceof Map ? (Map<String, Serializable>) variables : null;
+    }
+
+    /**
+     * Deletes a file of the execution, if it exists.
+     */
+    static void deleteFile(File file) {
+        if (file != null && file.exists() && !file.delete()) {
+            log.warn("File: " + file.getAbsolutePath() + " was not deleted.");
+        }
+    }
+
+    /**
+     * @return The job and task ids of the scheduler task running the script, or "perl" outside of a task.
+     */
+    static String getTaskName(ScriptContext context) {
+        Map<String, Serializable> variables = getVariables(context);
+        if (variables == null || variables.get(SchedulerVars.PA_JOB_ID.toString()) == null) {
+            return "perl";
+        }
+        return "Job" + variables.get(SchedulerVars.PA_JOB_ID.toString()) + "Task" +
+               variables.get(SchedulerVars.PA_TASK_ID.toString());
+    }
+}
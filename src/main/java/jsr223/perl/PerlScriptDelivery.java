@@ -0,0 +1,91 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl;
+
+import jsr223.perl.utils.PerlPropertyLoader;
+
+
+/**
+ * Defines how the script source is handed to a new perl process. Configured with the perl.script.delivery
+ * property.
+ */
+public enum PerlScriptDelivery {
+
+    /**
+     * The script is written to a temporary file which perl executes (default).
+     */
+    FILE,
+
+    /**
+     * The script is streamed to the standard input of perl -. Falls back to FILE when the script context
+     * has a reader, as the process standard input is then bound to that reader.
+     */
+    STDIN,
+
+    /**
+     * The script is passed with perl -e. Falls back to FILE when the script is longer than
+     * perl.script.argument.max.length characters. Note that __DATA__ sections are not available with -e.
+     */
+    ARGUMENT;
+
+    public static final String SCRIPT_DELIVERY_PROPERTY = "perl.script.delivery";
+
+    public static final String ARGUMENT_MAX_LENGTH_PROPERTY = "perl.script.argument.max.length";
+
+    // Stays below the Linux limit of a single command line argument (128 KB)
+    private static final int DEFAULT_ARGUMENT_MAX_LENGTH = 32768;
+
+    /**
+     * Selects the delivery for a script, taking the fallbacks of the configured delivery into account.
+     *
+     * @param script   The script which will be executed.
+     * @param hasInput True if the process standard input is needed for the script context reader.
+     * @return The delivery to use for this script.
+     */
+    public static PerlScriptDelivery forScript(String script, boolean hasInput) {
+        PerlPropertyLoader properties = PerlPropertyLoader.getInstance();
+        PerlScriptDelivery delivery = properties.getEnumProperty(SCRIPT_DELIVERY_PROPERTY, FILE);
+        if (delivery == STDIN && hasInput) {
+            return FILE;
+        }
+        if (delivery == ARGUMENT &&
+            script.length() > properties.getIntProperty(ARGUMENT_MAX_LENGTH_PROPERTY, DEFAULT_ARGUMENT_MAX_LENGTH)) {
+            return FILE;
+        }
+        return delivery;
+    }
+
+    /**
+     * Selects the delivery for a script read from a stream. Its length is unknown, so ARGUMENT falls back to FILE.
+     *
+     * @param hasInput True if the process standard input is needed for the script context reader.
+     * @return The delivery to use for the streamed script.
+     */
+    public static PerlScriptDelivery forStream(boolean hasInput) {
+        PerlScriptDelivery delivery = PerlPropertyLoader.getInstance().getEnumProperty(SCRIPT_DELIVERY_PROPERTY, FILE);
+        return delivery == STDIN && !hasInput ? STDIN : FILE;
+    }
+}
@@ -27,195 +27,908 @@ package jsr223.perl;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Serializable;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.script.AbstractScriptEngine;
 import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngineFactory;
 import javax.script.ScriptException;
-import javax.script.SimpleBindings;
+import javax.script.SimpleScriptContext;
 
 import org.ow2.proactive.scheduler.common.SchedulerConstants;
 import org.ow2.proactive.scheduler.task.SchedulerVars;
 import org.ow2.proactive.utils.CookieBasedProcessTreeKiller;
 
+import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.AsyncCallable;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import jsr223.perl.batch.PerlBatchResult;
+import jsr223.perl.batch.PerlBatchScript;
+import jsr223.perl.bindings.PerlBindings;
+import jsr223.perl.bindings.PerlBindingsEnvironmentCache;
+import jsr223.perl.bindings.PerlBindingsFilter;
+import jsr223.perl.bindings.PerlBindingsTransport;
+import jsr223.perl.bindings.PerlJsonBindingsWriter;
+import jsr223.perl.bindings.PerlResultsReader;
 import jsr223.perl.bindings.PerlStringBindingsAdder;
+import jsr223.perl.file.cache.PerlScriptCache;
 import jsr223.perl.file.write.PerlScriptFileWriter;
+import jsr223.perl.limits.PerlResourceLimits;
+import jsr223.perl.limits.PerlResourceUsageReader;
+import jsr223.perl.metrics.PerlEvaluationMetrics;
+import jsr223.perl.metrics.PerlMetricsRegistry;
+import jsr223.perl.metrics.PerlPhase;
+import jsr223.perl.pool.PerlWorkerPool;
+import jsr223.perl.utils.PerlHelperModules;
 import jsr223.perl.utils.PerlLog4jConfigurationLoader;
+import jsr223.perl.utils.PerlPropertyLoader;
+import jsr223.perl.utils.PerlSyntaxChecker;
 import lombok.extern.log4j.Log4j;
-import processbuilder.PerlSingletonPerlProcessBuilderFactory;
+import processbuilder.PerlProcessLauncher;
+import processbuilder.PerlProcessTreeTracking;
+import processbuilder.utils.PerlByteInput;
+import processbuilder.utils.PerlOutputStage;
 import processbuilder.utils.PerlProcessBuilderUtilities;
+import processbuilder.utils.PerlProcessGroupKiller;
+import processbuilder.utils.PerlProcessStreams;
+import processbuilder.utils.PerlStreamSinks;
 
 
 @Log4j
-public class PerlScriptEngine extends AbstractScriptEngine {
+public class PerlScriptEngine extends AbstractScriptEngine implements Compilable {
 
     public static final String EXIT_VALUE_BINDING_NAME = "EXIT_VALUE";
 
-    private PerlProcessBuilderUtilities processBuilderUtilities = new PerlProcessBuilderUtilities();
+    public static final String EVAL_TIMEOUT_PROPERTY = "perl.eval.timeout.ms";
 
-    private PerlScriptFileWriter perlScriptFileWriter = new PerlScriptFileWriter();
+    public static final String BATCH_PARALLELISM_PROPERTY = "perl.batch.parallelism";
 
-    private PerlStringBindingsAdder perlStringBindingsAdder = new PerlStringBindingsAdder();
+    private static final ScriptEngineFactory FACTORY = new PerlScriptEngineFactory();
 
-    private PerlCommandCreator perlCommandCreator = new PerlCommandCreator();
+    /**
+     * Executes the asynchronous evaluations of pool mode, which block a thread on the worker.
+     *
+     * AsyncEvaluationExecutorHolder is loaded on the first asynchronous evaluation in pool mode, not before.
+     */
+    private static class AsyncEvaluationExecutorHolder {
+        private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder().setDaemon(true)
+                                                                                      .setNameFormat("perl-async-eval-%d")
+                                                                                      .build();
 
-    private PerlLog4jConfigurationLoader perlLog4JConfigurationLoader = new PerlLog4jConfigurationLoader();
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(THREAD_FACTORY);
+
+        private static final ListeningExecutorService INSTANCE = MoreExecutors.listeningDecorator(EXECUTOR);
+    }
+
+    // Stateless collaborators, shared by all engines
+    private static final PerlProcessBuilderUtilities PROCESS_BUILDER_UTILITIES = new PerlProcessBuilderUtilities();
+
+    private static final PerlScriptFileWriter SCRIPT_FILE_WRITER = new PerlScriptFileWriter();
+
+    private static final PerlStringBindingsAdder STRING_BINDINGS_ADDER = new PerlStringBindingsAdder();
+
+    private static final PerlJsonBindingsWriter JSON_BINDINGS_WRITER = new PerlJsonBindingsWriter();
+
+    private static final PerlResultsReader RESULTS_READER = new PerlResultsReader();
+
+    private static final PerlCommandCreator COMMAND_CREATOR = new PerlCommandCreator();
+
+    private static final PerlResourceUsageReader RESOURCE_USAGE_READER = new PerlResourceUsageReader();
+
+    private final PerlBindingsFilter perlBindingsFilter = PerlBindingsFilter.fromConfiguration();
+
+    // Synchronized, concurrent evaluations of the engine flatten their bindings one at a time
+    private final PerlBindingsEnvironmentCache perlBindingsCache;
 
     public PerlScriptEngine() {
         // This is the entry-point of the script engine
-        perlLog4JConfigurationLoader.loadLog4jConfiguration();
+        PerlLog4jConfigurationLoader.loadLog4jConfigurationOnce();
+        perlBindingsCache = new PerlBindingsEnvironmentCache(STRING_BINDINGS_ADDER);
+        // Concurrent evaluations with the default context share its engine scope bindings
+        context.setBindings(createBindings(), ScriptContext.ENGINE_SCOPE);
     }
 
     @Override
     public Object eval(String script, ScriptContext context) throws ScriptException {
+        return eval(script, null, context);
+    }
 
-        File perlFile = null;
+    /**
+     * Evaluates a script compiled by this engine, with its prepared command and flattened bindings.
+     */
+    Object evalCompiled(PerlCompiledScript compiledScript, ScriptContext context) throws ScriptException {
+        return eval(compiledScript.getScript(), compiledScript, context);
+    }
+
+    /**
+     * @param compiledScript Compiled script, or null.
+     */
+    private Object eval(String script, PerlCompiledScript compiledScript, ScriptContext context)
+            throws ScriptException {
+        if (PerlExecutionMode.getConfiguredMode() == PerlExecutionMode.POOL) {
+            return evalInWorkerPool(script, compiledScript, context);
+        }
+
+        return waitForProcess(startProcess(script, compiledScript, context), context);
+    }
+
+    /**
+     * Waits for a started process to exit and completes its evaluation.
+     */
+    private Object waitForProcess(PerlProcessExecution execution, ScriptContext context) throws ScriptException {
+        Process process = execution.getProcess();
         try {
-            perlFile = perlScriptFileWriter.forceFileToDisk(script);
-        } catch (IOException e) {
-            log.warn("Failed to write content to perl file.", e);
+            // Wait for process to exit
+            int exitValue = process.waitFor();
+            execution.getMetrics().mark(PerlPhase.EXECUTION);
+            waitForOutput(execution.getProcessStreams());
+            execution.getMetrics().mark(PerlPhase.OUTPUT_DRAIN);
+            return completeProcess(execution, exitValue, context);
+        } catch (InterruptedException e) {
+            log.info("Perl script execution interrupted. " + e.getMessage());
+            process.destroy();
+        } finally {
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                log.info("Perl execution was not finished correctly after the interruption. " + e.getMessage());
+            }
+            execution.release();
         }
+        return null;
+    }
 
-        // Create perl command
-        String[] perlCommand = perlCommandCreator.createPerlExecutionCommand(perlFile);
+    /**
+     * Evaluates a script without blocking the calling thread, with the timeout configured by
+     * perl.eval.timeout.ms, none if 0 (default). See {@link #evalAsync(String, ScriptContext, long, TimeUnit)}.
+     */
+    public ListenableFuture<Object> evalAsync(String script, ScriptContext context) {
+        return evalAsync(script,
+                         context,
+                         PerlPropertyLoader.getInstance().getLongProperty(EVAL_TIMEOUT_PROPERTY, 0),
+                         TimeUnit.MILLISECONDS);
+    }
 
-        // Create a process builder
-        ProcessBuilder processBuilder = PerlSingletonPerlProcessBuilderFactory.getInstance()
-                                                                              .getProcessBuilder(perlCommand);
+    /**
+     * Evaluates a script without blocking the calling thread. The returned future holds what
+     * {@link #eval(String, ScriptContext)} would return, or fails with its ScriptException. Callbacks are
+     * added with Futures.addCallback.
+     *
+     * Cancelling the future terminates the perl process, with SIGTERM first and forcibly if it is still alive
+     * after perl.eval.termination.grace.ms milliseconds. So does the timeout, after which the future fails with
+     * a TimeoutException. In pool mode the script is executed on a thread of a shared executor instead, and
+     * the worker is stopped on timeout or cancellation. With perl.syntax.check, whose perl -c runs the BEGIN
+     * blocks of the script, the process is also started on that executor, and the check counts in the timeout.
+     *
+     * @param script  Script to evaluate.
+     * @param context Context of the evaluation.
+     * @param timeout Maximum wall-clock time of the evaluation, none if 0.
+     * @param unit    Unit of the timeout.
+     * @return The future result of the evaluation.
+     */
+    public ListenableFuture<Object> evalAsync(final String script, final ScriptContext context, long timeout,
+            TimeUnit unit) {
+        final long timeoutMillis = unit.toMillis(timeout);
+        if (PerlExecutionMode.getConfiguredMode() == PerlExecutionMode.POOL) {
+            ListenableFuture<Object> evaluation = AsyncEvaluationExecutorHolder.INSTANCE.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws ScriptException {
+                    return evalInWorkerPool(script, null, context);
+                }
+            });
+            if (timeoutMillis <= 0) {
+                return evaluation;
+            }
+            return Futures.withTimeout(evaluation,
+                                       timeoutMillis,
+                                       TimeUnit.MILLISECONDS,
+                                       PerlProcessEvaluation.getWatchdog());
+        }
 
-        // Use process builder environment and fill it with environment variables
-        Map<String, String> variablesMap = processBuilder.environment();
+        if (!PerlSyntaxChecker.isEnabled()) {
+            return startEvaluation(script, context, timeoutMillis);
+        }
 
-        // Add string bindings as environment variables
-        perlStringBindingsAdder.addBindingToStringMap(context.getBindings(ScriptContext.ENGINE_SCOPE), variablesMap);
+        // perl -c runs the BEGIN blocks of the script, so the process is started on the executor within the timeout
+        final long deadlineMillis = System.currentTimeMillis() + timeoutMillis;
+        ListenableFuture<Object> evaluation = Futures.submitAsync(new AsyncCallable<Object>() {
+            @Override
+            public ListenableFuture<Object> call() {
+                long remainingMillis = 0;
+                if (timeoutMillis > 0) {
+                    remainingMillis = Math.max(1, deadlineMillis - System.currentTimeMillis());
+                }
+                return startEvaluation(script, context, remainingMillis);
+            }
+        }, AsyncEvaluationExecutorHolder.INSTANCE);
+        if (timeoutMillis <= 0) {
+            return evaluation;
+        }
+        return Futures.withTimeout(evaluation,
+                                   timeoutMillis,
+                                   TimeUnit.MILLISECONDS,
+                                   PerlProcessEvaluation.getWatchdog());
+    }
 
-        Process process = null;
-        Thread shutdownHook = null;
-        CookieBasedProcessTreeKiller processTreeKiller = null;
+    /**
+     * Starts a perl process for the script and watches it, the returned future completes when the process exits.
+     */
+    private ListenableFuture<Object> startEvaluation(String script, final ScriptContext context,
+            long timeoutMillis) {
+        final PerlProcessExecution execution;
         try {
-            processTreeKiller = createProcessTreeKiller(context, variablesMap);
-            // Start process
-            process = processBuilder.start();
+            execution = startProcess(script, null, context);
+        } catch (ScriptException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+        PerlProcessEvaluation evaluation = new PerlProcessEvaluation(execution, timeoutMillis) {
+            @Override
+            protected Object complete(int exitValue) throws ScriptException {
+                return completeProcess(execution, exitValue, context);
+            }
+        };
+        evaluation.watch();
+        return evaluation;
+    }
 
-            final Process shutdownHookProcessReference = process;
-            final CookieBasedProcessTreeKiller shutdownHookPTKReference = processTreeKiller;
-            shutdownHook = new Thread() {
-                @Override
-                public void run() {
-                    destroyProcessAndWaitForItToBeDestroyed(shutdownHookProcessReference);
-                    if (shutdownHookPTKReference != null) {
-                        shutdownHookPTKReference.kill();
+    /**
+     * Evaluates scripts with at most perl.batch.parallelism of them running at once, the number of available
+     * processors by default. See {@link #evalBatch(List, int)}.
+     */
+    public List<PerlBatchResult> evalBatch(List<PerlBatchScript> scripts) throws InterruptedException {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return evalBatch(scripts,
+                         PerlPropertyLoader.getInstance().getIntProperty(BATCH_PARALLELISM_PROPERTY, processors));
+    }
+
+    /**
+     * Evaluates scripts in parallel, each with its own bindings and captured output. A script is started with
+     * {@link #evalAsync(String, ScriptContext)} as soon as fewer than parallelism scripts are running, so the
+     * scripts share the stream pumps, the script cache and the bindings flattened by this engine. A failed
+     * script does not stop the batch.
+     *
+     * @param scripts     Scripts to evaluate.
+     * @param parallelism Maximum number of scripts running at once, bounded by the number of available
+     *                    processors.
+     * @return The result of each script, in the order of the scripts.
+     * @throws InterruptedException If interrupted while waiting, the running scripts are then cancelled.
+     */
+    public List<PerlBatchResult> evalBatch(List<PerlBatchScript> scripts, int parallelism)
+            throws InterruptedException {
+        int processors = Runtime.getRuntime().availableProcessors();
+        final Semaphore runningScripts = new Semaphore(Math.max(1, Math.min(parallelism, processors)));
+        List<ListenableFuture<Object>> evaluations = new ArrayList<>(scripts.size());
+        List<ScriptContext> contexts = new ArrayList<>(scripts.size());
+        try {
+            for (PerlBatchScript batchScript : scripts) {
+                runningScripts.acquire();
+                ScriptContext batchContext = createBatchContext(batchScript.getBindings());
+                ListenableFuture<Object> evaluation = evalAsync(batchScript.getScript(), batchContext);
+                evaluation.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        runningScripts.release();
                     }
-                }
-            };
-            Runtime.getRuntime().addShutdownHook(shutdownHook);
+                }, MoreExecutors.directExecutor());
+                contexts.add(batchContext);
+                evaluations.add(evaluation);
+            }
+            List<PerlBatchResult> results = new ArrayList<>(scripts.size());
+            for (int i = 0; i < evaluations.size(); i++) {
+                results.add(getBatchResult(evaluations.get(i), contexts.get(i)));
+            }
+            return results;
+        } catch (InterruptedException e) {
+            for (ListenableFuture<Object> evaluation : evaluations) {
+                evaluation.cancel(true);
+            }
+            throw e;
+        }
+    }
 
-            // Attach streams
-            processBuilderUtilities.attachStreamsToProcess(process,
-                                                           context.getWriter(),
-                                                           context.getErrorWriter(),
-                                                           context.getReader());
+    /**
+     * Creates the context of a script of a batch, which captures its output and reads no input. The script is
+     * evaluated with a copy of its bindings, the bindings of the caller are left unchanged.
+     */
+    private ScriptContext createBatchContext(Bindings bindings) {
+        Bindings batchBindings = createBindings();
+        if (bindings != null) {
+            batchBindings.putAll(PerlBindings.snapshot(bindings));
+        }
+        batchBindings.remove(EXIT_VALUE_BINDING_NAME);
+        ScriptContext batchContext = new SimpleScriptContext();
+        batchContext.setBindings(batchBindings, ScriptContext.ENGINE_SCOPE);
+        batchContext.setBindings(getBindings(ScriptContext.GLOBAL_SCOPE), ScriptContext.GLOBAL_SCOPE);
+        batchContext.setWriter(new StringWriter());
+        batchContext.setErrorWriter(new StringWriter());
+        batchContext.setReader(null);
+        return batchContext;
+    }
 
-            // Wait for process to exit
-            int exitValue = process.waitFor();
-            if (context.getBindings(ScriptContext.ENGINE_SCOPE)
-                       .containsKey(SchedulerConstants.VARIABLES_BINDING_NAME)) {
-                Map<String, Serializable> variables = (Map<String, Serializable>) context.getBindings(ScriptContext.ENGINE_SCOPE)
-                                                                                         .get(SchedulerConstants.VARIABLES_BINDING_NAME);
-                variables.put(EXIT_VALUE_BINDING_NAME, exitValue);
+    private static PerlBatchResult getBatchResult(ListenableFuture<Object> evaluation, ScriptContext batchContext)
+            throws InterruptedException {
+        Object result = null;
+        Throwable failure = null;
+        try {
+            result = evaluation.get();
+        } catch (ExecutionException e) {
+            failure = e.getCause();
+        }
+        Bindings batchBindings = batchContext.getBindings(ScriptContext.ENGINE_SCOPE);
+        Object exitValue = batchBindings.get(EXIT_VALUE_BINDING_NAME);
+        return new PerlBatchResult(exitValue instanceof Integer ? (Integer) exitValue : null,
+                                   result,
+                                   failure,
+                                   batchContext.getWriter().toString(),
+                                   batchContext.getErrorWriter().toString(),
+                                   batchBindings);
+    }
+
+    /**
+     * Prepares and starts a perl process for the script. What was prepared is released if the process cannot
+     * be started.
+     *
+     * @param compiledScript Compiled script, whose file and command are used instead of preparing the script. May
+     *                       be null.
+     */
+    private PerlProcessExecution startProcess(String script, PerlCompiledScript compiledScript,
+            ScriptContext context) throws ScriptException {
+        PerlProcessExecution execution = new PerlProcessExecution(context);
+        boolean started = false;
+        try {
+            if (compiledScript == null) {
+                checkSyntaxIfEnabled(script);
+            }
+
+            // Select how the script source is handed to perl, a compiled script is executed from its file
+            PerlScriptDelivery scriptDelivery = PerlScriptDelivery.FILE;
+            if (compiledScript == null) {
+                scriptDelivery = PerlScriptDelivery.forScript(script, context.getReader() != null);
             }
-            context.getBindings(ScriptContext.ENGINE_SCOPE).put(EXIT_VALUE_BINDING_NAME, exitValue);
-            if (exitValue != 0) {
-                throw new ScriptException("Perl process execution has failed with exit code " + exitValue);
+
+            // Create perl command, the command of a compiled script is built once
+            String[] perlCommand;
+            if (compiledScript != null) {
+                execution.setCachedScript(PerlScriptCache.getInstance().acquire(compiledScript.getCachedScript(),
+                                                                                script));
+                execution.setPerlFile(execution.getCachedScript().getFile());
+                perlCommand = compiledScript.getCommand();
+            } else {
+                switch (scriptDelivery) {
+                    case STDIN:
+                        perlCommand = COMMAND_CREATOR.createPerlStandardInputExecutionCommand();
+                        break;
+                    case ARGUMENT:
+                        perlCommand = COMMAND_CREATOR.createPerlEvaluationCommand(script);
+                        break;
+                    default:
+                        try {
+                            if (PerlScriptCache.isEnabled()) {
+                                execution.setCachedScript(PerlScriptCache.getInstance().acquire(script));
+                                execution.setPerlFile(execution.getCachedScript().getFile());
+                            } else {
+                                execution.setPerlFile(SCRIPT_FILE_WRITER.forceFileToDisk(script));
+                            }
+                        } catch (IOException e) {
+                            log.warn("Failed to write content to perl file.", e);
+                        }
+                        perlCommand = COMMAND_CREATOR.createPerlExecutionCommand(execution.getPerlFile());
+                }
+            }
+            launchProcess(execution, perlCommand, scriptDelivery == PerlScriptDelivery.STDIN, compiledScript);
+
+            if (scriptDelivery == PerlScriptDelivery.STDIN) {
+                writeScriptToProcessInput(script, execution.getProcess());
             }
-            return exitValue;
+            started = true;
+            return execution;
         } catch (IOException e) {
             throw new ScriptException("Check if perl is installed properly. Failed to execute Perl with exception: " +
                                       e);
-        } catch (InterruptedException e) {
-            log.info("Perl script execution interrupted. " + e.getMessage());
-            if (process != null) {
-                process.destroy();
-            }
         } finally {
-            if (process != null) {
+            if (!started) {
+                execution.release();
+            }
+        }
+    }
+
+    /**
+     * Prepares and starts a perl process for a script read from a reader, which is streamed to a file or to the
+     * standard input of perl without being held in memory. What was prepared is released if the process cannot
+     * be started.
+     *
+     * @throws ScriptException If the process could not be started or the script could not be read.
+     */
+    private PerlProcessExecution startProcess(Reader script, ScriptContext context) throws ScriptException {
+        PerlProcessExecution execution = new PerlProcessExecution(context);
+        boolean started = false;
+        try {
+            // A script streamed to perl cannot be checked beforehand
+            PerlScriptDelivery scriptDelivery = PerlScriptDelivery.forStream(context.getReader() != null);
+            if (scriptDelivery == PerlScriptDelivery.STDIN && PerlSyntaxChecker.isEnabled()) {
+                scriptDelivery = PerlScriptDelivery.FILE;
+            }
+
+            String[] perlCommand;
+            if (scriptDelivery == PerlScriptDelivery.STDIN) {
+                perlCommand = COMMAND_CREATOR.createPerlStandardInputExecutionCommand();
+            } else {
                 try {
-                    process.waitFor();
-                } catch (InterruptedException e) {
-                    log.info("Perl execution was not finished correctly after the interruption. " + e.getMessage());
+                    execution.setPerlFile(SCRIPT_FILE_WRITER.forceFileToDisk(script));
+                } catch (IOException e) {
+                    throw new ScriptException("Failed to write the Perl script to a file with exception: " + e);
+                }
+                if (PerlSyntaxChecker.isEnabled()) {
+                    PerlSyntaxChecker.getInstance().checkSyntax(execution.getPerlFile());
                 }
+                perlCommand = COMMAND_CREATOR.createPerlExecutionCommand(execution.getPerlFile());
             }
-            // Delete configuration file
-            if (perlFile != null) {
-                boolean deleted = perlFile.delete();
-                if (!deleted) {
-                    log.warn("File: " + perlFile.getAbsolutePath() + " was not deleted.");
+            launchProcess(execution, perlCommand, scriptDelivery == PerlScriptDelivery.STDIN, null);
+
+            if (scriptDelivery == PerlScriptDelivery.STDIN) {
+                try {
+                    PerlProcessBuilderUtilities.pipeToProcessInput(script, execution.getProcess());
+                } catch (IOException e) {
+                    execution.getProcess().destroy();
+                    throw new ScriptException("Failed to read the Perl script with exception: " + e);
                 }
             }
-            if (shutdownHook != null) {
-                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            started = true;
+            return execution;
+        } catch (IOException e) {
+            throw new ScriptException("Check if perl is installed properly. Failed to execute Perl with exception: " +
+                                      e);
+        } finally {
+            if (!started) {
+                execution.release();
+            }
+        }
+    }
+
+    /**
+     * Wraps the perl command of a prepared script, fills the environment of the process and starts it.
+     *
+     * @param pipeScript     True if the script is written to the standard input of perl.
+     * @param compiledScript Compiled script, or null.
+     */
+    private void launchProcess(PerlProcessExecution execution, String[] perlCommand, boolean pipeScript,
+            PerlCompiledScript compiledScript) throws IOException {
+        ScriptContext context = execution.getContext();
+        String[] command = addResourceLimitsToCommand(perlCommand);
+        // A session leader has its own process group, holding the children of the script
+        PerlProcessTreeTracking tracking = PerlProcessTreeTracking.getConfiguredTracking();
+        boolean trackProcessGroup = isProcessTreeKillerEnabled(context) && tracking == PerlProcessTreeTracking.GROUP;
+        if (trackProcessGroup) {
+            command = COMMAND_CREATOR.createSessionLeaderCommand(command);
+        }
+        execution.getMetrics().mark(PerlPhase.SCRIPT_PREPARATION);
+
+        // Create a process builder
+        ProcessBuilder processBuilder = PerlProcessLauncher.getConfiguredFactory().getProcessBuilder(command);
+        // The standard input is only written with a reader or a script streamed to perl, perl reads a file input
+        File inputFile = PerlByteInput.getFile(context.getReader());
+        if (inputFile != null) {
+            processBuilder.redirectInput(inputFile);
+        } else if (pipeScript || context.getReader() != null) {
+            processBuilder.redirectInput(ProcessBuilder.Redirect.PIPE);
+        }
+        // Perl writes its output to file sinks itself
+        PerlStreamSinks streamSinks = PerlStreamSinks.fromBindings(context.getBindings(ScriptContext.ENGINE_SCOPE));
+        streamSinks.redirect(processBuilder);
+        execution.setStreamSinks(streamSinks);
+
+        // Use process builder environment and fill it with environment variables
+        Map<String, String> variablesMap = processBuilder.environment();
+
+        // Add bindings as environment variables, or in a bindings file
+        execution.setBindingsFile(addBindingsToEnvironment(context.getBindings(ScriptContext.ENGINE_SCOPE),
+                                                           variablesMap,
+                                                           compiledScript));
+        execution.setResultsFile(addResultsFileToEnvironment(variablesMap));
+        execution.setUsageFile(addUsageFileToEnvironment(variablesMap));
+        if (trackProcessGroup) {
+            execution.setProcessGroupKiller(new PerlProcessGroupKiller(PerlProcessLauncher.getConfiguredFactory()));
+        } else {
+            execution.setProcessTreeKiller(createProcessTreeKiller(context, variablesMap));
+        }
+        execution.getMetrics().setEnvironment(variablesMap);
+        execution.getMetrics().mark(PerlPhase.ENVIRONMENT);
+
+        // Start process
+        execution.start(processBuilder, PROCESS_BUILDER_UTILITIES);
+    }
+
+    /**
+     * Merges the results of an exited process into the bindings and handles its exit value.
+     */
+    private Object completeProcess(PerlProcessExecution execution, int exitValue, ScriptContext context)
+            throws ScriptException {
+        readUsage(execution.getUsageFile(), context);
+        readResults(execution.getResultsFile(), context);
+        execution.getMetrics().setExitValue(exitValue);
+        return handleExitValue(exitValue, context);
+    }
+
+    /**
+     * Waits until the whole process output has been written to the script context writers.
+     */
+    private void waitForOutput(PerlProcessStreams processStreams) throws InterruptedException {
+        long drainTimeout = PerlProcessBuilderUtilities.getDrainTimeoutMillis();
+        if (!processStreams.awaitOutput(drainTimeout, TimeUnit.MILLISECONDS)) {
+            log.warn("Perl process output was not completely read " + drainTimeout +
+                     " ms after the process exit, a child process may still hold it.");
+        }
+        log.debug("Perl process output drained in " + processStreams.getDrainTimeMillis() + " ms.");
+    }
+
+    /**
+     * Streams the script to the standard input of perl - and closes it, so that perl starts executing.
+     */
+    private void writeScriptToProcessInput(String script, Process process) {
+        try (Writer processInput = new OutputStreamWriter(process.getOutputStream())) {
+            processInput.write(script);
+        } catch (IOException e) {
+            // Perl exited before reading the whole script, its exit value reports the failure
+            log.debug("Failed to write script to perl standard input.", e);
+        }
+    }
+
+    /**
+     * Executes the script in a long-lived worker of the {@link PerlWorkerPool} instead of starting a new
+     * perl process.
+     *
+     * @param compiledScript Compiled script, whose hash lets the worker keep the compiled script. May be null.
+     */
+    private Object evalInWorkerPool(String script, PerlCompiledScript compiledScript,
+            ScriptContext context) throws ScriptException {
+        if (compiledScript == null) {
+            checkSyntaxIfEnabled(script);
+        }
+        PerlEvaluationMetrics metrics = new PerlEvaluationMetrics();
+
+        // Bindings are sent to the worker, which adds them to its environment for this script only
+        Map<String, String> environment = new HashMap<>();
+        File bindingsFile = addBindingsToEnvironment(context.getBindings(ScriptContext.ENGINE_SCOPE),
+                                                     environment,
+                                                     compiledScript);
+        File resultsFile = addResultsFileToEnvironment(environment);
+
+        CookieBasedProcessTreeKiller processTreeKiller = createProcessTreeKiller(context, environment);
+        addPreloadedModulesToEnvironment(context, environment);
+        metrics.setEnvironment(environment);
+        metrics.mark(PerlPhase.ENVIRONMENT);
+        Writer output = PerlOutputStage.wrapIfConfigured(context.getWriter());
+        Writer error = PerlOutputStage.wrapIfConfigured(context.getErrorWriter());
+        PerlMetricsRegistry.getInstance().processStarted();
+        try {
+            // Identical scripts reuse the sub compiled by the worker
+            String scriptHash = compiledScript != null ? compiledScript.getCachedScript().getHash()
+                                                       : PerlScriptCache.isEnabled() ? PerlScriptCache.hash(script)
+                                                                                     : null;
+            int exitValue;
+            try {
+                exitValue = PerlWorkerPool.getInstance().execute(script,
+                                                                 scriptHash,
+                                                                 environment,
+                                                                 output,
+                                                                 error,
+                                                                 metrics);
+            } finally {
+                closeOutputStage(output);
+                closeOutputStage(error);
+                metrics.mark(PerlPhase.EXECUTION);
+                PerlMetricsRegistry.getInstance().processEnded();
             }
+            readResults(resultsFile, context);
+            metrics.setExitValue(exitValue);
+            return handleExitValue(exitValue, context);
+        } catch (IOException e) {
+            throw new ScriptException("Failed to execute Perl script in a pooled worker with exception: " + e);
+        } catch (InterruptedException e) {
+            log.info("Perl script execution interrupted. " + e.getMessage());
+        } finally {
+            PerlProcessExecution.deleteFile(bindingsFile);
+            PerlProcessExecution.deleteFile(resultsFile);
             if (processTreeKiller != null) {
                 processTreeKiller.kill();
             }
+            metrics.mark(PerlPhase.CLEANUP);
+            PerlMetricsRegistry.getInstance().record(metrics, PerlProcessExecution.getVariables(context));
         }
         return null;
     }
 
-    // TODO: Test
-    @Override
-    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+    /**
+     * Checks the syntax of the script with perl -c if perl.syntax.check is enabled, once per distinct script.
+     */
+    private void checkSyntaxIfEnabled(String script) throws ScriptException {
+        if (PerlSyntaxChecker.isEnabled()) {
+            PerlSyntaxChecker.getInstance().checkSyntax(script);
+        }
+    }
+
+    /**
+     * Forwards what is left in an output stage, the writers of the script context are left open.
+     */
+    private static void closeOutputStage(Writer writer) {
+        if (writer instanceof PerlOutputStage) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.debug("Failed to forward perl output.", e);
+            }
+        }
+    }
 
-        StringWriter stringWriter = new StringWriter();
+    /**
+     * Hands the bindings to the script with the configured {@link PerlBindingsTransport}. Only the bindings
+     * accepted by the {@link PerlBindingsFilter} are added to the environment.
+     *
+     * @param compiledScript Compiled script, whose previously flattened bindings are reused. May be null.
+     * @return The bindings file to delete after the execution, or null.
+     */
+    private File addBindingsToEnvironment(Bindings bindings, Map<String, String> environment,
+            PerlCompiledScript compiledScript) {
+        // Concurrent evaluations may write the bindings while they are sent
+        Bindings bindingsSnapshot = PerlBindings.snapshot(bindings);
+        Bindings environmentBindings = perlBindingsFilter.filter(bindingsSnapshot);
+        if (PerlBindingsTransport.getConfiguredTransport() == PerlBindingsTransport.JSON) {
+            try {
+                File bindingsFile = JSON_BINDINGS_WRITER.writeBindingsFile(bindingsSnapshot);
+                STRING_BINDINGS_ADDER.addScalarBindingsToStringMap(environmentBindings,
+                                                                   environment,
+                                                                   PerlBindingsTransport.getEnvironmentMaxLength());
+                environment.put(PerlJsonBindingsWriter.BINDINGS_FILE_VARIABLE, bindingsFile.getAbsolutePath());
+                PerlHelperModules.addToPerlLibraryPath(environment);
+                return bindingsFile;
+            } catch (IOException e) {
+                log.warn("Failed to write bindings file, bindings are added to the environment.", e);
+            }
+        }
+        // Unchanged bindings reuse the variables flattened by the previous evaluations
+        PerlBindingsEnvironmentCache bindingsCache = compiledScript != null ? compiledScript.getBindingsCache()
+                                                                            : perlBindingsCache;
+        bindingsCache.addBindingsToEnvironment(environmentBindings, environment);
+        return null;
+    }
 
+    /**
+     * Gives the script a file to send variables and a result back with the JSR223::Perl::Results module, if
+     * enabled.
+     *
+     * @return The results file, or null.
+     */
+    private File addResultsFileToEnvironment(Map<String, String> environment) {
+        if (!PerlResultsReader.isEnabled()) {
+            return null;
+        }
+        File resultsFile;
         try {
-            PerlProcessBuilderUtilities.pipe(reader, stringWriter);
+            resultsFile = RESULTS_READER.newResultsFile();
         } catch (IOException e) {
-            log.warn("Filed to convert Reader into StringWriter. Not possible to execute Perl script.");
-            log.debug("Filed to convert Reader into StringWriter. Not possible to execute Perl script.", e);
+            log.warn("Failed to create results file, the script cannot send results.", e);
+            return null;
+        }
+        environment.put(PerlResultsReader.RESULTS_FILE_VARIABLE, resultsFile.getAbsolutePath());
+        PerlHelperModules.addToPerlLibraryPath(environment);
+        return resultsFile;
+    }
+
+    /**
+     * Wraps the perl command to apply the configured resource limits and to report the resource usage of the
+     * process, if enabled.
+     */
+    private String[] addResourceLimitsToCommand(String[] perlCommand) {
+        String[] command = perlCommand;
+        if (PerlResourceUsageReader.isEnabled()) {
+            command = COMMAND_CREATOR.createModuleLoadingCommand(command, PerlResourceUsageReader.USAGE_MODULE);
+        }
+        PerlResourceLimits limits = PerlResourceLimits.fromConfiguration();
+        if (limits.isEnabled()) {
+            command = COMMAND_CREATOR.createResourceLimitedCommand(command, limits);
         }
+        return command;
+    }
 
-        return eval(stringWriter.toString(), context);
+    /**
+     * Gives the JSR223::Perl::Usage module a file to write the resource usage of the process to, if enabled.
+     *
+     * @return The usage file, written by perl when it exits, or null.
+     */
+    private File addUsageFileToEnvironment(Map<String, String> environment) {
+        if (!PerlResourceUsageReader.isEnabled()) {
+            return null;
+        }
+        File usageFile;
+        try {
+            usageFile = RESOURCE_USAGE_READER.newUsageFile();
+        } catch (IOException e) {
+            log.warn("Failed to create usage file, the resource usage is not reported.", e);
+            return null;
+        }
+        environment.put(PerlResourceUsageReader.USAGE_FILE_VARIABLE, usageFile.getAbsolutePath());
+        PerlHelperModules.addToPerlLibraryPath(environment);
+        return usageFile;
     }
 
+    /**
+     * Publishes the resource usage of the exited process in the bindings and in the variables map.
+     */
+    private void readUsage(File usageFile, ScriptContext context) throws ScriptException {
+        if (usageFile == null) {
+            return;
+        }
+        try {
+            RESOURCE_USAGE_READER.readUsage(usageFile, context.getBindings(ScriptContext.ENGINE_SCOPE));
+        } catch (IOException e) {
+            throw new ScriptException("Failed to read the resource usage of the Perl script with exception: " + e);
+        }
+    }
+
+    /**
+     * Merges the variables and result sent back by the script into the bindings.
+     */
+    private void readResults(File resultsFile, ScriptContext context) throws ScriptException {
+        if (resultsFile == null) {
+            return;
+        }
+        try {
+            RESULTS_READER.readResults(resultsFile, context.getBindings(ScriptContext.ENGINE_SCOPE));
+        } catch (IOException e) {
+            throw new ScriptException("Failed to read the results of the Perl script with exception: " + e);
+        }
+    }
+
+    /**
+     * Publishes the exit value in the bindings and in the variables map.
+     *
+     * @throws ScriptException If the exit value is not 0.
+     */
+    private Object handleExitValue(int exitValue, ScriptContext context) throws ScriptException {
+        if (context.getBindings(ScriptContext.ENGINE_SCOPE).containsKey(SchedulerConstants.VARIABLES_BINDING_NAME)) {
+            Map<String, Serializable> variables = (Map<String, Serializable>) context.getBindings(ScriptContext.ENGINE_SCOPE)
+                                                                                     .get(SchedulerConstants.VARIABLES_BINDING_NAME);
+            variables.put(EXIT_VALUE_BINDING_NAME, exitValue);
+        }
+        context.getBindings(ScriptContext.ENGINE_SCOPE).put(EXIT_VALUE_BINDING_NAME, exitValue);
+        if (exitValue != 0) {
+            throw new ScriptException("Perl process execution has failed with exit code " + exitValue);
+        }
+        return exitValue;
+    }
+
+    /**
+     * Checks the syntax of the script with perl -c, and prepares its file and command line for the evaluations
+     * of the returned script.
+     *
+     * @return A {@link PerlCompiledScript}, to be closed when it is not evaluated anymore.
+     * @throws ScriptException If the script does not compile.
+     */
+    @Override
+    public CompiledScript compile(String script) throws ScriptException {
+        PerlScriptCache.CachedScript cachedScript;
+        try {
+            cachedScript = PerlScriptCache.getInstance().acquire(script);
+        } catch (IOException e) {
+            throw new ScriptException("Failed to write content to perl file with exception: " + e);
+        }
+        if (!PerlScriptCache.isEnabled()) {
+            PerlScriptCache.getInstance().deleteWhenReleased(cachedScript);
+        }
+        try {
+            PerlSyntaxChecker.getInstance().checkSyntax(cachedScript);
+        } catch (ScriptException e) {
+            PerlScriptCache.getInstance().release(cachedScript);
+            throw e;
+        }
+        return new PerlCompiledScript(this,
+                                      script,
+                                      cachedScript,
+                                      COMMAND_CREATOR.createPerlExecutionCommand(cachedScript.getFile()),
+                                      new PerlBindingsEnvironmentCache(STRING_BINDINGS_ADDER));
+    }
+
+    @Override
+    public CompiledScript compile(Reader script) throws ScriptException {
+        try {
+            return compile(CharStreams.toString(script));
+        } catch (IOException e) {
+            throw new ScriptException("Failed to read perl script with exception: " + e);
+        }
+    }
+
+    /**
+     * Evaluates a script read from a reader. In the process execution mode, the script is streamed to its file
+     * or to perl without being held in memory. The worker pool receives scripts as strings, the reader is then
+     * read first.
+     *
+     * @throws ScriptException If the script could not be read, or see {@link #eval(String, ScriptContext)}.
+     */
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        if (PerlExecutionMode.getConfiguredMode() == PerlExecutionMode.POOL) {
+            String script;
+            try {
+                script = CharStreams.toString(reader);
+            } catch (IOException e) {
+                throw new ScriptException("Failed to read the Perl script with exception: " + e);
+            }
+            return eval(script, context);
+        }
+        return waitForProcess(startProcess(reader, context), context);
+    }
+
+    /**
+     * @return Bindings which concurrent evaluations of this engine may share.
+     */
     @Override
     public Bindings createBindings() {
-        return new SimpleBindings();
+        return new PerlBindings();
     }
 
     @Override
     public ScriptEngineFactory getFactory() {
-        return new PerlScriptEngineFactory();
+        return FACTORY;
+    }
+
+    /**
+     * Hands the modules listed by the PERL_PRELOAD_MODULES generic information to the worker, which loads them
+     * before the script and keeps them loaded for its next scripts.
+     */
+    private static void addPreloadedModulesToEnvironment(ScriptContext context, Map<String, String> environment) {
+        Map<String, String> genericInfo = (Map<String, String>) context.getBindings(ScriptContext.ENGINE_SCOPE)
+                                                                       .get(SchedulerConstants.GENERIC_INFO_BINDING_NAME);
+        if (genericInfo != null && genericInfo.get(PerlWorkerPool.PRELOAD_GENERIC_INFO) != null) {
+            environment.put(PerlWorkerPool.PRELOAD_VARIABLE, genericInfo.get(PerlWorkerPool.PRELOAD_GENERIC_INFO));
+        }
+    }
+
+    /**
+     * @return True if the processes left by the script of a task must be killed, unless disabled by the task
+     *         generic information.
+     */
+    private static boolean isProcessTreeKillerEnabled(ScriptContext context) {
+        Map<String, String> genericInfo = (Map<String, String>) context.getBindings(ScriptContext.ENGINE_SCOPE)
+                                                                       .get(SchedulerConstants.GENERIC_INFO_BINDING_NAME);
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        return genericInfo != null && bindings.get(SchedulerConstants.VARIABLES_BINDING_NAME) != null &&
+               !"true".equalsIgnoreCase(genericInfo.get(SchedulerConstants.DISABLE_PROCESS_TREE_KILLER_GENERIC_INFO));
     }
 
     private CookieBasedProcessTreeKiller createProcessTreeKiller(ScriptContext context,
             Map<String, String> environment) {
         CookieBasedProcessTreeKiller processTreeKiller = null;
-        Map<String, String> genericInfo = (Map<String, String>) context.getBindings(ScriptContext.ENGINE_SCOPE)
-                                                                       .get(SchedulerConstants.GENERIC_INFO_BINDING_NAME);
         Map<String, String> variables = (Map<String, String>) context.getBindings(ScriptContext.ENGINE_SCOPE)
                                                                      .get(SchedulerConstants.VARIABLES_BINDING_NAME);
 
-        if (genericInfo != null && variables != null &&
-            !"true".equalsIgnoreCase(genericInfo.get(SchedulerConstants.DISABLE_PROCESS_TREE_KILLER_GENERIC_INFO))) {
+        if (isProcessTreeKillerEnabled(context)) {
             String cookieSuffix = "Perl_Job" + variables.get(SchedulerVars.PA_JOB_ID) + "Task" +
                                   variables.get(SchedulerVars.PA_TASK_ID);
             processTreeKiller = CookieBasedProcessTreeKiller.createProcessChildrenKiller(cookieSuffix, environment);
         }
         return processTreeKiller;
     }
-
-    private static void destroyProcessAndWaitForItToBeDestroyed(Process process) {
-        try {
-            process.destroy();
-            process.waitFor();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-    }
 }
@@ -28,27 +28,49 @@ package jsr223.perl;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineFactory;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 
-import jsr223.perl.utils.PerlVersionGetter;
+import jsr223.perl.utils.PerlVersionCache;
 
 
 public class PerlScriptEngineFactory implements ScriptEngineFactory {
-    static final ImmutableMap<String, Object> PARAMETERS;
 
-    // Script engine PARAMETERS
+    /**
+     * Script engine parameter describing the thread safety of the engines, see
+     * {@link ScriptEngineFactory#getParameter(String)}.
+     */
+    public static final String THREADING = "THREADING";
+
+    public static final String MULTITHREADED = "MULTITHREADED";
+
+    static final Map<String, Object> PARAMETERS;
+
+    // Script engine PARAMETERS. The perl version is only retrieved when read, not on engine discovery.
     static {
-        String perlEngineVersion = new PerlVersionGetter().getPerlVersion();
-        PARAMETERS = new ImmutableMap.Builder<String, Object>().put(ScriptEngine.NAME, "perl")
-                                                               .put(ScriptEngine.ENGINE, "perl")
-                                                               .put(ScriptEngine.ENGINE_VERSION, perlEngineVersion)
-                                                               .put(ScriptEngine.LANGUAGE, "perl")
-                                                               .put(ScriptEngine.LANGUAGE_VERSION, perlEngineVersion)
-                                                               .build();
+        Supplier<Object> perl = Suppliers.<Object> ofInstance("perl");
+        Supplier<Object> perlEngineVersion = new Supplier<Object>() {
+            @Override
+            public Object get() {
+                return PerlVersionCache.getPerlVersion();
+            }
+        };
+        ImmutableMap.Builder<String, Supplier<Object>> parameters = ImmutableMap.builder();
+        parameters.put(ScriptEngine.NAME, perl);
+        parameters.put(ScriptEngine.ENGINE, perl);
+        parameters.put(ScriptEngine.ENGINE_VERSION, perlEngineVersion);
+        parameters.put(ScriptEngine.LANGUAGE, perl);
+        parameters.put(ScriptEngine.LANGUAGE_VERSION, perlEngineVersion);
+        // Engines evaluate scripts concurrently, each evaluation runs in its own perl process
+        parameters.put(THREADING, Suppliers.<Object> ofInstance(MULTITHREADED));
+        PARAMETERS = Maps.transformValues(parameters.build(), Suppliers.<Object> supplierFunction());
     }
 
     @Override
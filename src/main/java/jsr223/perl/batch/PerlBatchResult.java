@@ -0,0 +1,69 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.batch;
+
+import javax.script.Bindings;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+
+/**
+ * Outcome of a script of a batch evaluated with PerlScriptEngine.evalBatch.
+ */
+@AllArgsConstructor
+@Getter
+public class PerlBatchResult {
+
+    /**
+     * Exit value of the script, null if it did not exit, for example after a timeout.
+     */
+    private final Integer exitValue;
+
+    /**
+     * Value the evaluation returned, null if it failed.
+     */
+    private final Object result;
+
+    /**
+     * Why the evaluation failed, null if it succeeded.
+     */
+    private final Throwable failure;
+
+    private final String output;
+
+    private final String error;
+
+    /**
+     * Copy of the script bindings the script was evaluated with, holding its exit value and the variables and
+     * result it sent back.
+     */
+    private final Bindings bindings;
+
+    public boolean isSuccessful() {
+        return failure == null;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.bindings;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+
+
+/**
+ * Bindings created by the perl script engine, read and written by the concurrent evaluations of an engine:
+ * every access is synchronized, and evaluations iterate over a {@link #snapshot(Bindings)} taken under the
+ * lock. Maps and lists held by the bindings, such as the variables map, are not synchronized.
+ */
+public class PerlBindings extends SimpleBindings {
+
+    private final Map<String, Object> synchronizedMap;
+
+    public PerlBindings() {
+        this(Collections.synchronizedMap(new HashMap<String, Object>()));
+    }
+
+    private PerlBindings(Map<String, Object> synchronizedMap) {
+        super(synchronizedMap);
+        this.synchronizedMap = synchronizedMap;
+    }
+
+    /**
+     * @param bindings Bindings to copy. If null, null is returned.
+     * @return A shallow copy of the bindings, consistent for PerlBindings written concurrently.
+     */
+    public static Bindings snapshot(Bindings bindings) {
+        if (bindings == null) {
+            return null;
+        }
+        if (bindings instanceof PerlBindings) {
+            Map<String, Object> synchronizedMap = ((PerlBindings) bindings).synchronizedMap;
+            synchronized (synchronizedMap) {
+                return new SimpleBindings(new HashMap<>(synchronizedMap));
+            }
+        }
+        return new SimpleBindings(new HashMap<>(bindings));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.bindings;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.script.Bindings;
+
+
+/**
+ * Flattens bindings to environment variables with a {@link PerlStringBindingsAdder}, keeping the variables of
+ * each binding as long as its value does not change. Consecutive evaluations of an engine with the same
+ * bindings then reuse the variable names and values of the previous evaluation instead of building them
+ * again, only changed bindings are flattened.
+ *
+ * Strings, boxed numbers, booleans and characters are compared with equals(), as are maps, lists and arrays
+ * holding only such values, through a shallow copy taken when they were flattened. Any other value, including a
+ * map or list nesting mutable objects, is flattened again on every evaluation and its previous variables are only
+ * kept if the flattened output did not change.
+ */
+public class PerlBindingsEnvironmentCache {
+
+    private final PerlStringBindingsAdder perlStringBindingsAdder;
+
+    private final Map<String, FlattenedBinding> flattenedBindings = new HashMap<>();
+
+    public PerlBindingsEnvironmentCache(PerlStringBindingsAdder perlStringBindingsAdder) {
+        this.perlStringBindingsAdder = perlStringBindingsAdder;
+    }
+
+    /**
+     * Adds all bindings to the environment map, as {@link PerlStringBindingsAdder#addBindingToStringMap} does.
+     *
+     * @param bindings    Bindings to add. If null, this method will return immediately.
+     * @param environment Environment of the perl script.
+     */
+    public synchronized void addBindingsToEnvironment(Bindings bindings, Map<String, String> environment) {
+        if (bindings == null || environment == null) {
+            return;
+        }
+        // Bindings removed since the last evaluation are forgotten
+        Iterator<String> names = flattenedBindings.keySet().iterator();
+        while (names.hasNext()) {
+            if (!bindings.containsKey(names.next())) {
+                names.remove();
+            }
+        }
+        for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+            FlattenedBinding flattenedBinding = flattenedBindings.get(binding.getKey());
+            if (flattenedBinding == null || !flattenedBinding.isSnapshotOf(binding.getValue())) {
+                Map<String, String> variables = flatten(binding.getKey(), binding.getValue());
+                if (flattenedBinding != null && flattenedBinding.variables.equals(variables)) {
+                    variables = flattenedBinding.variables;
+                }
+                flattenedBinding = new FlattenedBinding(binding.getValue(), variables);
+                flattenedBindings.put(binding.getKey(), flattenedBinding);
+            }
+            environment.putAll(flattenedBinding.variables);
+        }
+    }
+
+    /**
+     * @return Number of bindings whose variables are kept.
+     */
+    public synchronized int size() {
+        return flattenedBindings.size();
+    }
+
+    private Map<String, String> flatten(String name, Object value) {
+        Map<String, String> variables = new LinkedHashMap<>();
+        perlStringBindingsAdder.addBindingToStringMap(name, value, variables);
+        return variables;
+    }
+
+    private static boolean isImmutable(Object value) {
+        return value == null || value instanceof String || value instanceof Integer || value instanceof Long ||
+               value instanceof Short || value instanceof Byte || value instanceof Double || value instanceof Float ||
+               value instanceof BigInteger || value instanceof BigDecimal || value instanceof Boolean ||
+               value instanceof Character;
+    }
+
+    private static boolean areImmutable(Collection<?> values) {
+        for (Object value : values) {
+            if (!isImmutable(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class FlattenedBinding {
+        /**
+         * Whether the snapshot alone determines the variables, because it holds no mutable object.
+         */
+        private final boolean exact;
+
+        private final Object snapshot;
+
+        private final Map<String, String> variables;
+
+        FlattenedBinding(Object value, Map<String, String> variables) {
+            if (value instanceof Map) {
+                Map<?, ?> map = new HashMap<>((Map<?, ?>) value);
+                snapshot = map;
+                exact = areImmutable(map.keySet()) && areImmutable(map.values());
+            } else if (value instanceof List) {
+                List<?> list = new ArrayList<>((List<?>) value);
+                snapshot = list;
+                exact = areImmutable(list);
+            } else if (value instanceof Object[]) {
+                Object[] array = ((Object[]) value).clone();
+                snapshot = array;
+                exact = areImmutable(Arrays.asList(array));
+            } else {
+                snapshot = value;
+                exact = isImmutable(value);
+            }
+            this.variables = variables;
+        }
+
+        boolean isSnapshotOf(Object value) {
+            if (!exact) {
+                return false;
+            }
+            if (snapshot instanceof Object[]) {
+                return value instanceof Object[] && Arrays.equals((Object[]) snapshot, (Object[]) value);
+            }
+            return Objects.equals(snapshot, value);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.bindings;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+import jsr223.perl.utils.PerlPropertyLoader;
+
+
+/**
+ * Selects the bindings added to the environment of a perl script. Configured with:
+ * <ul>
+ * <li>perl.bindings.environment.include: comma separated binding names, all bindings if empty (default),</li>
+ * <li>perl.bindings.environment.exclude: comma separated binding names, none if empty (default),</li>
+ * <li>perl.bindings.environment.objects: false to leave out bindings which are not strings, numbers,
+ * booleans, characters, maps, collections or arrays, such as API objects (default: true).</li>
+ * </ul>
+ * A name ending with * matches every binding name starting with the rest of the name.
+ */
+public class PerlBindingsFilter {
+
+    public static final String INCLUDE_PROPERTY = "perl.bindings.environment.include";
+
+    public static final String EXCLUDE_PROPERTY = "perl.bindings.environment.exclude";
+
+    public static final String OBJECTS_PROPERTY = "perl.bindings.environment.objects";
+
+    private static final Splitter NAME_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    private final List<String> includedNames;
+
+    private final List<String> excludedNames;
+
+    private final boolean objectsIncluded;
+
+    public PerlBindingsFilter(String includedNames, String excludedNames, boolean objectsIncluded) {
+        this.includedNames = ImmutableList.copyOf(NAME_SPLITTER.split(includedNames));
+        this.excludedNames = ImmutableList.copyOf(NAME_SPLITTER.split(excludedNames));
+        this.objectsIncluded = objectsIncluded;
+    }
+
+    /**
+     * @return A filter configured with the perl.bindings.environment properties.
+     */
+    public static PerlBindingsFilter fromConfiguration() {
+        PerlPropertyLoader propertyLoader = PerlPropertyLoader.getInstance();
+        return new PerlBindingsFilter(propertyLoader.getProperty(INCLUDE_PROPERTY, ""),
+                                      propertyLoader.getProperty(EXCLUDE_PROPERTY, ""),
+                                      propertyLoader.getBooleanProperty(OBJECTS_PROPERTY, true));
+    }
+
+    /**
+     * @return True if the binding is added to the environment.
+     */
+    public boolean accepts(String name, Object value) {
+        if (!includedNames.isEmpty() && !matchesAny(name, includedNames)) {
+            return false;
+        }
+        if (matchesAny(name, excludedNames)) {
+            return false;
+        }
+        return objectsIncluded || isData(value);
+    }
+
+    /**
+     * @param bindings Bindings to filter. If null, null is returned.
+     * @return The accepted bindings, the same instance if all bindings are accepted.
+     */
+    public Bindings filter(Bindings bindings) {
+        if (bindings == null) {
+            return null;
+        }
+        Bindings acceptedBindings = new SimpleBindings();
+        for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+            if (accepts(binding.getKey(), binding.getValue())) {
+                acceptedBindings.put(binding.getKey(), binding.getValue());
+            }
+        }
+        return acceptedBindings.size() == bindings.size() ? bindings : acceptedBindings;
+    }
+
+    private static boolean matchesAny(String name, List<String> patterns) {
+        for (String pattern : patterns) {
+            if (pattern.endsWith("*") ? name.startsWith(pattern.substring(0, pattern.length() - 1))
+                                      : name.equals(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isData(Object value) {
+        return value == null || value instanceof CharSequence || value instanceof Number ||
+               value instanceof Boolean || value instanceof Character || value instanceof Map ||
+               value instanceof Collection || value instanceof Object[];
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.bindings;
+
+import jsr223.perl.utils.PerlPropertyLoader;
+
+
+/**
+ * Defines how bindings are handed to a perl script. Configured with the perl.bindings.transport property.
+ */
+public enum PerlBindingsTransport {
+
+    /**
+     * Every binding is added to the environment, see {@link PerlStringBindingsAdder} (default).
+     */
+    ENVIRONMENT,
+
+    /**
+     * All bindings are written once to a JSON file, see {@link PerlJsonBindingsWriter}, read in perl with the
+     * bundled JSR223::Perl::Bindings module. Only short scalar bindings are added to the environment as well.
+     */
+    JSON;
+
+    public static final String BINDINGS_TRANSPORT_PROPERTY = "perl.bindings.transport";
+
+    public static final String ENVIRONMENT_MAX_LENGTH_PROPERTY = "perl.bindings.environment.max.length";
+
+    public static PerlBindingsTransport getConfiguredTransport() {
+        return PerlPropertyLoader.getInstance().getEnumProperty(BINDINGS_TRANSPORT_PROPERTY, ENVIRONMENT);
+    }
+
+    /**
+     * @return Maximum length of a scalar binding added to the environment with the JSON transport.
+     */
+    public static int getEnvironmentMaxLength() {
+        return PerlPropertyLoader.getInstance().getIntProperty(ENVIRONMENT_MAX_LENGTH_PROPERTY, 4096);
+    }
+}
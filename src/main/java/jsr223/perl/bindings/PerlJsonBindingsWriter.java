@@ -0,0 +1,217 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.bindings;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import javax.script.Bindings;
+
+import com.google.common.base.Charsets;
+
+import jsr223.perl.utils.PerlPropertyLoader;
+import lombok.NoArgsConstructor;
+
+
+/**
+ * Serializes bindings into a JSON file, keeping maps, lists and numbers as such. The file path is given to the
+ * script in the JSR223_PERL_BINDINGS_FILE environment variable.
+ */
+@NoArgsConstructor
+public class PerlJsonBindingsWriter {
+
+    public static final String BINDINGS_FILE_VARIABLE = "JSR223_PERL_BINDINGS_FILE";
+
+    // Deeper values, most likely cyclic structures, are written with toString()
+    private static final int MAXIMUM_DEPTH = 64;
+
+    private static final String SHARED_MEMORY_DIRECTORY = "/dev/shm";
+
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+
+    /**
+     * Writes bindings to a new temporary file, in perl.bindings.dir if configured, else in the shared memory
+     * directory if available, else in the default temporary directory.
+     *
+     * @param bindings Bindings to write. If null an empty object is written.
+     * @return The written file, to be deleted by the caller.
+     * @throws IOException If the file could not be written.
+     */
+    public File writeBindingsFile(Bindings bindings) throws IOException {
+        File bindingsFile = createPrivateFile("jsr223-perl-bindings-", ".json");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(bindingsFile),
+                                                                       Charsets.UTF_8))) {
+            writeJson(bindings, writer);
+        } catch (IOException e) {
+            bindingsFile.delete();
+            throw e;
+        }
+        return bindingsFile;
+    }
+
+    /**
+     * Writes a value as JSON. Maps become objects, collections and arrays become arrays, numbers and booleans
+     * are kept, any other value is written as the string returned by toString().
+     *
+     * @param value  Value to write.
+     * @param writer Sink of the JSON text.
+     * @throws IOException If the writer fails.
+     */
+    public void writeJson(Object value, Writer writer) throws IOException {
+        writeValue(value, writer, 0);
+    }
+
+    private void writeValue(Object value, Writer writer, int depth) throws IOException {
+        if (value == null) {
+            writer.write("null");
+        } else if (depth > MAXIMUM_DEPTH) {
+            writeString(value.toString(), writer);
+        } else if (value instanceof Map) {
+            writer.write('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    writer.write(',');
+                }
+                first = false;
+                writeString(String.valueOf(entry.getKey()), writer);
+                writer.write(':');
+                writeValue(entry.getValue(), writer, depth + 1);
+            }
+            writer.write('}');
+        } else if (value instanceof Collection) {
+            writer.write('[');
+            boolean first = true;
+            for (Object element : (Collection<?>) value) {
+                if (!first) {
+                    writer.write(',');
+                }
+                first = false;
+                writeValue(element, writer, depth + 1);
+            }
+            writer.write(']');
+        } else if (value.getClass().isArray()) {
+            writer.write('[');
+            for (int i = 0; i < Array.getLength(value); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeValue(Array.get(value, i), writer, depth + 1);
+            }
+            writer.write(']');
+        } else if (value instanceof Boolean || isFiniteNumber(value)) {
+            writer.write(value.toString());
+        } else {
+            writeString(value.toString(), writer);
+        }
+    }
+
+    private static boolean isFiniteNumber(Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            return !Double.isNaN(number) && !Double.isInfinite(number);
+        }
+        return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+    }
+
+    private static void writeString(String value, Writer writer) throws IOException {
+        writer.write('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char character = value.charAt(i);
+            switch (character) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (character < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) character));
+                    } else {
+                        writer.write(character);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Creates a new empty file in the directory of bindings files, readable and writable by its owner only: the
+     * bindings, results and usage files hold the variables and credentials of the task.
+     *
+     * @return The created file, to be deleted by the caller.
+     * @throws IOException If the file could not be created.
+     */
+    public static File createPrivateFile(String prefix, String suffix) throws IOException {
+        File directory = getBindingsDirectory();
+        Path directoryPath = directory != null ? directory.toPath()
+                                               : Paths.get(System.getProperty("java.io.tmpdir"));
+        if (directoryPath.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return Files.createTempFile(directoryPath,
+                                        prefix,
+                                        suffix,
+                                        PosixFilePermissions.asFileAttribute(OWNER_ONLY))
+                        .toFile();
+        }
+        return Files.createTempFile(directoryPath, prefix, suffix).toFile();
+    }
+
+    /**
+     * @return The directory of bindings, results and usage files, null for the default temporary directory.
+     */
+    public static File getBindingsDirectory() {
+        String configuredDirectory = PerlPropertyLoader.getInstance().getProperty("perl.bindings.dir", null);
+        if (configuredDirectory != null) {
+            return new File(configuredDirectory);
+        }
+        File sharedMemory = new File(SHARED_MEMORY_DIRECTORY);
+        return sharedMemory.isDirectory() && sharedMemory.canWrite() ? sharedMemory : null;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.bindings;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Serializable;
+import java.util.Map;
+
+import javax.script.Bindings;
+
+import org.ow2.proactive.scheduler.common.SchedulerConstants;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CharStreams;
+import com.google.common.io.CountingInputStream;
+
+import jsr223.perl.utils.PerlPropertyLoader;
+import lombok.NoArgsConstructor;
+import lombok.extern.log4j.Log4j;
+
+
+/**
+ * Reads the variables and the result sent back by a perl script with the bundled JSR223::Perl::Results module.
+ *
+ * The channel is disabled unless perl.results.enabled is true. The engine then creates an empty file, readable by
+ * its owner only, for every evaluation and gives it to the script in the JSR223_PERL_RESULTS_FILE environment
+ * variable. The script appends records to it. A record is a header line followed by the UTF-8 name and value:
+ * "V &lt;name length&gt; &lt;value length&gt;\n" for a variable, "R 0 &lt;value length&gt;\n" for the result.
+ * Lengths are in bytes. Records are decoded one after the other from the file, a value is never read twice.
+ */
+@Log4j
+@NoArgsConstructor
+public class PerlResultsReader {
+
+    public static final String RESULTS_FILE_VARIABLE = "JSR223_PERL_RESULTS_FILE";
+
+    public static final String RESULT_BINDING_NAME = "result";
+
+    public static final String RESULTS_ENABLED_PROPERTY = "perl.results.enabled";
+
+    private static final int MAXIMUM_HEADER_LENGTH = 64;
+
+    // Larger values grow the builder while they are decoded
+    private static final int MAXIMUM_INITIAL_CAPACITY = 1 << 16;
+
+    public static boolean isEnabled() {
+        return PerlPropertyLoader.getInstance().getBooleanProperty(RESULTS_ENABLED_PROPERTY, false);
+    }
+
+    /**
+     * Creates a new empty results file, readable by its owner only, in the same directory as the bindings
+     * files. The script appends its records to it.
+     *
+     * @return The results file, to be deleted by the caller after the execution.
+     * @throws IOException If the file could not be created.
+     */
+    public File newResultsFile() throws IOException {
+        return PerlJsonBindingsWriter.createPrivateFile("jsr223-perl-results-", ".bin");
+    }
+
+    /**
+     * Merges the records of a results file into the bindings: variables into the variables map, if the
+     * bindings have one, and the result into the result binding. A variable or result written several times
+     * keeps its last value.
+     *
+     * @param resultsFile Results file of the execution, empty if the script sent nothing back. Nothing is read if
+     *                    the file does not exist.
+     * @param bindings    Bindings of the script.
+     * @throws IOException If the file could not be read or is malformed.
+     */
+    public void readResults(File resultsFile, Bindings bindings) throws IOException {
+        if (!resultsFile.isFile()) {
+            return;
+        }
+        try (InputStream records = new BufferedInputStream(new FileInputStream(resultsFile))) {
+            readResults(records, bindings);
+        }
+    }
+
+    /**
+     * Merges the records read from a stream into the bindings, see {@link #readResults(File, Bindings)}.
+     */
+    public void readResults(InputStream records, Bindings bindings) throws IOException {
+        Map<String, Serializable> variables = null;
+        if (bindings.get(SchedulerConstants.VARIABLES_BINDING_NAME) instanceof Map) {
+            variables = (Map<String, Serializable>) bindings.get(SchedulerConstants.VARIABLES_BINDING_NAME);
+        }
+        String header = readHeader(records);
+        while (header != null) {
+            String[] fields = header.split(" ");
+            if (fields.length != 3) {
+                throw new IOException("Malformed perl results record: " + header);
+            }
+            String name = readString(records, parseLength(fields[1], header));
+            String value = readString(records, parseLength(fields[2], header));
+            if ("R".equals(fields[0])) {
+                bindings.put(RESULT_BINDING_NAME, value);
+            } else if (!"V".equals(fields[0])) {
+                throw new IOException("Malformed perl results record: " + header);
+            } else if (variables != null) {
+                variables.put(name, value);
+            } else {
+                log.warn("Perl script variable " + name + " is ignored, there is no variables map in the bindings.");
+            }
+            header = readHeader(records);
+        }
+    }
+
+    /**
+     * @return The next header line without its line feed, or null at the end of the stream.
+     */
+    private static String readHeader(InputStream records) throws IOException {
+        StringBuilder header = new StringBuilder();
+        int character = records.read();
+        if (character == -1) {
+            return null;
+        }
+        while (character != '\n') {
+            if (character == -1 || header.length() >= MAXIMUM_HEADER_LENGTH) {
+                throw new IOException("Truncated perl results record: " + header);
+            }
+            header.append((char) character);
+            character = records.read();
+        }
+        return header.toString();
+    }
+
+    private static long parseLength(String length, String header) throws IOException {
+        try {
+            long parsedLength = Long.parseLong(length);
+            if (parsedLength >= 0 && parsedLength <= Integer.MAX_VALUE) {
+                return parsedLength;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IOException("Malformed perl results record: " + header);
+    }
+
+    /**
+     * Decodes exactly length bytes of the stream, without buffering them before decoding.
+     */
+    private static String readString(InputStream records, long length) throws IOException {
+        CountingInputStream value = new CountingInputStream(ByteStreams.limit(records, length));
+        StringBuilder decoded = new StringBuilder((int) Math.min(length, MAXIMUM_INITIAL_CAPACITY));
+        CharStreams.copy(new InputStreamReader(value, Charsets.UTF_8), decoded);
+        if (value.getCount() != length) {
+            throw new IOException("Truncated perl results record, " + value.getCount() + " of " + length +
+                                  " bytes read.");
+        }
+        return decoded.toString();
+    }
+}
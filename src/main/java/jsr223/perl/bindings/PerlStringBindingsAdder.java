@@ -53,17 +53,48 @@ public class PerlStringBindingsAdder {
         }
 
         for (Map.Entry<String, Object> binding : bindings.entrySet()) {
-            String bindingKey = binding.getKey();
-            Object bindingValue = binding.getValue();
+            addBindingToStringMap(binding.getKey(), binding.getValue(), environment);
+        }
+    }
+
+    /**
+     * Adds a single binding to the environment map, flattened as by {@link #addBindingToStringMap(Bindings, Map)}.
+     */
+    void addBindingToStringMap(String bindingKey, Object bindingValue, Map<String, String> environment) {
+        if (bindingValue instanceof Object[]) {
+            addArrayBindingAsEnvironmentVariable(bindingKey, (Object[]) bindingValue, environment);
+        } else if (bindingValue instanceof Collection) {
+            addCollectionBindingAsEnvironmentVariable(bindingKey, (Collection) bindingValue, environment);
+        } else if (bindingValue instanceof Map) {
+            addMapBindingAsEnvironmentVariable(bindingKey, (Map<?, ?>) bindingValue, environment);
+        } else {
+            environment.put(bindingKey, toEmptyStringIfNull(bindingValue));
+        }
+    }
+
+    /**
+     * Adds the scalar bindings (strings, numbers, booleans and characters) which are not longer than maxLength
+     * to the environment map. Lists, maps, other objects and longer values are left out.
+     *
+     * @param bindings    Bindings which will be read and added to environment. If null,
+     *                    this method will return immediately.
+     * @param environment Map<String,String> which will get the scalar bindings. If null,
+     *                    this method will return immediately.
+     * @param maxLength   Maximum length of an added value.
+     */
+    public void addScalarBindingsToStringMap(Bindings bindings, Map<String, String> environment, int maxLength) {
+        if (bindings == null || environment == null) {
+            return;
+        }
 
-            if (bindingValue instanceof Object[]) {
-                addArrayBindingAsEnvironmentVariable(bindingKey, (Object[]) bindingValue, environment);
-            } else if (bindingValue instanceof Collection) {
-                addCollectionBindingAsEnvironmentVariable(bindingKey, (Collection) bindingValue, environment);
-            } else if (bindingValue instanceof Map) {
-                addMapBindingAsEnvironmentVariable(bindingKey, (Map<?, ?>) bindingValue, environment);
-            } else {
-                environment.put(bindingKey, toEmptyStringIfNull(binding.getValue()));
+        for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+            Object bindingValue = binding.getValue();
+            if (bindingValue instanceof CharSequence || bindingValue instanceof Number ||
+                bindingValue instanceof Boolean || bindingValue instanceof Character) {
+                String value = bindingValue.toString();
+                if (value.length() <= maxLength) {
+                    environment.put(binding.getKey(), value);
+                }
             }
         }
     }
@@ -0,0 +1,309 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.file.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+import jsr223.perl.file.write.PerlScriptFileWriter;
+import jsr223.perl.utils.PerlPropertyLoader;
+import lombok.extern.log4j.Log4j;
+
+
+/**
+ * Content-addressed cache of perl script files. Every distinct script is written once to the cache directory,
+ * in a file named after the SHA-256 of the script, and reused by all evaluations and engine instances.
+ *
+ * Scripts are acquired for the time of an execution and released afterwards. When the cache holds more than
+ * perl.script.cache.max.entries scripts or perl.script.cache.max.bytes bytes, the least recently used
+ * scripts which are not acquired are deleted.
+ */
+@Log4j
+public class PerlScriptCache {
+
+    public static final String CACHE_ENABLED_PROPERTY = "perl.script.cache.enabled";
+
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+    private final File cacheDirectory;
+
+    private final int maximumEntries;
+
+    private final long maximumBytes;
+
+    // Access ordered, the first entry is the least recently used
+    private final LinkedHashMap<String, CachedScript> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long cachedBytes;
+
+    public PerlScriptCache(File cacheDirectory, int maximumEntries, long maximumBytes) {
+        this.cacheDirectory = cacheDirectory;
+        this.maximumEntries = maximumEntries;
+        this.maximumBytes = maximumBytes;
+    }
+
+    /**
+     * Initializes the cache from configuration.
+     *
+     * PerlScriptCacheHolder is loaded on the first execution of PerlScriptCache.getInstance(), not before.
+     */
+    private static class PerlScriptCacheHolder {
+        private static final PerlScriptCache INSTANCE = createConfiguredCache();
+
+        private static PerlScriptCache createConfiguredCache() {
+            PerlPropertyLoader properties = PerlPropertyLoader.getInstance();
+            String defaultDirectory = new File(System.getProperty("java.io.tmpdir"), "jsr223-perl-cache").getPath();
+            return new PerlScriptCache(new File(properties.getProperty("perl.script.cache.dir", defaultDirectory)),
+                                       properties.getIntProperty("perl.script.cache.max.entries", 1000),
+                                       properties.getLongProperty("perl.script.cache.max.bytes", 64L * 1024 * 1024));
+        }
+    }
+
+    public static PerlScriptCache getInstance() {
+        return PerlScriptCacheHolder.INSTANCE;
+    }
+
+    /**
+     * @return True if scripts are cached, configured with perl.script.cache.enabled (default false).
+     */
+    public static boolean isEnabled() {
+        return PerlPropertyLoader.getInstance().getBooleanProperty(CACHE_ENABLED_PROPERTY, false);
+    }
+
+    /**
+     * @return The hexadecimal SHA-256 of the script, which identifies the script in the cache.
+     */
+    public static String hash(String script) {
+        return Hashing.sha256().hashString(script, Charsets.UTF_8).toString();
+    }
+
+    /**
+     * Retrieves the cached file of a script, writing it if the script is not cached yet. The returned script
+     * is not evicted until it is released.
+     *
+     * @param script Perl script content.
+     * @return The cached script, which must be given back with {@link #release(CachedScript)}.
+     * @throws IOException If the script file could not be written.
+     */
+    public CachedScript acquire(String script) throws IOException {
+        String hash = hash(script);
+        byte[] content = script.getBytes(Charset.defaultCharset());
+        CachedScript cachedScript;
+        synchronized (this) {
+            cachedScript = entries.get(hash);
+            if (cachedScript == null) {
+                File scriptFile = new File(cacheDirectory, hash + PerlScriptFileWriter.PERL_FILE_EXTENSION);
+                cachedScript = new CachedScript(hash, scriptFile, content.length);
+                entries.put(hash, cachedScript);
+                cachedBytes += cachedScript.getLength();
+            }
+            // Leased before its file is written, so that the file is not evicted until it is released
+            cachedScript.leases++;
+            if (cachedScript.written && cachedScript.getFile().isFile()) {
+                return cachedScript;
+            }
+        }
+
+        // Written outside of the lock, concurrent writers of the same script write the same content
+        try {
+            writeScriptFile(cachedScript.getFile(), content);
+        } catch (IOException e) {
+            release(cachedScript);
+            throw e;
+        }
+
+        synchronized (this) {
+            cachedScript.written = true;
+            evict();
+            return cachedScript;
+        }
+    }
+
+    /**
+     * Acquires again a script which is already acquired, without hashing it. The script is written again if its
+     * file was deleted.
+     *
+     * @param cachedScript Script acquired with {@link #acquire(String)} and not released yet.
+     * @param script       Perl script content.
+     * @return The cached script, which must be given back with {@link #release(CachedScript)}.
+     * @throws IOException If the script file could not be written.
+     */
+    public CachedScript acquire(CachedScript cachedScript, String script) throws IOException {
+        synchronized (this) {
+            if (cachedScript.leases > 0 && cachedScript.getFile().isFile()) {
+                cachedScript.leases++;
+                return cachedScript;
+            }
+        }
+        return acquire(script);
+    }
+
+    /**
+     * Gives back a script acquired with {@link #acquire(String)}, making it eligible for eviction.
+     */
+    public synchronized void release(CachedScript cachedScript) {
+        cachedScript.leases--;
+        if (cachedScript.leases == 0 && cachedScript.deletedWhenReleased &&
+            entries.get(cachedScript.getHash()) == cachedScript) {
+            entries.remove(cachedScript.getHash());
+            cachedBytes -= cachedScript.getLength();
+            deleteScriptFile(cachedScript);
+        }
+        evict();
+    }
+
+    /**
+     * Deletes the file of an acquired script once it is released by all its holders, instead of keeping it
+     * for later executions. Used for scripts cached while perl.script.cache.enabled is false.
+     */
+    public synchronized void deleteWhenReleased(CachedScript cachedScript) {
+        cachedScript.deletedWhenReleased = true;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void writeScriptFile(File scriptFile, byte[] content) throws IOException {
+        createCacheDirectory();
+        if (scriptFile.isFile() && scriptFile.length() == content.length &&
+            Arrays.equals(Files.readAllBytes(scriptFile.toPath()), content)) {
+            // Written by another engine or a previous JVM, with the same content
+            return;
+        }
+        // Written aside and moved, so that a partially written file is never executed
+        Path temporaryFile = Files.createTempFile(cacheDirectory.toPath(), scriptFile.getName(), ".tmp");
+        try {
+            Files.write(temporaryFile, content);
+            Files.move(temporaryFile, scriptFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Creates the cache directory, readable by its owner only, and refuses a directory owned by another user
+     * who could replace the cached scripts.
+     */
+    private void createCacheDirectory() throws IOException {
+        Path directory = cacheDirectory.toPath();
+        boolean posix = directory.getFileSystem().supportedFileAttributeViews().contains("posix");
+        if (!cacheDirectory.isDirectory()) {
+            try {
+                if (posix) {
+                    Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+                } else {
+                    Files.createDirectories(directory);
+                }
+            } catch (FileAlreadyExistsException e) {
+                throw new IOException("Perl script cache directory " + cacheDirectory + " is not a directory.", e);
+            }
+        }
+        if (posix) {
+            UserPrincipal owner = Files.getOwner(directory);
+            UserPrincipal user = directory.getFileSystem()
+                                          .getUserPrincipalLookupService()
+                                          .lookupPrincipalByName(System.getProperty("user.name"));
+            if (!owner.equals(user)) {
+                throw new IOException("Perl script cache directory " + cacheDirectory + " is owned by " + owner +
+                                      ", not by " + user + ".");
+            }
+        }
+    }
+
+    private void evict() {
+        Iterator<CachedScript> leastRecentlyUsed = entries.values().iterator();
+        while ((entries.size() > maximumEntries || cachedBytes > maximumBytes) && leastRecentlyUsed.hasNext()) {
+            CachedScript cachedScript = leastRecentlyUsed.next();
+            if (cachedScript.leases > 0) {
+                continue;
+            }
+            leastRecentlyUsed.remove();
+            cachedBytes -= cachedScript.getLength();
+            deleteScriptFile(cachedScript);
+        }
+    }
+
+    private static void deleteScriptFile(CachedScript cachedScript) {
+        if (!cachedScript.getFile().delete()) {
+            log.warn("File: " + cachedScript.getFile().getAbsolutePath() + " was not deleted.");
+        }
+    }
+
+    /**
+     * A script file held by the cache.
+     */
+    public static class CachedScript {
+
+        private final String hash;
+
+        private final File file;
+
+        private final long length;
+
+        // Guarded by the cache
+        private int leases;
+
+        // Guarded by the cache
+        private boolean deletedWhenReleased;
+
+        // Guarded by the cache
+        private boolean written;
+
+        CachedScript(String hash, File file, long length) {
+            this.hash = hash;
+            this.file = file;
+            this.length = length;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public long getLength() {
+            return length;
+        }
+    }
+}
@@ -28,8 +28,11 @@ package jsr223.perl.file.write;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.Writer;
 
+import processbuilder.utils.PerlProcessBuilderUtilities;
+
 
 public class PerlScriptFileWriter {
 
@@ -51,4 +54,23 @@ public class PerlScriptFileWriter {
 
         return perlTempFile;
     }
+
+    /**
+     * Streams a script to a new perl file, a buffer at a time. The reader is closed.
+     *
+     * @throws IOException If the file could not be written or the script could not be read. The file is then
+     *                     deleted.
+     */
+    public File forceFileToDisk(Reader fileContent) throws IOException {
+        File perlTempFile = File.createTempFile("jsr223-perl-", PERL_FILE_EXTENSION);
+        try (Writer perlScriptFileWriter = new FileWriter(perlTempFile)) {
+            PerlProcessBuilderUtilities.pipe(fileContent, perlScriptFileWriter);
+        } catch (IOException e) {
+            if (!perlTempFile.delete()) {
+                perlTempFile.deleteOnExit();
+            }
+            throw e;
+        }
+        return perlTempFile;
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.limits;
+
+import jsr223.perl.utils.PerlPropertyLoader;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+
+/**
+ * Resource limits applied to the perl processes of the process execution mode, with the ulimit builtin of the
+ * shell wrapping the perl command. A limit of 0 leaves the resource unlimited.
+ */
+@AllArgsConstructor
+@Getter
+public class PerlResourceLimits {
+
+    public static final String CPU_SECONDS_PROPERTY = "perl.limits.cpu.seconds";
+
+    public static final String ADDRESS_SPACE_PROPERTY = "perl.limits.address.space.kb";
+
+    public static final String OPEN_FILES_PROPERTY = "perl.limits.open.files";
+
+    private final long cpuSeconds;
+
+    private final long addressSpaceKilobytes;
+
+    private final long openFiles;
+
+    public static PerlResourceLimits fromConfiguration() {
+        PerlPropertyLoader properties = PerlPropertyLoader.getInstance();
+        return new PerlResourceLimits(properties.getLongProperty(CPU_SECONDS_PROPERTY, 0),
+                                      properties.getLongProperty(ADDRESS_SPACE_PROPERTY, 0),
+                                      properties.getLongProperty(OPEN_FILES_PROPERTY, 0));
+    }
+
+    /**
+     * @return True if at least one resource is limited.
+     */
+    public boolean isEnabled() {
+        return cpuSeconds > 0 || addressSpaceKilobytes > 0 || openFiles > 0;
+    }
+
+    /**
+     * Builds the shell commands setting the limits. The CPU time hard limit is one second above the soft limit,
+     * so that perl receives SIGXCPU, which the JSR223::Perl::Usage module turns into a die, before SIGKILL.
+     *
+     * @return The ulimit commands joined with &&, or an empty string if no resource is limited.
+     */
+    public String toUlimitCommands() {
+        StringBuilder commands = new StringBuilder();
+        if (cpuSeconds > 0) {
+            // The soft limit first, a hard limit below the current soft limit is rejected
+            appendCommand(commands, "ulimit -S -t " + cpuSeconds);
+            appendCommand(commands, "ulimit -H -t " + (cpuSeconds + 1));
+        }
+        if (addressSpaceKilobytes > 0) {
+            appendCommand(commands, "ulimit -v " + addressSpaceKilobytes);
+        }
+        if (openFiles > 0) {
+            appendCommand(commands, "ulimit -n " + openFiles);
+        }
+        return commands.toString();
+    }
+
+    private static void appendCommand(StringBuilder commands, String command) {
+        if (commands.length() > 0) {
+            commands.append(" && ");
+        }
+        commands.append(command);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.limits;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.script.Bindings;
+
+import org.ow2.proactive.scheduler.common.SchedulerConstants;
+
+import jsr223.perl.bindings.PerlJsonBindingsWriter;
+import jsr223.perl.utils.PerlPropertyLoader;
+import lombok.NoArgsConstructor;
+import lombok.extern.log4j.Log4j;
+
+
+/**
+ * Reads the resource usage of a perl process, written when perl exits by the bundled JSR223::Perl::Usage
+ * module loaded with -M.
+ *
+ * The module writes "&lt;name&gt;=&lt;value&gt;" lines to the file given in the JSR223_PERL_USAGE_FILE
+ * environment variable: CPU_USER_SECONDS and CPU_SYSTEM_SECONDS from times, including the waited children, and
+ * on Linux MAX_RSS_KB from /proc/self/status, READ_BYTES and WRITE_BYTES from /proc/self/io. A process killed
+ * by a signal writes nothing.
+ */
+@Log4j
+@NoArgsConstructor
+public class PerlResourceUsageReader {
+
+    public static final String USAGE_FILE_VARIABLE = "JSR223_PERL_USAGE_FILE";
+
+    public static final String USAGE_ENABLED_PROPERTY = "perl.resource.usage.enabled";
+
+    public static final String USAGE_MODULE = "JSR223::Perl::Usage";
+
+    /**
+     * Prefix of the bindings and variables holding the usage, e.g. PERL_USAGE_MAX_RSS_KB.
+     */
+    public static final String USAGE_BINDING_PREFIX = "PERL_USAGE_";
+
+    private static final String SECONDS_SUFFIX = "_SECONDS";
+
+    public static boolean isEnabled() {
+        return PerlPropertyLoader.getInstance().getBooleanProperty(USAGE_ENABLED_PROPERTY, false);
+    }
+
+    /**
+     * Creates a new empty usage file, readable by its owner only, in the same directory as the bindings files.
+     * Perl writes the usage to it when it exits.
+     *
+     * @return The usage file, to be deleted by the caller after the execution.
+     * @throws IOException If the file could not be created.
+     */
+    public File newUsageFile() throws IOException {
+        return PerlJsonBindingsWriter.createPrivateFile("jsr223-perl-usage-", ".txt");
+    }
+
+    /**
+     * Publishes the usage of a usage file in the bindings and in the variables map, if the bindings have one.
+     * Seconds are published as doubles, the other values as longs.
+     *
+     * @param usageFile Usage file of the execution. Nothing is published if perl did not create it.
+     * @param bindings  Bindings of the script.
+     * @return The published values, by binding name.
+     * @throws IOException If the file could not be read.
+     */
+    public Map<String, Serializable> readUsage(File usageFile, Bindings bindings) throws IOException {
+        Map<String, Serializable> usage = new LinkedHashMap<>();
+        if (!usageFile.isFile()) {
+            return usage;
+        }
+        try (BufferedReader lines = Files.newBufferedReader(usageFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                int separator = line.indexOf('=');
+                if (separator <= 0) {
+                    continue;
+                }
+                String name = line.substring(0, separator);
+                Serializable value = parseValue(name, line.substring(separator + 1).trim());
+                if (value != null) {
+                    usage.put(USAGE_BINDING_PREFIX + name, value);
+                }
+            }
+        }
+        if (bindings.get(SchedulerConstants.VARIABLES_BINDING_NAME) instanceof Map) {
+            ((Map<String, Serializable>) bindings.get(SchedulerConstants.VARIABLES_BINDING_NAME)).putAll(usage);
+        }
+        bindings.putAll(usage);
+        return usage;
+    }
+
+    private static Serializable parseValue(String name, String value) {
+        try {
+            if (name.endsWith(SECONDS_SUFFIX)) {
+                return Double.valueOf(value);
+            }
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            log.warn("Ignored resource usage " + name + " which is not a number: " + value);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.metrics;
+
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+import lombok.Setter;
+
+
+/**
+ * Measurements of one script evaluation: the duration of each {@link PerlPhase}, the bytes of standard and
+ * error output written by perl, the environment size and the outcome. Collected by the engine and recorded in the
+ * {@link PerlMetricsRegistry} once the evaluation is over.
+ */
+public class PerlEvaluationMetrics {
+
+    public static final String VARIABLE_PREFIX = "PERL_METRICS_";
+
+    private final long startNanos = System.nanoTime();
+
+    private final Map<PerlPhase, Long> phaseNanos = new EnumMap<>(PerlPhase.class);
+
+    private long lastMarkNanos = startNanos;
+
+    private final AtomicLong outputBytes = new AtomicLong();
+
+    private final AtomicLong errorBytes = new AtomicLong();
+
+    @Getter
+    private long environmentSize;
+
+    @Getter
+    @Setter
+    private Integer exitValue;
+
+    @Getter
+    @Setter
+    private boolean timedOut;
+
+    /**
+     * Ends a phase: the time elapsed since the end of the previous phase, or since the start of the
+     * evaluation, is added to it.
+     */
+    public synchronized void mark(PerlPhase phase) {
+        long now = System.nanoTime();
+        Long previousNanos = phaseNanos.get(phase);
+        phaseNanos.put(phase, (previousNanos == null ? 0 : previousNanos) + now - lastMarkNanos);
+        lastMarkNanos = now;
+    }
+
+    /**
+     * @return The duration of a phase in nanoseconds, or -1 if it was not reached.
+     */
+    public synchronized long getPhaseNanos(PerlPhase phase) {
+        Long nanos = phaseNanos.get(phase);
+        return nanos == null ? -1 : nanos;
+    }
+
+    /**
+     * @return The time elapsed since the start of the evaluation, in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * @return A stream counting the standard output bytes read from the given process output.
+     */
+    public InputStream countOutput(InputStream processOutput) {
+        return new PerlCountingInputStream(processOutput, outputBytes);
+    }
+
+    /**
+     * @return A stream counting the error output bytes read from the given process error output.
+     */
+    public InputStream countError(InputStream processError) {
+        return new PerlCountingInputStream(processError, errorBytes);
+    }
+
+    /**
+     * Adds standard output bytes which were not read from the process, such as the output captured by a pooled
+     * worker or redirected to a file.
+     */
+    public void addOutputBytes(long bytes) {
+        outputBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Adds error output bytes which were not read from the process, see {@link #addOutputBytes(long)}.
+     */
+    public void addErrorBytes(long bytes) {
+        errorBytes.addAndGet(bytes);
+    }
+
+    public long getOutputBytes() {
+        return outputBytes.get();
+    }
+
+    public long getErrorBytes() {
+        return errorBytes.get();
+    }
+
+    /**
+     * Records the size of the environment of the script, in characters as in name=value entries.
+     */
+    public void setEnvironment(Map<String, String> environment) {
+        long size = 0;
+        for (Map.Entry<String, String> variable : environment.entrySet()) {
+            size += variable.getKey().length() + variable.getValue().length() + 2;
+        }
+        environmentSize = size;
+    }
+
+    /**
+     * @return True if the evaluation ended without an exit value and was not timed out, for instance if perl
+     * could not be started or the evaluation was interrupted.
+     */
+    public boolean isFailed() {
+        return exitValue == null && !timedOut;
+    }
+
+    /**
+     * Adds the measurements to a variables map, PERL_METRICS_&lt;PHASE&gt;_MS for the phases reached,
+     * PERL_METRICS_TOTAL_MS, PERL_METRICS_STDOUT_BYTES, PERL_METRICS_STDERR_BYTES and
+     * PERL_METRICS_ENVIRONMENT_SIZE.
+     */
+    public void addToVariables(Map<String, Serializable> variables) {
+        for (PerlPhase phase : PerlPhase.values()) {
+            long nanos = getPhaseNanos(phase);
+            if (nanos >= 0) {
+                variables.put(VARIABLE_PREFIX + phase + "_MS", toMillis(nanos));
+            }
+        }
+        variables.put(VARIABLE_PREFIX + "TOTAL_MS", toMillis(getElapsedNanos()));
+        variables.put(VARIABLE_PREFIX + "STDOUT_BYTES", getOutputBytes());
+        variables.put(VARIABLE_PREFIX + "STDERR_BYTES", getErrorBytes());
+        variables.put(VARIABLE_PREFIX + "ENVIRONMENT_SIZE", environmentSize);
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1e3) / 1e3;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.metrics;
+
+import java.util.Arrays;
+
+
+/**
+ * Keeps the most recent durations recorded, up to a fixed number, to compute percentiles on demand. Recording
+ * only stores the duration, the cost of sorting is paid by the snapshot.
+ */
+public class PerlLatencyHistogram {
+
+    private final long[] samples;
+
+    private int nextSample;
+
+    private int sampleCount;
+
+    /**
+     * @param maximumSamples Number of durations kept, at least 1 is kept.
+     */
+    public PerlLatencyHistogram(int maximumSamples) {
+        this.samples = new long[Math.max(maximumSamples, 1)];
+    }
+
+    public synchronized void record(long durationNanos) {
+        samples[nextSample] = durationNanos;
+        nextSample = (nextSample + 1) % samples.length;
+        sampleCount = Math.min(sampleCount + 1, samples.length);
+    }
+
+    /**
+     * @param percentile Percentile between 0 and 100.
+     * @return The duration in milliseconds below which the given percentage of the kept durations are, or 0
+     * if none was recorded.
+     */
+    public double getPercentileMillis(double percentile) {
+        long[] sortedSamples;
+        synchronized (this) {
+            sortedSamples = Arrays.copyOf(samples, sampleCount);
+        }
+        if (sortedSamples.length == 0) {
+            return 0;
+        }
+        Arrays.sort(sortedSamples);
+        int rank = (int) Math.ceil(percentile / 100 * sortedSamples.length);
+        return sortedSamples[Math.max(0, Math.min(rank, sortedSamples.length) - 1)] / 1e6;
+    }
+
+    public synchronized int getSampleCount() {
+        return sampleCount;
+    }
+
+    public synchronized void reset() {
+        nextSample = 0;
+        sampleCount = 0;
+    }
+}
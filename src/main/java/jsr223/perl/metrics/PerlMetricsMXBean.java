@@ -0,0 +1,93 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.metrics;
+
+import java.util.Map;
+
+
+/**
+ * Metrics of the perl script engine, registered as jsr223.perl:type=PerlMetrics. Durations are in
+ * milliseconds, percentiles are computed over the most recent evaluations.
+ */
+public interface PerlMetricsMXBean {
+
+    long getEvaluationCount();
+
+    /**
+     * @return Evaluations ended without an exit value, for instance because perl could not be started.
+     */
+    long getFailureCount();
+
+    long getTimeoutCount();
+
+    long getNonZeroExitCount();
+
+    long getStandardOutputBytes();
+
+    long getStandardErrorBytes();
+
+    /**
+     * @return Size in characters of the environment of the last evaluation.
+     */
+    long getLastEnvironmentSize();
+
+    long getMaximumEnvironmentSize();
+
+    /**
+     * @return Perl processes, or pooled workers, currently executing a script.
+     */
+    int getRunningProcessCount();
+
+    int getPeakRunningProcessCount();
+
+    /**
+     * @return Median duration of each phase, by phase name.
+     */
+    Map<String, Double> getPhaseP50Millis();
+
+    /**
+     * @return 99th percentile of the duration of each phase, by phase name.
+     */
+    Map<String, Double> getPhaseP99Millis();
+
+    double getTotalP50Millis();
+
+    double getTotalP99Millis();
+
+    /**
+     * @return Median duration of ProcessBuilder.start, the fork and exec latency of the configured launcher.
+     */
+    double getSpawnP50Millis();
+
+    double getSpawnP99Millis();
+
+    /**
+     * @return Age of each running perl process, the oldest first, by name of the task running it.
+     */
+    Map<String, Long> getRunningTaskAgesMillis();
+
+    void reset();
+}
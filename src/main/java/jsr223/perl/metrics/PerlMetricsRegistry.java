@@ -0,0 +1,303 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.metrics;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jsr223.perl.utils.PerlPropertyLoader;
+import lombok.extern.log4j.Log4j;
+import processbuilder.utils.PerlProcessRegistry;
+
+
+/**
+ * Aggregates the {@link PerlEvaluationMetrics} of all evaluations of the JVM. Counters are updated with atomic
+ * operations, durations are kept by {@link PerlLatencyHistogram}s of perl.metrics.histogram.samples
+ * evaluations (default: 1024).
+ *
+ * The metrics are written to the variables map of every evaluation when perl.metrics.variables is true
+ * (default: false).
+ */
+@Log4j
+public class PerlMetricsRegistry implements PerlMetricsMXBean {
+
+    public static final String OBJECT_NAME = "jsr223.perl:type=PerlMetrics";
+
+    public static final String VARIABLES_PROPERTY = "perl.metrics.variables";
+
+    public static final String HISTOGRAM_SAMPLES_PROPERTY = "perl.metrics.histogram.samples";
+
+    private final Map<PerlPhase, PerlLatencyHistogram> phaseHistograms = new EnumMap<>(PerlPhase.class);
+
+    private final PerlLatencyHistogram totalHistogram;
+
+    private final PerlLatencyHistogram spawnHistogram;
+
+    private final AtomicLong evaluationCount = new AtomicLong();
+
+    private final AtomicLong failureCount = new AtomicLong();
+
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    private final AtomicLong nonZeroExitCount = new AtomicLong();
+
+    private final AtomicLong standardOutputBytes = new AtomicLong();
+
+    private final AtomicLong standardErrorBytes = new AtomicLong();
+
+    private final AtomicLong lastEnvironmentSize = new AtomicLong();
+
+    private final AtomicLong maximumEnvironmentSize = new AtomicLong();
+
+    private final AtomicInteger runningProcessCount = new AtomicInteger();
+
+    private final AtomicInteger peakRunningProcessCount = new AtomicInteger();
+
+    public PerlMetricsRegistry(int histogramSamples) {
+        for (PerlPhase phase : PerlPhase.values()) {
+            phaseHistograms.put(phase, new PerlLatencyHistogram(histogramSamples));
+        }
+        totalHistogram = new PerlLatencyHistogram(histogramSamples);
+        spawnHistogram = new PerlLatencyHistogram(histogramSamples);
+    }
+
+    /**
+     * Initializes the registry and registers it in the platform MBean server.
+     *
+     * RegistryHolder is loaded on the first execution of PerlMetricsRegistry.getInstance(), not before.
+     */
+    private static class RegistryHolder {
+        private static final PerlMetricsRegistry INSTANCE = createRegistry();
+
+        private static PerlMetricsRegistry createRegistry() {
+            int histogramSamples = PerlPropertyLoader.getInstance().getIntProperty(HISTOGRAM_SAMPLES_PROPERTY, 1024);
+            PerlMetricsRegistry registry = new PerlMetricsRegistry(histogramSamples);
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(registry, new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                // Another class loader of the script engine registered it first
+                log.debug("Perl script engine metrics are not registered as " + OBJECT_NAME, e);
+            }
+            return registry;
+        }
+    }
+
+    public static PerlMetricsRegistry getInstance() {
+        return RegistryHolder.INSTANCE;
+    }
+
+    public static boolean isVariablesOutputEnabled() {
+        return PerlPropertyLoader.getInstance().getBooleanProperty(VARIABLES_PROPERTY, false);
+    }
+
+    /**
+     * Counts a process, or a pooled worker, starting to execute a script.
+     */
+    public void processStarted() {
+        int running = runningProcessCount.incrementAndGet();
+        int peak = peakRunningProcessCount.get();
+        while (running > peak && !peakRunningProcessCount.compareAndSet(peak, running)) {
+            peak = peakRunningProcessCount.get();
+        }
+    }
+
+    /**
+     * Records how long ProcessBuilder.start took to fork and exec a perl process.
+     */
+    public void recordSpawn(long nanos) {
+        spawnHistogram.record(nanos);
+    }
+
+    /**
+     * Counts a process, or a pooled worker, done with a script.
+     */
+    public void processEnded() {
+        runningProcessCount.decrementAndGet();
+    }
+
+    /**
+     * Records the metrics of an evaluation which is over.
+     *
+     * @param metrics   Metrics of the evaluation.
+     * @param variables Variables map of the evaluation, the metrics are added to it if enabled. May be null.
+     */
+    public void record(PerlEvaluationMetrics metrics, Map<String, Serializable> variables) {
+        evaluationCount.incrementAndGet();
+        if (metrics.isTimedOut()) {
+            timeoutCount.incrementAndGet();
+        } else if (metrics.isFailed()) {
+            failureCount.incrementAndGet();
+        } else if (metrics.getExitValue() != 0) {
+            nonZeroExitCount.incrementAndGet();
+        }
+        for (PerlPhase phase : PerlPhase.values()) {
+            long nanos = metrics.getPhaseNanos(phase);
+            if (nanos >= 0) {
+                phaseHistograms.get(phase).record(nanos);
+            }
+        }
+        totalHistogram.record(metrics.getElapsedNanos());
+        standardOutputBytes.addAndGet(metrics.getOutputBytes());
+        standardErrorBytes.addAndGet(metrics.getErrorBytes());
+        lastEnvironmentSize.set(metrics.getEnvironmentSize());
+        long maximum = maximumEnvironmentSize.get();
+        while (metrics.getEnvironmentSize() > maximum &&
+               !maximumEnvironmentSize.compareAndSet(maximum, metrics.getEnvironmentSize())) {
+            maximum = maximumEnvironmentSize.get();
+        }
+        if (variables != null && isVariablesOutputEnabled()) {
+            metrics.addToVariables(variables);
+        }
+    }
+
+    @Override
+    public long getEvaluationCount() {
+        return evaluationCount.get();
+    }
+
+    @Override
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    @Override
+    public long getNonZeroExitCount() {
+        return nonZeroExitCount.get();
+    }
+
+    @Override
+    public long getStandardOutputBytes() {
+        return standardOutputBytes.get();
+    }
+
+    @Override
+    public long getStandardErrorBytes() {
+        return standardErrorBytes.get();
+    }
+
+    @Override
+    public long getLastEnvironmentSize() {
+        return lastEnvironmentSize.get();
+    }
+
+    @Override
+    public long getMaximumEnvironmentSize() {
+        return maximumEnvironmentSize.get();
+    }
+
+    @Override
+    public int getRunningProcessCount() {
+        return runningProcessCount.get();
+    }
+
+    @Override
+    public int getPeakRunningProcessCount() {
+        return peakRunningProcessCount.get();
+    }
+
+    @Override
+    public Map<String, Double> getPhaseP50Millis() {
+        return getPhasePercentileMillis(50);
+    }
+
+    @Override
+    public Map<String, Double> getPhaseP99Millis() {
+        return getPhasePercentileMillis(99);
+    }
+
+    @Override
+    public double getTotalP50Millis() {
+        return totalHistogram.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getTotalP99Millis() {
+        return totalHistogram.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getSpawnP50Millis() {
+        return spawnHistogram.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getSpawnP99Millis() {
+        return spawnHistogram.getPercentileMillis(99);
+    }
+
+    @Override
+    public Map<String, Long> getRunningTaskAgesMillis() {
+        Map<String, Long> ages = new LinkedHashMap<>();
+        for (PerlProcessRegistry.Registration registration : PerlProcessRegistry.getInstance().getRunningProcesses()) {
+            // The same task may run several scripts at once
+            String name = registration.getName();
+            for (int i = 2; ages.containsKey(name); i++) {
+                name = registration.getName() + " #" + i;
+            }
+            ages.put(name, registration.getAgeMillis());
+        }
+        return ages;
+    }
+
+    @Override
+    public void reset() {
+        for (PerlLatencyHistogram histogram : phaseHistograms.values()) {
+            histogram.reset();
+        }
+        totalHistogram.reset();
+        spawnHistogram.reset();
+        evaluationCount.set(0);
+        failureCount.set(0);
+        timeoutCount.set(0);
+        nonZeroExitCount.set(0);
+        standardOutputBytes.set(0);
+        standardErrorBytes.set(0);
+        lastEnvironmentSize.set(0);
+        maximumEnvironmentSize.set(0);
+        peakRunningProcessCount.set(runningProcessCount.get());
+    }
+
+    private Map<String, Double> getPhasePercentileMillis(double percentile) {
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        for (PerlPhase phase : PerlPhase.values()) {
+            percentiles.put(phase.name(), phaseHistograms.get(phase).getPercentileMillis(percentile));
+        }
+        return percentiles;
+    }
+}
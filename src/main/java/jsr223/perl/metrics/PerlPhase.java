@@ -0,0 +1,62 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.metrics;
+
+/**
+ * Phases of a script evaluation timed by {@link PerlEvaluationMetrics}.
+ */
+public enum PerlPhase {
+
+    /**
+     * Script file writing, or lookup in the script cache.
+     */
+    SCRIPT_PREPARATION,
+
+    /**
+     * Environment building from the bindings.
+     */
+    ENVIRONMENT,
+
+    /**
+     * Fork and exec of the perl process, with the attachment of its streams.
+     */
+    PROCESS_START,
+
+    /**
+     * Script execution, until the exit of the process. In pool mode it includes the wait for a worker.
+     */
+    EXECUTION,
+
+    /**
+     * Wait for the output of the process after its exit.
+     */
+    OUTPUT_DRAIN,
+
+    /**
+     * Results reading, file deletion and process tree killing.
+     */
+    CLEANUP
+}
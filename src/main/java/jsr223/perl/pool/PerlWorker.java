@@ -0,0 +1,249 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.pool;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+
+import jsr223.perl.PerlCommandCreator;
+import jsr223.perl.metrics.PerlEvaluationMetrics;
+import lombok.extern.log4j.Log4j;
+import processbuilder.PerlProcessBuilderFactory;
+
+
+/**
+ * A long-lived perl process running the resident driver loop (jsr223/perl/pool/perl-worker.pl). Scripts and
+ * their environment are sent over the process standard input, exit value and captured output are read back
+ * from the process standard output.
+ *
+ * A worker executes one script at a time, it is not thread-safe.
+ */
+@Log4j
+public class PerlWorker {
+
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private final Process process;
+
+    private final OutputStream requests;
+
+    private final InputStream responses;
+
+    private final long creationTime = System.currentTimeMillis();
+
+    private volatile long lastUsedTime = creationTime;
+
+    private int executionCount;
+
+    PerlWorker(Process process) {
+        this.process = process;
+        this.requests = new BufferedOutputStream(process.getOutputStream());
+        this.responses = new BufferedInputStream(process.getInputStream());
+    }
+
+    /**
+     * Starts a new worker process.
+     *
+     * @param factory                Factory used to create the process builder.
+     * @param driverSource           Perl source of the driver loop.
+     * @param maximumCompiledScripts Number of compiled scripts kept by the worker.
+     * @param forkPerScript          True to run each script in a child process forked by the worker.
+     * @param preloadedModules       Perl modules loaded by the worker when it starts.
+     * @return The started worker.
+     * @throws IOException If the perl process cannot be started.
+     */
+    static PerlWorker start(PerlProcessBuilderFactory factory, String driverSource, int maximumCompiledScripts,
+            boolean forkPerScript, List<String> preloadedModules) throws IOException {
+        List<String> arguments = new ArrayList<>();
+        arguments.add(Integer.toString(maximumCompiledScripts));
+        arguments.add(forkPerScript ? "1" : "0");
+        arguments.addAll(preloadedModules);
+        String[] driverArguments = arguments.toArray(new String[arguments.size()]);
+        String[] command = new PerlCommandCreator().createPerlEvaluationCommand(driverSource, driverArguments);
+        ProcessBuilder processBuilder = factory.getProcessBuilder(command);
+        // Scripts are sent on the standard input
+        processBuilder.redirectInput(ProcessBuilder.Redirect.PIPE);
+        // Errors of the driver loop itself go to the JVM error output, task errors are captured by the driver
+        processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        return new PerlWorker(processBuilder.start());
+    }
+
+    /**
+     * Executes a script in this worker and writes its captured output to the given writers.
+     *
+     * @param script      Perl script to execute.
+     * @param scriptHash  Hash identifying the script, the compiled script is kept for the next executions of the
+     *                    same hash. If null the script is compiled for this execution only.
+     * @param environment Environment variables added to the worker environment for this script only.
+     * @param output      Sink for the script standard output. If null the output is discarded.
+     * @param error       Sink for the script error output. If null the output is discarded.
+     * @param metrics     Metrics of the evaluation, the bytes of output and error are added to. May be null.
+     * @return The exit value of the script.
+     * @throws IOException If the communication with the worker failed, the worker must not be reused.
+     */
+    public int execute(String script, String scriptHash, Map<String, String> environment, Writer output,
+            Writer error, PerlEvaluationMetrics metrics) throws IOException {
+        executionCount++;
+        lastUsedTime = System.currentTimeMillis();
+
+        writeLine("RUN " + (scriptHash == null ? "-" : scriptHash));
+        writeLine(Integer.toString(environment.size()));
+        for (Map.Entry<String, String> entry : environment.entrySet()) {
+            byte[] key = entry.getKey().getBytes(CHARSET);
+            byte[] value = entry.getValue().getBytes(CHARSET);
+            writeLine(key.length + " " + value.length);
+            requests.write(key);
+            requests.write(value);
+        }
+        byte[] scriptBytes = script.getBytes(CHARSET);
+        writeLine(Integer.toString(scriptBytes.length));
+        requests.write(scriptBytes);
+        requests.flush();
+
+        String response = readLine();
+        String[] header = response.split(" ");
+        if (header.length != 3) {
+            throw new IOException("Malformed response from perl worker: " + response);
+        }
+        int exitValue = Integer.parseInt(header[0]);
+        long outputLength = Long.parseLong(header[1]);
+        long errorLength = Long.parseLong(header[2]);
+        if (metrics != null) {
+            metrics.addOutputBytes(outputLength);
+            metrics.addErrorBytes(errorLength);
+        }
+        copy(outputLength, output);
+        copy(errorLength, error);
+
+        lastUsedTime = System.currentTimeMillis();
+        return exitValue;
+    }
+
+    /**
+     * Checks that the driver loop of this worker answers.
+     *
+     * @return True if the worker answered, false otherwise.
+     */
+    public boolean ping() {
+        try {
+            writeLine("PING");
+            requests.flush();
+            return "PONG".equals(readLine());
+        } catch (IOException e) {
+            log.debug("Perl worker did not answer to ping.", e);
+            return false;
+        }
+    }
+
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /**
+     * Stops the worker process. Closing its standard input ends the driver loop, the process is
+     * destroyed as well in case it is busy.
+     */
+    public void destroy() {
+        try {
+            requests.close();
+        } catch (IOException e) {
+            log.debug("Failed to close perl worker input.", e);
+        }
+        process.destroy();
+    }
+
+    /**
+     * Stops the worker process like {@link #destroy()} and kills it forcibly, for a worker which does not answer
+     * anymore. A thread blocked reading from the worker is released once the process is gone.
+     */
+    public void kill() {
+        destroy();
+        process.destroyForcibly();
+    }
+
+    public int getExecutionCount() {
+        return executionCount;
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    public long getLastUsedTime() {
+        return lastUsedTime;
+    }
+
+    private void writeLine(String line) throws IOException {
+        requests.write(line.getBytes(CHARSET));
+        requests.write('\n');
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int character = responses.read();
+        while (character != '\n') {
+            if (character == -1) {
+                throw new EOFException("Perl worker terminated unexpectedly.");
+            }
+            line.append((char) character);
+            character = responses.read();
+        }
+        return line.toString();
+    }
+
+    private void copy(long length, Writer sink) throws IOException {
+        CountingInputStream response = new CountingInputStream(ByteStreams.limit(responses, length));
+        if (sink == null) {
+            ByteStreams.exhaust(response);
+        } else {
+            Reader reader = new InputStreamReader(response, CHARSET);
+            char[] buffer = new char[8192];
+            int n = reader.read(buffer);
+            while (n != -1) {
+                sink.write(buffer, 0, n);
+                n = reader.read(buffer);
+            }
+            sink.flush();
+        }
+        if (response.getCount() != length) {
+            throw new EOFException("Perl worker terminated unexpectedly.");
+        }
+    }
+}
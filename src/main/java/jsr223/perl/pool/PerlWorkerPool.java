@@ -0,0 +1,369 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.pool;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Resources;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import jsr223.perl.metrics.PerlEvaluationMetrics;
+import jsr223.perl.utils.PerlPropertyLoader;
+import lombok.extern.log4j.Log4j;
+import processbuilder.PerlProcessBuilderFactory;
+import processbuilder.PerlProcessLauncher;
+
+
+/**
+ * Pool of long-lived perl workers, used when perl.execution.mode is set to pool.
+ *
+ * The pool holds at most perl.pool.size workers. Each worker keeps up to perl.pool.max.compiled.scripts compiled
+ * scripts, for scripts executed with a hash. A worker is recycled after perl.pool.max.executions.per.worker
+ * scripts, and idle workers are evicted after perl.pool.idle.timeout.ms as long as more than perl.pool.min.idle
+ * workers are idle. Every perl.pool.health.check.interval.ms idle workers are pinged, crashed workers and
+ * workers which do not answer within perl.pool.ping.timeout.ms are replaced.
+ *
+ * Workers load the perl.pool.preload.modules modules (comma separated) when they start. With perl.pool.fork set
+ * to true each script runs in a child process forked by the worker, which shares the loaded modules.
+ */
+@Log4j
+public class PerlWorkerPool {
+
+    /**
+     * Name of the generic information listing modules to load in the worker before a script, which stay loaded
+     * for the next scripts of the worker.
+     */
+    public static final String PRELOAD_GENERIC_INFO = "PERL_PRELOAD_MODULES";
+
+    /**
+     * Environment variable of a script read by the worker for the modules to load before the script.
+     */
+    public static final String PRELOAD_VARIABLE = "JSR223_PERL_PRELOAD";
+
+    /**
+     * Time an idle worker has to answer a health check ping, if no other is given.
+     */
+    public static final long DEFAULT_PING_TIMEOUT_MILLIS = 5000;
+
+    private static final String DRIVER_RESOURCE = "jsr223/perl/pool/perl-worker.pl";
+
+    private static final Splitter MODULE_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    private final PerlProcessBuilderFactory factory;
+
+    private final String driverSource;
+
+    private final int maximumSize;
+
+    private final int minimumIdle;
+
+    private final int maximumExecutionsPerWorker;
+
+    private final int maximumCompiledScripts;
+
+    private final boolean forkPerScript;
+
+    private final List<String> preloadedModules;
+
+    private final long idleTimeoutMillis;
+
+    private final long pingTimeoutMillis;
+
+    private final Semaphore capacity;
+
+    private final BlockingDeque<PerlWorker> idleWorkers = new LinkedBlockingDeque<>();
+
+    private final ExecutorService executions;
+
+    private final ScheduledExecutorService maintenance;
+
+    public PerlWorkerPool(PerlProcessBuilderFactory factory, int maximumSize, int minimumIdle,
+            int maximumExecutionsPerWorker, int maximumCompiledScripts, long idleTimeoutMillis,
+            long healthCheckIntervalMillis) {
+        this(factory,
+             maximumSize,
+             minimumIdle,
+             maximumExecutionsPerWorker,
+             maximumCompiledScripts,
+             idleTimeoutMillis,
+             healthCheckIntervalMillis,
+             DEFAULT_PING_TIMEOUT_MILLIS,
+             false,
+             Collections.<String> emptyList());
+    }
+
+    public PerlWorkerPool(PerlProcessBuilderFactory factory, int maximumSize, int minimumIdle,
+            int maximumExecutionsPerWorker, int maximumCompiledScripts, long idleTimeoutMillis,
+            long healthCheckIntervalMillis, long pingTimeoutMillis, boolean forkPerScript,
+            List<String> preloadedModules) {
+        this.factory = factory;
+        this.driverSource = loadDriverSource();
+        this.maximumSize = maximumSize;
+        this.minimumIdle = Math.min(minimumIdle, maximumSize);
+        this.maximumExecutionsPerWorker = maximumExecutionsPerWorker;
+        this.maximumCompiledScripts = maximumCompiledScripts;
+        this.forkPerScript = forkPerScript;
+        this.preloadedModules = ImmutableList.copyOf(preloadedModules);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.pingTimeoutMillis = pingTimeoutMillis;
+        this.capacity = new Semaphore(maximumSize, true);
+        this.executions = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+                                                                                  .setNameFormat("perl-worker-%d")
+                                                                                  .build());
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                                                                                                .setNameFormat("perl-worker-pool-maintenance")
+                                                                                                .build());
+        this.maintenance.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                maintain();
+            }
+        }, 0, healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Initializes the pool from configuration.
+     *
+     * PerlWorkerPoolHolder is loaded on the first execution of PerlWorkerPool.getInstance(), not before.
+     */
+    private static class PerlWorkerPoolHolder {
+        private static final PerlWorkerPool INSTANCE = createConfiguredPool();
+
+        private static PerlWorkerPool createConfiguredPool() {
+            PerlPropertyLoader properties = PerlPropertyLoader.getInstance();
+            String modules = properties.getProperty("perl.pool.preload.modules", "");
+            List<String> preloadedModules = MODULE_SPLITTER.splitToList(modules);
+            final PerlWorkerPool pool = new PerlWorkerPool(PerlProcessLauncher.getConfiguredFactory(),
+                                                           properties.getIntProperty("perl.pool.size",
+                                                                                     Runtime.getRuntime()
+                                                                                            .availableProcessors()),
+                                                           properties.getIntProperty("perl.pool.min.idle", 1),
+                                                           properties.getIntProperty("perl.pool.max.executions.per.worker",
+                                                                                     100),
+                                                           properties.getIntProperty("perl.pool.max.compiled.scripts",
+                                                                                     100),
+                                                           properties.getLongProperty("perl.pool.idle.timeout.ms",
+                                                                                      300000),
+                                                           properties.getLongProperty("perl.pool.health.check.interval.ms",
+                                                                                      30000),
+                                                           properties.getLongProperty("perl.pool.ping.timeout.ms",
+                                                                                      DEFAULT_PING_TIMEOUT_MILLIS),
+                                                           properties.getBooleanProperty("perl.pool.fork", false),
+                                                           preloadedModules);
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    pool.shutdown();
+                }
+            });
+            return pool;
+        }
+    }
+
+    public static PerlWorkerPool getInstance() {
+        return PerlWorkerPoolHolder.INSTANCE;
+    }
+
+    /**
+     * Executes a script in a pooled worker. Blocks until a worker is available.
+     *
+     * @param script      Perl script to execute.
+     * @param scriptHash  Hash identifying the script, the worker keeps the compiled script for the next
+     *                    executions of the same hash. If null the script is compiled for this execution only.
+     * @param environment Environment variables of the script.
+     * @param output      Sink for the script standard output.
+     * @param error       Sink for the script error output.
+     * @return The exit value of the script.
+     * @throws IOException          If no worker could be started or the worker crashed during execution.
+     * @throws InterruptedException If the calling thread is interrupted, the worker running the script is destroyed.
+     */
+    public int execute(String script, String scriptHash, Map<String, String> environment, Writer output,
+            Writer error) throws IOException, InterruptedException {
+        return execute(script, scriptHash, environment, output, error, null);
+    }
+
+    /**
+     * Executes a script in a pooled worker as {@link #execute(String, String, Map, Writer, Writer)} does, adding
+     * the bytes of its standard and error output to the metrics of the evaluation.
+     *
+     * @param metrics Metrics of the evaluation. May be null.
+     */
+    public int execute(final String script, final String scriptHash, final Map<String, String> environment,
+            final Writer output, final Writer error, final PerlEvaluationMetrics metrics)
+            throws IOException, InterruptedException {
+        capacity.acquire();
+        try {
+            final PerlWorker worker = borrowWorker();
+            Future<Integer> execution = executions.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws IOException {
+                    return worker.execute(script, scriptHash, environment, output, error, metrics);
+                }
+            });
+            try {
+                int exitValue = execution.get();
+                returnWorker(worker);
+                return exitValue;
+            } catch (InterruptedException e) {
+                worker.destroy();
+                execution.cancel(true);
+                throw e;
+            } catch (ExecutionException e) {
+                worker.destroy();
+                throw new IOException("Perl worker failed to execute script. " + e.getCause(), e.getCause());
+            }
+        } finally {
+            capacity.release();
+        }
+    }
+
+    /**
+     * Destroys all idle workers and stops the maintenance of the pool.
+     */
+    public void shutdown() {
+        maintenance.shutdownNow();
+        PerlWorker worker = idleWorkers.pollFirst();
+        while (worker != null) {
+            worker.destroy();
+            worker = idleWorkers.pollFirst();
+        }
+        executions.shutdownNow();
+    }
+
+    public int getIdleWorkerCount() {
+        return idleWorkers.size();
+    }
+
+    private PerlWorker borrowWorker() throws IOException {
+        // Most recently used worker first, so that surplus workers get idle and are evicted
+        PerlWorker worker = idleWorkers.pollFirst();
+        while (worker != null && !worker.isAlive()) {
+            log.debug("Discarding crashed perl worker.");
+            worker.destroy();
+            worker = idleWorkers.pollFirst();
+        }
+        return worker != null ? worker : startWorker();
+    }
+
+    private void returnWorker(PerlWorker worker) {
+        if (worker.getExecutionCount() >= maximumExecutionsPerWorker || !worker.isAlive()) {
+            worker.destroy();
+        } else {
+            idleWorkers.offerFirst(worker);
+        }
+    }
+
+    /**
+     * Checks the health of idle workers, evicts workers idle for too long and starts workers to reach
+     * the minimum number of idle workers, without exceeding the pool size together with the busy workers.
+     */
+    private void maintain() {
+        try {
+            long now = System.currentTimeMillis();
+            List<PerlWorker> checkedWorkers = new ArrayList<>();
+            PerlWorker worker = idleWorkers.pollLast();
+            while (worker != null) {
+                boolean expired = now - worker.getLastUsedTime() > idleTimeoutMillis &&
+                                  idleWorkers.size() + checkedWorkers.size() >= minimumIdle;
+                if (expired || !worker.isAlive()) {
+                    log.debug("Removing perl worker from pool, expired: " + expired);
+                    worker.destroy();
+                } else if (!ping(worker)) {
+                    log.debug("Removing perl worker from pool, it did not answer to ping.");
+                    worker.kill();
+                } else {
+                    checkedWorkers.add(worker);
+                }
+                worker = idleWorkers.pollLast();
+            }
+            for (PerlWorker checkedWorker : checkedWorkers) {
+                idleWorkers.offerFirst(checkedWorker);
+            }
+            // Each running script holds a permit of the capacity and a worker
+            int busyWorkers = maximumSize - capacity.availablePermits();
+            while (idleWorkers.size() < minimumIdle && idleWorkers.size() + busyWorkers < maximumSize) {
+                idleWorkers.offerLast(startWorker());
+            }
+        } catch (Exception e) {
+            log.warn("Perl worker pool maintenance failed.", e);
+        }
+    }
+
+    /**
+     * Pings a worker from the executions pool, so that a hung worker does not block the maintenance of the pool.
+     *
+     * @return false if the worker did not answer within the ping timeout.
+     */
+    private boolean ping(final PerlWorker worker) throws InterruptedException {
+        Future<Boolean> ping = executions.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return worker.ping();
+            }
+        });
+        try {
+            return ping.get(pingTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Perl worker did not answer to ping within " + pingTimeoutMillis + " ms, it is killed.");
+            return false;
+        } catch (ExecutionException e) {
+            log.debug("Perl worker failed to answer to ping.", e.getCause());
+            return false;
+        }
+    }
+
+    private PerlWorker startWorker() throws IOException {
+        return PerlWorker.start(factory, driverSource, maximumCompiledScripts, forkPerScript, preloadedModules);
+    }
+
+    private static String loadDriverSource() {
+        try {
+            return Resources.toString(Resources.getResource(PerlWorkerPool.class, "/" + DRIVER_RESOURCE),
+                                      Charsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to load perl worker driver " + DRIVER_RESOURCE, e);
+        }
+    }
+}
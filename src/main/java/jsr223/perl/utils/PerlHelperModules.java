@@ -0,0 +1,126 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Map;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+
+import lombok.extern.log4j.Log4j;
+
+
+/**
+ * Perl modules bundled with the script engine, in jsr223/perl/lib. They are extracted once per JVM to a
+ * temporary directory which is added to the PERL5LIB of the scripts needing them.
+ */
+@Log4j
+public class PerlHelperModules {
+
+    public static final String PERL_LIBRARY_PATH_VARIABLE = "PERL5LIB";
+
+    private static final String MODULES_RESOURCE_DIRECTORY = "jsr223/perl/lib/";
+
+    private static final String[] MODULES = { "JSR223/Perl/Bindings.pm", "JSR223/Perl/Results.pm",
+                                              "JSR223/Perl/Usage.pm" };
+
+    private static final Supplier<File> LIBRARY_DIRECTORY = Suppliers.memoize(new Supplier<File>() {
+        @Override
+        public File get() {
+            try {
+                return extractModules();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to extract bundled perl modules.", e);
+            }
+        }
+    });
+
+    private PerlHelperModules() {
+    }
+
+    /**
+     * @return The directory holding the extracted modules.
+     */
+    public static File getLibraryDirectory() {
+        return LIBRARY_DIRECTORY.get();
+    }
+
+    /**
+     * Prepends the bundled modules directory to the PERL5LIB of an environment. If the environment has no
+     * PERL5LIB, the one of the JVM is kept.
+     *
+     * @param environment Environment of a perl script.
+     */
+    public static void addToPerlLibraryPath(Map<String, String> environment) {
+        String libraryPath = environment.get(PERL_LIBRARY_PATH_VARIABLE);
+        if (!environment.containsKey(PERL_LIBRARY_PATH_VARIABLE)) {
+            libraryPath = System.getenv(PERL_LIBRARY_PATH_VARIABLE);
+        }
+        String libraryDirectory = getLibraryDirectory().getAbsolutePath();
+        if (libraryPath == null || libraryPath.isEmpty()) {
+            environment.put(PERL_LIBRARY_PATH_VARIABLE, libraryDirectory);
+        } else if (!libraryPath.startsWith(libraryDirectory + File.pathSeparator) &&
+                   !libraryPath.equals(libraryDirectory)) {
+            environment.put(PERL_LIBRARY_PATH_VARIABLE, libraryDirectory + File.pathSeparator + libraryPath);
+        }
+    }
+
+    private static File extractModules() throws IOException {
+        File libraryDirectory = Files.createTempDirectory("jsr223-perl-lib-").toFile();
+        // Deleted on exit in reverse order of registration, the directories after their content
+        libraryDirectory.deleteOnExit();
+        for (String module : MODULES) {
+            File moduleFile = new File(libraryDirectory, module);
+            registerParentsForDeletion(moduleFile.getParentFile(), libraryDirectory);
+            try (InputStream moduleContent = PerlHelperModules.class.getClassLoader()
+                                                                    .getResourceAsStream(MODULES_RESOURCE_DIRECTORY +
+                                                                                         module)) {
+                if (moduleContent == null) {
+                    throw new IOException("Bundled perl module not found: " + module);
+                }
+                Files.copy(moduleContent, moduleFile.toPath());
+            }
+            moduleFile.deleteOnExit();
+            log.debug("Extracted perl module " + moduleFile);
+        }
+        return libraryDirectory;
+    }
+
+    private static void registerParentsForDeletion(File directory, File libraryDirectory) throws IOException {
+        if (directory.equals(libraryDirectory) || directory.isDirectory()) {
+            return;
+        }
+        registerParentsForDeletion(directory.getParentFile(), libraryDirectory);
+        if (!directory.mkdir()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        directory.deleteOnExit();
+    }
+}
@@ -25,10 +25,25 @@
  */
 package jsr223.perl.utils;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
 public class PerlLog4jConfigurationLoader {
 
     private static final String LOG4J_CONFIGURATION_FILE = "config/log/scriptengines.properties";
 
+    private static final AtomicBoolean LOADED = new AtomicBoolean();
+
+    /**
+     * Loads the log4j configuration on the first call in the class loader. Engines are created for every
+     * evaluation of a task, log4j is not configured again for each of them.
+     */
+    public static void loadLog4jConfigurationOnce() {
+        if (LOADED.compareAndSet(false, true)) {
+            new PerlLog4jConfigurationLoader().loadLog4jConfiguration();
+        }
+    }
+
     public void loadLog4jConfiguration() {
         // Catch all exceptions to not sacrifice functionality for logging.
         try {
@@ -0,0 +1,135 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import lombok.extern.log4j.Log4j;
+
+
+/**
+ * Reads the script engine configuration from config/scriptengines/perl.properties. Every property can be
+ * overridden by a Java system property with the same name.
+ */
+@Log4j
+public class PerlPropertyLoader {
+
+    private static final String CONFIGURATION_FILE = "config/scriptengines/perl.properties";
+
+    private final Properties properties = new Properties();
+
+    private PerlPropertyLoader() {
+        InputStream configuration = PerlPropertyLoader.class.getClassLoader().getResourceAsStream(CONFIGURATION_FILE);
+        if (configuration == null) {
+            log.debug("Configuration file " + CONFIGURATION_FILE + " not found, default values are used.");
+            return;
+        }
+        try {
+            properties.load(configuration);
+        } catch (IOException e) {
+            log.warn("Failed to read configuration file " + CONFIGURATION_FILE + ", default values are used.", e);
+        } finally {
+            try {
+                configuration.close();
+            } catch (IOException ignored) {
+                // Nothing to do, the properties are already loaded
+            }
+        }
+    }
+
+    /**
+     * PerlPropertyLoaderHolder is loaded on the first execution of PerlPropertyLoader.getInstance(),
+     * not before.
+     */
+    private static class PerlPropertyLoaderHolder {
+        private static final PerlPropertyLoader INSTANCE = new PerlPropertyLoader();
+    }
+
+    public static PerlPropertyLoader getInstance() {
+        return PerlPropertyLoaderHolder.INSTANCE;
+    }
+
+    /**
+     * Retrieves a configuration value. A system property takes precedence over the configuration file.
+     *
+     * @param key          Name of the property.
+     * @param defaultValue Value returned if the property is neither a system property nor in the configuration file.
+     * @return The configured value, or defaultValue.
+     */
+    public String getProperty(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = properties.getProperty(key);
+        }
+        return value == null ? defaultValue : value.trim();
+    }
+
+    public int getIntProperty(String key, int defaultValue) {
+        return (int) getLongProperty(key, defaultValue);
+    }
+
+    public long getLongProperty(String key, long defaultValue) {
+        String value = getProperty(key, null);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            log.warn("Property " + key + " is not a number: " + value + ". Default value " + defaultValue +
+                     " is used.");
+            return defaultValue;
+        }
+    }
+
+    public boolean getBooleanProperty(String key, boolean defaultValue) {
+        String value = getProperty(key, null);
+        return value == null || value.isEmpty() ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    /**
+     * Retrieves a configuration value naming a constant of the given enum, case insensitive.
+     *
+     * @param key          Name of the property.
+     * @param defaultValue Value returned if the property is not configured or does not name a constant.
+     * @return The configured constant, or defaultValue.
+     */
+    public <E extends Enum<E>> E getEnumProperty(String key, E defaultValue) {
+        String value = getProperty(key, null);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(defaultValue.getDeclaringClass(), value.toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            log.warn("Property " + key + " has an unknown value: " + value + ". Default value " + defaultValue +
+                     " is used.");
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.script.ScriptException;
+
+import jsr223.perl.PerlCommandCreator;
+import jsr223.perl.file.cache.PerlScriptCache;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j;
+import processbuilder.PerlProcessBuilderFactory;
+import processbuilder.PerlProcessLauncher;
+import processbuilder.utils.PerlProcessBuilderUtilities;
+import processbuilder.utils.PerlProcessStreams;
+
+
+/**
+ * Checks the syntax of perl scripts with perl -c before they are executed. The result is kept for the
+ * perl.syntax.check.cache.size (default: 1000) most recently checked scripts, by script hash, so a script is
+ * checked once.
+ *
+ * perl -c compiles the script without running it, but it runs its BEGIN and CHECK blocks and imports the
+ * modules it uses, with the helper modules but without the bindings of an evaluation in its environment. A
+ * module missing from the library path is reported, but this result is not kept. perl -c is killed after
+ * perl.syntax.check.timeout.ms milliseconds (default: 10000), the script is then not checked.
+ */
+@Log4j
+public class PerlSyntaxChecker {
+
+    public static final String SYNTAX_CHECK_PROPERTY = "perl.syntax.check";
+
+    private static final Pattern LINE_NUMBER_PATTERN = Pattern.compile(" line (\\d+)");
+
+    private static final Pattern MISSING_MODULE_PATTERN = Pattern.compile("Can't locate \\S+ in @INC");
+
+    private static final int COMPILATION_FAILED_EXIT_VALUE = 255;
+
+    private final PerlProcessBuilderFactory factory;
+
+    private final long timeoutMillis;
+
+    private final PerlProcessBuilderUtilities processBuilderUtilities = new PerlProcessBuilderUtilities();
+
+    // Access ordered, the first entry is the least recently used. Values are the errors, empty if none.
+    private final LinkedHashMap<String, String> checkedScripts;
+
+    public PerlSyntaxChecker(PerlProcessBuilderFactory factory, final int maximumEntries, long timeoutMillis) {
+        this.factory = factory;
+        this.timeoutMillis = timeoutMillis;
+        this.checkedScripts = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maximumEntries;
+            }
+        };
+    }
+
+    /**
+     * Initializes the syntax checker from configuration.
+     *
+     * PerlSyntaxCheckerHolder is loaded on the first execution of PerlSyntaxChecker.getInstance(), not before.
+     */
+    private static class PerlSyntaxCheckerHolder {
+        private static final PerlSyntaxChecker INSTANCE = createConfiguredChecker();
+
+        private static PerlSyntaxChecker createConfiguredChecker() {
+            int maximumEntries = PerlPropertyLoader.getInstance().getIntProperty("perl.syntax.check.cache.size", 1000);
+            long timeoutMillis = PerlPropertyLoader.getInstance().getLongProperty("perl.syntax.check.timeout.ms",
+                                                                                  10000);
+            return new PerlSyntaxChecker(PerlProcessLauncher.getConfiguredFactory(), maximumEntries, timeoutMillis);
+        }
+    }
+
+    public static PerlSyntaxChecker getInstance() {
+        return PerlSyntaxCheckerHolder.INSTANCE;
+    }
+
+    /**
+     * @return True if scripts are checked before each evaluation, configured with perl.syntax.check (default
+     *         false). Compiled scripts are always checked.
+     */
+    public static boolean isEnabled() {
+        return PerlPropertyLoader.getInstance().getBooleanProperty(SYNTAX_CHECK_PROPERTY, false);
+    }
+
+    /**
+     * Checks a script, writing it to the script cache if it was not checked yet.
+     *
+     * @throws ScriptException If the script does not compile.
+     */
+    public void checkSyntax(String script) throws ScriptException {
+        String hash = PerlScriptCache.hash(script);
+        String errors = getCheckedErrors(hash);
+        if (errors == null) {
+            PerlScriptCache.CachedScript cachedScript;
+            try {
+                cachedScript = PerlScriptCache.getInstance().acquire(script);
+            } catch (IOException e) {
+                log.warn("Failed to write perl script for its syntax check, it is not checked.", e);
+                return;
+            }
+            if (!PerlScriptCache.isEnabled()) {
+                PerlScriptCache.getInstance().deleteWhenReleased(cachedScript);
+            }
+            try {
+                errors = check(cachedScript);
+            } finally {
+                PerlScriptCache.getInstance().release(cachedScript);
+            }
+        }
+        throwIfErrors(errors);
+    }
+
+    /**
+     * Checks a script file of the script cache.
+     *
+     * @throws ScriptException If the script does not compile.
+     */
+    public void checkSyntax(PerlScriptCache.CachedScript cachedScript) throws ScriptException {
+        throwIfErrors(check(cachedScript));
+    }
+
+    /**
+     * Checks a script file which is not in the script cache. The result is not kept.
+     *
+     * @throws ScriptException If the script does not compile.
+     */
+    public void checkSyntax(File scriptFile) throws ScriptException {
+        try {
+            SyntaxCheck syntaxCheck = runSyntaxCheck(scriptFile);
+            if (syntaxCheck != null) {
+                throwIfErrors(syntaxCheck.getErrors());
+            }
+        } catch (IOException e) {
+            log.warn("Failed to check the syntax of perl script, it is not checked.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScriptException("Perl syntax check interrupted.");
+        }
+    }
+
+    /**
+     * Checks a script file of the script cache, unless its result is kept. Results caused by the environment of
+     * the check rather than by the script are not kept.
+     *
+     * @return The errors, empty if the script compiles, null if it could not be checked.
+     */
+    private String check(PerlScriptCache.CachedScript cachedScript) throws ScriptException {
+        String hash = cachedScript.getHash();
+        String errors = getCheckedErrors(hash);
+        if (errors != null) {
+            return errors;
+        }
+        SyntaxCheck syntaxCheck;
+        try {
+            syntaxCheck = runSyntaxCheck(cachedScript.getFile());
+        } catch (IOException e) {
+            log.warn("Failed to check the syntax of perl script, it is not checked.", e);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScriptException("Perl syntax check interrupted.");
+        }
+        if (syntaxCheck == null) {
+            return null;
+        }
+        if (syntaxCheck.isCausedByScript()) {
+            synchronized (this) {
+                checkedScripts.put(hash, syntaxCheck.getErrors());
+            }
+        }
+        return syntaxCheck.getErrors();
+    }
+
+    public synchronized int size() {
+        return checkedScripts.size();
+    }
+
+    /**
+     * @return The kept errors of a script, empty if it compiles, null if it was not checked.
+     */
+    private synchronized String getCheckedErrors(String hash) {
+        return checkedScripts.get(hash);
+    }
+
+    private static void throwIfErrors(String errors) throws ScriptException {
+        if (errors != null && !errors.isEmpty()) {
+            Matcher lineNumber = LINE_NUMBER_PATTERN.matcher(errors);
+            throw new ScriptException("Perl script does not compile: " + errors,
+                                      null,
+                                      lineNumber.find() ? Integer.parseInt(lineNumber.group(1)) : -1);
+        }
+    }
+
+    /**
+     * Runs perl -c with the helper modules in its library path, as for an evaluation.
+     *
+     * @return The errors reported by perl -c, empty if the script compiles, null if perl -c was killed on
+     *         timeout.
+     */
+    private SyntaxCheck runSyntaxCheck(File scriptFile) throws IOException, InterruptedException {
+        String[] command = new PerlCommandCreator().createPerlSyntaxCheckCommand(scriptFile);
+        ProcessBuilder processBuilder = factory.getProcessBuilder(command);
+        PerlHelperModules.addToPerlLibraryPath(processBuilder.environment());
+        processBuilder.redirectErrorStream(true);
+        Process process = processBuilder.start();
+        StringWriter output = new StringWriter();
+        PerlProcessStreams processStreams = processBuilderUtilities.attachStreamsToProcess(process,
+                                                                                           output,
+                                                                                           null,
+                                                                                           null);
+        try {
+            // BEGIN blocks and imported modules may run for any time, perl -c must not hold the evaluation
+            if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                log.warn("perl -c did not finish within " + timeoutMillis + " ms, the script is not checked.");
+                return null;
+            }
+        } finally {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+        int exitValue = process.exitValue();
+        processStreams.awaitOutput(PerlProcessBuilderUtilities.getDrainTimeoutMillis(), TimeUnit.MILLISECONDS);
+        if (exitValue == 0) {
+            return new SyntaxCheck("", true);
+        }
+        String errors = output.toString().trim();
+        // perl -c exits with 255 on compilation errors, other exit values come from signals or limits
+        boolean causedByScript = exitValue == COMPILATION_FAILED_EXIT_VALUE &&
+                                 !MISSING_MODULE_PATTERN.matcher(errors).find();
+        return new SyntaxCheck(errors.isEmpty() ? "perl -c exited with " + exitValue : errors, causedByScript);
+    }
+
+    /**
+     * Result of perl -c. Errors caused by the environment, such as a module missing from the library path, may
+     * not occur in another check.
+     */
+    @AllArgsConstructor
+    @Getter
+    private static class SyntaxCheck {
+
+        private final String errors;
+
+        private final boolean causedByScript;
+    }
+}
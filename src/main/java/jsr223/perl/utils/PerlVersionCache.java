@@ -0,0 +1,141 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+
+import jsr223.perl.PerlCommandCreator;
+import lombok.extern.log4j.Log4j;
+
+
+/**
+ * Resolves the perl version once per JVM, on first use. If perl.version.cache.file is configured, the version
+ * is also persisted in that file, keyed by the path and modification time of the perl binary, so that later
+ * JVMs do not start perl to retrieve it.
+ */
+@Log4j
+public class PerlVersionCache {
+
+    public static final String VERSION_CACHE_FILE_PROPERTY = "perl.version.cache.file";
+
+    private static final Supplier<String> PERL_VERSION = Suppliers.memoize(new Supplier<String>() {
+        @Override
+        public String get() {
+            return new PerlVersionCache().resolvePerlVersion();
+        }
+    });
+
+    /**
+     * @return The perl version, retrieved on the first call only.
+     */
+    public static String getPerlVersion() {
+        return PERL_VERSION.get();
+    }
+
+    String resolvePerlVersion() {
+        String cacheFileName = PerlPropertyLoader.getInstance().getProperty(VERSION_CACHE_FILE_PROPERTY, null);
+        File perlBinary = findPerlBinary();
+        if (cacheFileName == null || perlBinary == null) {
+            return new PerlVersionGetter().getPerlVersion();
+        }
+
+        File cacheFile = new File(cacheFileName);
+        String cacheKey = perlBinary.getAbsolutePath() + "@" + perlBinary.lastModified();
+        Properties cachedVersions = readCache(cacheFile);
+        String version = cachedVersions.getProperty(cacheKey);
+        if (version == null) {
+            version = new PerlVersionGetter().getPerlVersion();
+            if (!PerlVersionGetter.PERL_VERSION_IF_NOT_INSTALLED.equals(version)) {
+                cachedVersions.setProperty(cacheKey, version);
+                writeCache(cacheFile, cachedVersions);
+            }
+        }
+        return version;
+    }
+
+    /**
+     * @return The perl binary found in the PATH, or null if not found.
+     */
+    static File findPerlBinary() {
+        String perlCommand = PerlCommandCreator.getPerlCommand();
+        if (new File(perlCommand).isAbsolute()) {
+            return new File(perlCommand);
+        }
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return null;
+        }
+        for (String directory : path.split(File.pathSeparator)) {
+            for (String name : new String[] { perlCommand, perlCommand + ".exe" }) {
+                File candidate = new File(directory, name);
+                if (candidate.isFile()) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Properties readCache(File cacheFile) {
+        Properties cachedVersions = new Properties();
+        if (cacheFile.isFile()) {
+            try (InputStream input = new FileInputStream(cacheFile)) {
+                cachedVersions.load(input);
+            } catch (IOException e) {
+                log.debug("Failed to read perl version cache " + cacheFile, e);
+            }
+        }
+        return cachedVersions;
+    }
+
+    private static void writeCache(File cacheFile, Properties cachedVersions) {
+        try {
+            File directory = cacheFile.getAbsoluteFile().getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Unable to create directory " + directory);
+            }
+            // Written aside and moved, so that concurrent JVMs never read a partial file
+            File temporaryFile = File.createTempFile("perl-version", ".tmp", directory);
+            try (OutputStream output = new FileOutputStream(temporaryFile)) {
+                cachedVersions.store(output, "Perl versions by binary path and modification time");
+            }
+            Files.move(temporaryFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.debug("Failed to write perl version cache " + cacheFile, e);
+        }
+    }
+}
@@ -25,17 +25,17 @@
  */
 package jsr223.perl.utils;
 
-import java.io.File;
 import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
 
 import jsr223.perl.PerlCommandCreator;
-import jsr223.perl.file.write.PerlScriptFileWriter;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import lombok.extern.log4j.Log4j;
 import processbuilder.PerlProcessBuilderFactory;
 import processbuilder.PerlSingletonPerlProcessBuilderFactory;
 import processbuilder.utils.PerlProcessBuilderUtilities;
+import processbuilder.utils.PerlProcessStreams;
 
 
 @Log4j
@@ -61,12 +61,9 @@ public class PerlVersionGetter {
         String result = PERL_VERSION_IF_NOT_INSTALLED; // Default error string for result if version recovery fails
 
         PerlCommandCreator perlCommandCreator = new PerlCommandCreator();
-        PerlScriptFileWriter perlScriptFileWriter = new PerlScriptFileWriter();
-        File perlFile = null;
         try {
-            perlFile = perlScriptFileWriter.forceFileToDisk(PERL_VERSION_COMMAND);
-
-            String[] perlCommand = perlCommandCreator.createPerlExecutionCommand(perlFile);
+            // Passed with -e, no file is written
+            String[] perlCommand = perlCommandCreator.createPerlEvaluationCommand(PERL_VERSION_COMMAND);
 
             ProcessBuilder processBuilder = factory.getProcessBuilder(perlCommand);
             Process process = processBuilder.start();
@@ -74,10 +71,14 @@ public class PerlVersionGetter {
             // Attach stream to std output of process
             StringWriter commandOutput = new StringWriter();
 
-            processBuilderUtilities.attachStreamsToProcess(process, commandOutput, null, null);
+            PerlProcessStreams processStreams = processBuilderUtilities.attachStreamsToProcess(process,
+                                                                                               commandOutput,
+                                                                                               null,
+                                                                                               null);
 
-            // Wait for process to exit
+            // Wait for process to exit and its output to be read
             process.waitFor();
+            processStreams.awaitOutput(PerlProcessBuilderUtilities.getDrainTimeoutMillis(), TimeUnit.MILLISECONDS);
 
             // Extract output
             result = commandOutput.toString();
@@ -86,10 +87,6 @@ public class PerlVersionGetter {
             // The error is not logged because of the case when the perl is not installed on machine.
             // In this case the logging error will be included in an output of any task executing in scheduler, because this method is used by PerlScriptEngineFactory.
             // And via PerlScriptEngineFactory the getPerlVersion() is used indirectly for every starting task
-        } finally {
-            if (perlFile != null) {
-                perlFile.delete();
-            }
         }
         return result;
     }
@@ -0,0 +1,168 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package processbuilder;
+
+import java.io.File;
+import java.util.List;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+import jsr223.perl.utils.PerlPropertyLoader;
+import lombok.extern.log4j.Log4j;
+
+
+/**
+ * Creates process builders launching perl as cheaply as possible, selected with perl.process.launcher=fast:
+ * <ul>
+ * <li>the JDK launch mechanism, jdk.lang.Process.launchMechanism, is only set if the operator opts in with
+ * perl.process.launch.mechanism (default: empty, the JDK default is kept) and the running JDK supports the
+ * mechanism on this operating system. AUTO selects POSIX_SPAWN where supported, else VFORK on Linux. The
+ * property applies to every process of the JVM, and the JDK reads it once, when the first process of the JVM
+ * is started, so it is not changed by a factory created afterwards,</li>
+ * <li>the standard input of perl reads /dev/null unless redirected to a pipe by the caller,</li>
+ * <li>with perl.process.environment.minimal=true (default: false), perl only gets the variables listed by
+ * perl.process.environment.keep instead of a copy of the whole JVM environment.</li>
+ * </ul>
+ */
+@Log4j
+public class PerlFastSpawnProcessBuilderFactory implements PerlProcessBuilderFactory {
+
+    public static final String LAUNCH_MECHANISM_PROPERTY = "perl.process.launch.mechanism";
+
+    public static final String MINIMAL_ENVIRONMENT_PROPERTY = "perl.process.environment.minimal";
+
+    public static final String KEPT_VARIABLES_PROPERTY = "perl.process.environment.keep";
+
+    static final String JDK_LAUNCH_MECHANISM_PROPERTY = "jdk.lang.Process.launchMechanism";
+
+    static final String AUTOMATIC_LAUNCH_MECHANISM = "AUTO";
+
+    private static final String DEFAULT_KEPT_VARIABLES = "PATH,HOME,USER,LANG,LC_ALL,LC_CTYPE,TZ,TMPDIR," +
+                                                         "PERL5LIB,PERLLIB,SYSTEMROOT";
+
+    private static final Splitter VARIABLE_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    private static final File NULL_INPUT = new File("/dev/null");
+
+    private final boolean minimalEnvironment;
+
+    private final List<String> keptVariables;
+
+    public PerlFastSpawnProcessBuilderFactory(boolean minimalEnvironment, String keptVariables) {
+        this.minimalEnvironment = minimalEnvironment;
+        this.keptVariables = ImmutableList.copyOf(VARIABLE_SPLITTER.split(keptVariables));
+    }
+
+    /**
+     * Initializes PerlFastSpawnProcessBuilderFactory from configuration and selects the launch mechanism.
+     *
+     * FastSpawnFactoryHolder is loaded on the first execution of PerlFastSpawnProcessBuilderFactory.getInstance(),
+     * not before.
+     */
+    private static class FastSpawnFactoryHolder {
+        private static final PerlFastSpawnProcessBuilderFactory INSTANCE = createConfiguredFactory();
+
+        private static PerlFastSpawnProcessBuilderFactory createConfiguredFactory() {
+            PerlPropertyLoader propertyLoader = PerlPropertyLoader.getInstance();
+            String requestedMechanism = propertyLoader.getProperty(LAUNCH_MECHANISM_PROPERTY, "");
+            if (!requestedMechanism.isEmpty() && System.getProperty(JDK_LAUNCH_MECHANISM_PROPERTY) == null) {
+                String launchMechanism = getSupportedLaunchMechanism(requestedMechanism,
+                                                                     System.getProperty("os.name"),
+                                                                     getJavaVersion());
+                if (launchMechanism == null) {
+                    log.warn("Launch mechanism " + requestedMechanism + " is not supported by this JDK, the JDK " +
+                             "default is kept.");
+                } else {
+                    System.setProperty(JDK_LAUNCH_MECHANISM_PROPERTY, launchMechanism);
+                    log.debug("Processes are launched with " + launchMechanism +
+                              " unless a process was started before in this JVM.");
+                }
+            }
+            boolean minimalEnvironment = propertyLoader.getBooleanProperty(MINIMAL_ENVIRONMENT_PROPERTY, false);
+            String keptVariables = propertyLoader.getProperty(KEPT_VARIABLES_PROPERTY, DEFAULT_KEPT_VARIABLES);
+            return new PerlFastSpawnProcessBuilderFactory(minimalEnvironment, keptVariables);
+        }
+    }
+
+    public static PerlProcessBuilderFactory getInstance() {
+        return FastSpawnFactoryHolder.INSTANCE;
+    }
+
+    /**
+     * Selects a launch mechanism accepted by the JDK: POSIX_SPAWN is only accepted by Linux JDKs from 12 on,
+     * VFORK only by Linux JDKs, and Windows JDKs accept none.
+     *
+     * @param requestedMechanism Requested mechanism, or AUTO for the fastest supported one.
+     * @param osName             Name of the operating system.
+     * @param javaVersion        Feature version of the JDK, 8 for 1.8.
+     * @return The mechanism to set, or null if the requested mechanism is not supported.
+     */
+    static String getSupportedLaunchMechanism(String requestedMechanism, String osName, int javaVersion) {
+        List<String> supportedMechanisms;
+        String os = osName.toLowerCase();
+        if (os.startsWith("windows")) {
+            supportedMechanisms = ImmutableList.of();
+        } else if (os.startsWith("linux")) {
+            supportedMechanisms = javaVersion >= 12 ? ImmutableList.of("POSIX_SPAWN", "VFORK", "FORK")
+                                                    : ImmutableList.of("VFORK", "FORK");
+        } else {
+            supportedMechanisms = ImmutableList.of("POSIX_SPAWN", "FORK");
+        }
+        String mechanism = requestedMechanism.trim().toUpperCase();
+        if (AUTOMATIC_LAUNCH_MECHANISM.equals(mechanism)) {
+            return supportedMechanisms.isEmpty() ? null : supportedMechanisms.get(0);
+        }
+        return supportedMechanisms.contains(mechanism) ? mechanism : null;
+    }
+
+    /**
+     * @return The feature version of the running JDK, 8 for 1.8.
+     */
+    static int getJavaVersion() {
+        String version = System.getProperty("java.specification.version", "1.8");
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        try {
+            return Integer.parseInt(version);
+        } catch (NumberFormatException e) {
+            return 8;
+        }
+    }
+
+    @Override
+    public ProcessBuilder getProcessBuilder(String... command) {
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        if (minimalEnvironment) {
+            processBuilder.environment().keySet().retainAll(keptVariables);
+        }
+        if (NULL_INPUT.exists()) {
+            processBuilder.redirectInput(NULL_INPUT);
+        }
+        return processBuilder;
+    }
+}
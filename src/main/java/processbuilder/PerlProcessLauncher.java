@@ -0,0 +1,64 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package processbuilder;
+
+import jsr223.perl.utils.PerlPropertyLoader;
+
+
+/**
+ * Defines how perl processes are launched. Configured with the perl.process.launcher property.
+ */
+public enum PerlProcessLauncher {
+
+    /**
+     * Process builders as created by {@link PerlSingletonPerlProcessBuilderFactory} (default).
+     */
+    DEFAULT,
+
+    /**
+     * Process builders created by {@link PerlFastSpawnProcessBuilderFactory}.
+     */
+    FAST;
+
+    public static final String LAUNCHER_PROPERTY = "perl.process.launcher";
+
+    /**
+     * @return The launcher read from configuration or DEFAULT if not configured or unknown.
+     */
+    public static PerlProcessLauncher getConfiguredLauncher() {
+        return PerlPropertyLoader.getInstance().getEnumProperty(LAUNCHER_PROPERTY, DEFAULT);
+    }
+
+    /**
+     * @return The factory of the configured launcher.
+     */
+    public static PerlProcessBuilderFactory getConfiguredFactory() {
+        if (getConfiguredLauncher() == FAST) {
+            return PerlFastSpawnProcessBuilderFactory.getInstance();
+        }
+        return PerlSingletonPerlProcessBuilderFactory.getInstance();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package processbuilder;
+
+import jsr223.perl.utils.PerlPropertyLoader;
+
+
+/**
+ * Defines how the processes started by a perl script are found and killed once the script has exited.
+ * Configured with the perl.process.tree.tracking property.
+ */
+public enum PerlProcessTreeTracking {
+
+    /**
+     * The perl process gets a cookie environment variable, inherited by its children, and the process table is
+     * scanned for it after each execution (default).
+     */
+    COOKIE,
+
+    /**
+     * The perl process is started with setsid as the leader of a new session and process group. After each
+     * execution, a single kill -0 checks whether processes are left in the group, which are then killed with
+     * the group. Children creating their own session or process group are not tracked.
+     */
+    GROUP;
+
+    public static final String TRACKING_PROPERTY = "perl.process.tree.tracking";
+
+    /**
+     * @return The tracking read from configuration or COOKIE if not configured or unknown.
+     */
+    public static PerlProcessTreeTracking getConfiguredTracking() {
+        return PerlPropertyLoader.getInstance().getEnumProperty(TRACKING_PROPERTY, COOKIE);
+    }
+}
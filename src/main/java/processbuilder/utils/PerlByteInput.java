@@ -0,0 +1,102 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package processbuilder.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Standard input of a perl script given as bytes, to be set as the reader of the script context. The standard
+ * input of perl is redirected to a file input, which perl then reads without any copy by the JVM. Other inputs
+ * are copied to perl as bytes, without being decoded and encoded again. Read as a Reader, the bytes are decoded
+ * as UTF-8.
+ */
+public class PerlByteInput extends Reader {
+
+    private final File file;
+
+    private final InputStream inputStream;
+
+    private Reader decodedInput;
+
+    private PerlByteInput(File file, InputStream inputStream) {
+        this.file = file;
+        this.inputStream = inputStream;
+    }
+
+    /**
+     * @param file File read by perl as its standard input.
+     */
+    public static PerlByteInput fromFile(File file) {
+        return new PerlByteInput(file, null);
+    }
+
+    /**
+     * @param inputStream Bytes copied to the standard input of perl, closed at their end.
+     */
+    public static PerlByteInput fromStream(InputStream inputStream) {
+        return new PerlByteInput(null, inputStream);
+    }
+
+    /**
+     * @param reader Reader of a script context, or null.
+     * @return The file of a file input, null for any other reader.
+     */
+    public static File getFile(Reader reader) {
+        return reader instanceof PerlByteInput ? ((PerlByteInput) reader).file : null;
+    }
+
+    /**
+     * @return The bytes of the input: a new stream on the file of a file input, or the stream of the input.
+     * @throws IOException If the file could not be opened.
+     */
+    public InputStream openStream() throws IOException {
+        return file != null ? new FileInputStream(file) : inputStream;
+    }
+
+    @Override
+    public synchronized int read(char[] buffer, int offset, int length) throws IOException {
+        if (decodedInput == null) {
+            decodedInput = new InputStreamReader(openStream(), StandardCharsets.UTF_8);
+        }
+        return decodedInput.read(buffer, offset, length);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (decodedInput != null) {
+            decodedInput.close();
+        } else if (inputStream != null) {
+            inputStream.close();
+        }
+    }
+}
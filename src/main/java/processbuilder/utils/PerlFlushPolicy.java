@@ -0,0 +1,64 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package processbuilder.utils;
+
+/**
+ * Defines when data piped from a process stream is flushed to its sink. Configured with the perl.stream.flush
+ * property.
+ */
+public enum PerlFlushPolicy {
+
+    /**
+     * Flush after each chunk which contains a line separator.
+     */
+    LINE,
+
+    /**
+     * Flush after each chunk read from the source (default).
+     */
+    BUFFER,
+
+    /**
+     * Flush once, when the end of the source is reached.
+     */
+    EXIT;
+
+    boolean shouldFlush(char[] chunk, int length) {
+        switch (this) {
+            case LINE:
+                for (int i = 0; i < length; i++) {
+                    if (chunk[i] == '\n') {
+                        return true;
+                    }
+                }
+                return false;
+            case BUFFER:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
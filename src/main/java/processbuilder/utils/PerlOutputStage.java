@@ -0,0 +1,362 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package processbuilder.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import jsr223.perl.utils.PerlPropertyLoader;
+import lombok.extern.log4j.Log4j;
+
+
+/**
+ * Output stage between the stream pumps of a perl process and a script context writer, for scripts printing
+ * a lot. Enabled with perl.output.batch.size, it:
+ * <ul>
+ * <li>batches the output in a buffer of perl.output.batch.size characters, forwarded up to its last line
+ * separator when full, or completely once perl.output.batch.window.ms milliseconds (default: 200) elapsed
+ * since the last forward. The sink is flushed once per forward,</li>
+ * <li>forwards at most perl.output.rate.limit characters per second (default: 0, no limit), the others are
+ * dropped and counted,</li>
+ * <li>forwards the first perl.output.spill.threshold characters only (default: 0, no threshold). The next
+ * ones are written to rotating files of perl.output.spill.file.size characters (default: 64 MB) in
+ * perl.output.spill.dir, the last perl.output.spill.files of them (default: 2) being kept. The last
+ * perl.output.tail.size characters (default: 65536) are forwarded once the output has ended.</li>
+ * </ul>
+ * Characters are copied between preallocated arrays, no string is created for the output. Closing the stage
+ * forwards what is left, it does not close the sink.
+ */
+@Log4j
+public class PerlOutputStage extends Writer {
+
+    public static final String BATCH_SIZE_PROPERTY = "perl.output.batch.size";
+
+    /**
+     * Forwards the batches whose time window elapsed while the process did not print.
+     *
+     * WindowFlushExecutorHolder is loaded on the first output stage, not before.
+     */
+    private static class WindowFlushExecutorHolder {
+        private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder().setDaemon(true)
+                                                                                      .setNameFormat("perl-output-flush-%d")
+                                                                                      .build();
+
+        private static final ScheduledExecutorService INSTANCE = Executors.newScheduledThreadPool(1, THREAD_FACTORY);
+    }
+
+    private final Writer sink;
+
+    private final char[] batch;
+
+    private int batchLength;
+
+    private final long windowNanos;
+
+    private long lastForwardNanos = System.nanoTime();
+
+    private final long rateLimit;
+
+    private long rateWindowStartNanos = System.nanoTime();
+
+    private long rateWindowCharacters;
+
+    private long droppedCharacters;
+
+    private final long spillThreshold;
+
+    private long forwardedCharacters;
+
+    private final char[] tail;
+
+    private int tailEnd;
+
+    private int tailLength;
+
+    private final File spillDirectory;
+
+    private final long spillFileSize;
+
+    private final int spillFiles;
+
+    private String spillFilePrefix;
+
+    private int spillFileIndex = -1;
+
+    private Writer spillWriter;
+
+    private long spillFileLength;
+
+    private long spilledCharacters;
+
+    private ScheduledFuture<?> windowFlush;
+
+    private boolean closed;
+
+    public PerlOutputStage(Writer sink, int batchSize, long windowMillis, long rateLimit, long spillThreshold,
+            int tailSize, File spillDirectory, long spillFileSize, int spillFiles) {
+        this.sink = sink;
+        this.batch = new char[batchSize];
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.rateLimit = rateLimit;
+        this.spillThreshold = spillThreshold;
+        this.tail = new char[spillThreshold > 0 ? Math.max(tailSize, 0) : 0];
+        this.spillDirectory = spillDirectory;
+        this.spillFileSize = spillFileSize;
+        this.spillFiles = Math.max(1, spillFiles);
+        if (windowMillis > 0) {
+            windowFlush = WindowFlushExecutorHolder.INSTANCE.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flush();
+                    } catch (IOException e) {
+                        log.debug("Failed to forward perl output.", e);
+                    }
+                }
+            }, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @param sink Writer of the script context, may be null.
+     * @return An output stage in front of the sink if perl.output.batch.size is configured, else the sink.
+     */
+    public static Writer wrapIfConfigured(Writer sink) {
+        PerlPropertyLoader propertyLoader = PerlPropertyLoader.getInstance();
+        int batchSize = propertyLoader.getIntProperty(BATCH_SIZE_PROPERTY, 0);
+        if (sink == null || batchSize <= 0) {
+            return sink;
+        }
+        String spillDirectory = propertyLoader.getProperty("perl.output.spill.dir",
+                                                           System.getProperty("java.io.tmpdir"));
+        return new PerlOutputStage(sink,
+                                   batchSize,
+                                   propertyLoader.getLongProperty("perl.output.batch.window.ms", 200),
+                                   propertyLoader.getLongProperty("perl.output.rate.limit", 0),
+                                   propertyLoader.getLongProperty("perl.output.spill.threshold", 0),
+                                   propertyLoader.getIntProperty("perl.output.tail.size", 65536),
+                                   new File(spillDirectory),
+                                   propertyLoader.getLongProperty("perl.output.spill.file.size", 64L << 20),
+                                   propertyLoader.getIntProperty("perl.output.spill.files", 2));
+    }
+
+    @Override
+    public synchronized void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            int copied = Math.min(len, batch.length - batchLength);
+            System.arraycopy(cbuf, off, batch, batchLength, copied);
+            batchLength += copied;
+            off += copied;
+            len -= copied;
+            if (batchLength == batch.length) {
+                forwardBatch(false);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void write(int c) throws IOException {
+        write(new char[] { (char) c }, 0, 1);
+    }
+
+    /**
+     * Forwards the batch if its time window elapsed. Called by the pumps after each chunk.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (batchLength > 0 && System.nanoTime() - lastForwardNanos >= windowNanos) {
+            forwardBatch(true);
+        }
+    }
+
+    /**
+     * Forwards the remaining output, the tail of a spilled output and the count of dropped characters. The
+     * sink is flushed but not closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (windowFlush != null) {
+            windowFlush.cancel(false);
+        }
+        forwardBatch(true);
+        if (spillWriter != null) {
+            spillWriter.close();
+            long hiddenCharacters = spilledCharacters - tailLength;
+            if (hiddenCharacters > 0) {
+                writeNotice(hiddenCharacters + " characters written to " + spillFilePrefix + "*");
+            }
+            // The tail is empty with perl.output.tail.size=0
+            if (tailLength > 0) {
+                int tailStart = (tailEnd - tailLength + tail.length) % tail.length;
+                int firstPart = Math.min(tailLength, tail.length - tailStart);
+                sink.write(tail, tailStart, firstPart);
+                sink.write(tail, 0, tailLength - firstPart);
+            }
+        }
+        if (droppedCharacters > 0) {
+            writeNotice(droppedCharacters + " characters dropped by the output rate limit");
+            droppedCharacters = 0;
+        }
+        sink.flush();
+    }
+
+    /**
+     * @return Number of characters written to spill files.
+     */
+    public synchronized long getSpilledCharacters() {
+        return spilledCharacters;
+    }
+
+    /**
+     * @param all True to forward the whole batch, false to keep the last incomplete line, unless the batch holds
+     *            no line separator.
+     */
+    private void forwardBatch(boolean all) throws IOException {
+        int length = batchLength;
+        if (!all) {
+            int lastLineEnd = batchLength - 1;
+            while (lastLineEnd >= 0 && batch[lastLineEnd] != '\n') {
+                lastLineEnd--;
+            }
+            if (lastLineEnd >= 0) {
+                length = lastLineEnd + 1;
+            }
+        }
+        if (length > 0) {
+            forward(batch, 0, length);
+            System.arraycopy(batch, length, batch, 0, batchLength - length);
+            batchLength -= length;
+            sink.flush();
+        }
+        lastForwardNanos = System.nanoTime();
+    }
+
+    private void forward(char[] cbuf, int off, int len) throws IOException {
+        int forwarded = len;
+        if (spillThreshold > 0) {
+            forwarded = (int) Math.max(0, Math.min(len, spillThreshold - forwardedCharacters));
+            if (forwarded < len) {
+                spill(cbuf, off + forwarded, len - forwarded);
+            }
+        }
+        forwardedCharacters += forwarded;
+        if (rateLimit > 0 && forwarded > 0) {
+            long now = System.nanoTime();
+            if (now - rateWindowStartNanos >= TimeUnit.SECONDS.toNanos(1)) {
+                rateWindowStartNanos = now;
+                rateWindowCharacters = 0;
+                if (droppedCharacters > 0) {
+                    writeNotice(droppedCharacters + " characters dropped by the output rate limit");
+                    droppedCharacters = 0;
+                }
+            }
+            int permitted = (int) Math.max(0, Math.min(forwarded, rateLimit - rateWindowCharacters));
+            droppedCharacters += forwarded - permitted;
+            rateWindowCharacters += permitted;
+            forwarded = permitted;
+        }
+        sink.write(cbuf, off, forwarded);
+    }
+
+    private void spill(char[] cbuf, int off, int len) throws IOException {
+        spilledCharacters += len;
+        addToTail(cbuf, off, len);
+        while (len > 0) {
+            if (spillWriter == null || spillFileLength >= spillFileSize) {
+                rotateSpillFile();
+            }
+            int written = (int) Math.min(len, spillFileSize - spillFileLength);
+            spillWriter.write(cbuf, off, written);
+            spillFileLength += written;
+            off += written;
+            len -= written;
+        }
+    }
+
+    private void rotateSpillFile() throws IOException {
+        if (spillWriter == null) {
+            File firstFile = File.createTempFile("jsr223-perl-output-", ".0.log", spillDirectory);
+            spillFilePrefix = firstFile.getPath().substring(0, firstFile.getPath().length() - ".0.log".length());
+            spillFileIndex = 0;
+            spillWriter = openSpillFile(firstFile);
+            log.debug("Perl output spilled to " + firstFile);
+        } else {
+            spillWriter.close();
+            spillFileIndex++;
+            File expiredFile = getSpillFile(spillFileIndex - spillFiles);
+            if (spillFileIndex >= spillFiles && !expiredFile.delete()) {
+                log.warn("File: " + expiredFile.getAbsolutePath() + " was not deleted.");
+            }
+            spillWriter = openSpillFile(getSpillFile(spillFileIndex));
+        }
+        spillFileLength = 0;
+    }
+
+    private File getSpillFile(int index) {
+        return new File(spillFilePrefix + "." + index + ".log");
+    }
+
+    private static Writer openSpillFile(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8));
+    }
+
+    private void addToTail(char[] cbuf, int off, int len) {
+        if (tail.length == 0) {
+            return;
+        }
+        if (len >= tail.length) {
+            System.arraycopy(cbuf, off + len - tail.length, tail, 0, tail.length);
+            tailEnd = 0;
+            tailLength = tail.length;
+            return;
+        }
+        int firstPart = Math.min(len, tail.length - tailEnd);
+        System.arraycopy(cbuf, off, tail, tailEnd, firstPart);
+        System.arraycopy(cbuf, off + firstPart, tail, 0, len - firstPart);
+        tailEnd = (tailEnd + len) % tail.length;
+        tailLength = Math.min(tail.length, tailLength + len);
+    }
+
+    private void writeNotice(String notice) throws IOException {
+        sink.write("\n[... " + notice + " ...]\n");
+    }
+}
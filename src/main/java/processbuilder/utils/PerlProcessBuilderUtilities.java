@@ -26,11 +26,24 @@
 package processbuilder.utils;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import jsr223.perl.utils.PerlPropertyLoader;
 import lombok.NoArgsConstructor;
 import lombok.extern.log4j.Log4j;
 
@@ -39,44 +52,215 @@ import lombok.extern.log4j.Log4j;
 @Log4j
 public class PerlProcessBuilderUtilities {
 
+    private static final int BUFFER_SIZE = PerlPropertyLoader.getInstance().getIntProperty("perl.stream.buffer.size",
+                                                                                           16384);
+
+    private static final PerlFlushPolicy FLUSH_POLICY = PerlPropertyLoader.getInstance()
+                                                                          .getEnumProperty("perl.stream.flush",
+                                                                                           PerlFlushPolicy.BUFFER);
+
+    // Pump threads are reused, and so are their buffers
+    private static final ThreadLocal<char[]> BUFFERS = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[BUFFER_SIZE];
+        }
+    };
+
+    private static final int BYTE_BUFFER_SIZE = PerlPropertyLoader.getInstance()
+                                                                  .getIntProperty("perl.stream.byte.buffer.size",
+                                                                                  65536);
+
+    // Bytes are copied without decoding for byte inputs and sinks
+    private static final ThreadLocal<byte[]> BYTE_BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BYTE_BUFFER_SIZE];
+        }
+    };
+
+    /**
+     * Shared by all processes. The pool is not bounded: a pump is blocked on its stream for the whole lifetime
+     * of the process, bounding the pool would stall the streams of other processes.
+     *
+     * StreamPumpExecutorHolder is loaded on the first attached stream, not before.
+     */
+    private static class StreamPumpExecutorHolder {
+        private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder().setDaemon(true)
+                                                                                      .setNameFormat("perl-stream-pump-%d")
+                                                                                      .build();
+
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(THREAD_FACTORY);
+
+        private static final ListeningExecutorService INSTANCE = MoreExecutors.listeningDecorator(EXECUTOR);
+    }
+
+    /**
+     * Maximum time in milliseconds to wait for the output of a process after its exit, configured with
+     * perl.stream.drain.timeout.ms. Children started in background and holding the process streams would
+     * otherwise block forever.
+     */
+    public static long getDrainTimeoutMillis() {
+        return PerlPropertyLoader.getInstance().getLongProperty("perl.stream.drain.timeout.ms", 5000);
+    }
+
     /**
-     * Creates a thread which will constantly pipe data, only active when new data is available, from a source to an attached sink. After
-     * reaching the end of the source stream the @Thread will silently be destroyed.
+     * Pipes data from a source to an attached sink on a shared pump thread, only active when new data is
+     * available. After reaching the end of the source stream the pump thread is given back to the pool.
+     *
+     * A slow sink blocks the pump, which stops reading the source: the process is then blocked on its
+     * stream once the operating system pipe is full.
      *
      * @param source       Data source.
      * @param attachedSink Data sink.
+     * @param closeSink    True to close the sink after the end of the source, which signals end of input to a
+     *                     process or forwards what is left in an output stage.
+     * @return The pump, done after the end of the source.
      */
-    private void attachToInputStream(final Reader source, final Writer attachedSink) {
-        new Thread() {
+    private ListenableFuture<?> attachToInputStream(final Reader source, final Writer attachedSink, final boolean closeSink) {
+        return StreamPumpExecutorHolder.INSTANCE.submit(new Runnable() {
+            @Override
             public void run() {
                 try {
-                    pipe(source, attachedSink);
+                    pipe(source, attachedSink, FLUSH_POLICY);
+                } catch (IOException ignored) {
+                    //The exception is ignored as for native scripts
+                } finally {
+                    if (closeSink) {
+                        try {
+                            attachedSink.close();
+                        } catch (IOException ignored) {
+                            //The exception is ignored as for native scripts
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Copies the bytes of an input to the standard input of a process on a shared pump thread, with buffers of
+     * perl.stream.byte.buffer.size bytes. The process input is closed at the end of the source.
+     */
+    private void attachToProcessInput(final PerlByteInput source, final OutputStream processInput) {
+        StreamPumpExecutorHolder.INSTANCE.submit(new Runnable() {
+            @Override
+            public void run() {
+                byte[] buff = BYTE_BUFFERS.get();
+                try (InputStream from = source.openStream(); OutputStream to = processInput) {
+                    int n = from.read(buff);
+                    while (n != -1) {
+                        to.write(buff, 0, n);
+                        n = from.read(buff);
+                    }
                 } catch (IOException ignored) {
                     //The exception is ignored as for native scripts
                 }
             }
-        }.start();
+        });
+    }
+
+    /**
+     * Copies the bytes of a process output to a sink on a shared pump thread, without decoding them. The sink
+     * is flushed at the end of the output but not closed, it belongs to the script context.
+     *
+     * @return The pump, done after the end of the process output.
+     */
+    private ListenableFuture<?> attachToOutputStream(final InputStream processOutput, final OutputStream sink) {
+        return StreamPumpExecutorHolder.INSTANCE.submit(new Runnable() {
+            @Override
+            public void run() {
+                byte[] buff = BYTE_BUFFERS.get();
+                try (InputStream from = processOutput) {
+                    int n = from.read(buff);
+                    while (n != -1) {
+                        sink.write(buff, 0, n);
+                        n = from.read(buff);
+                    }
+                    sink.flush();
+                } catch (IOException ignored) {
+                    //The exception is ignored as for native scripts
+                }
+            }
+        });
     }
 
     /**
      * Pipes all data from a reader (source) to a writer (sink) until an I/O execution occurs or the
-     * end of the source is reached.
+     * end of the source is reached. The sink is flushed as with {@link PerlFlushPolicy#BUFFER}, after each
+     * chunk, and the source is closed once its end is reached. See {@link #pipe(Reader, Writer, PerlFlushPolicy)}.
      *
-     * @param from Source of data.
+     * @param from Source of data, closed at its end.
      * @param to   Sink of data.
      * @throws IOException
      */
     public static void pipe(Reader from, Writer to) throws IOException {
-        char[] buff = new char[1024];
+        pipe(from, to, PerlFlushPolicy.BUFFER);
+    }
+
+    /**
+     * Pipes all data from a reader (source) to a writer (sink) until an I/O execution occurs or the
+     * end of the source is reached. The source is closed once its end is reached, the sink is not closed.
+     *
+     * @param from        Source of data, closed at its end.
+     * @param to          Sink of data.
+     * @param flushPolicy Defines when the sink is flushed, it is always flushed at the end of the source.
+     * @throws IOException
+     */
+    public static void pipe(Reader from, Writer to, PerlFlushPolicy flushPolicy) throws IOException {
+        char[] buff = BUFFERS.get();
         int n = from.read(buff);
         while (n != -1) {
             to.write(buff, 0, n);
-            to.flush();
+            if (flushPolicy.shouldFlush(buff, n)) {
+                to.flush();
+            }
             n = from.read(buff);
         }
+        to.flush();
         from.close();
     }
 
+    /**
+     * Pipes all data from a reader to the standard input of a process, which is closed at the end of the
+     * reader. Both are closed. A process which exits before reading everything only stops the piping, as its
+     * exit value reports the failure.
+     *
+     * @param from    Source of data.
+     * @param process Process reading the data.
+     * @throws IOException If the source could not be read.
+     */
+    public static void pipeToProcessInput(Reader from, Process process) throws IOException {
+        Writer processInput = new OutputStreamWriter(process.getOutputStream());
+        char[] buff = BUFFERS.get();
+        try {
+            int n = from.read(buff);
+            while (n != -1 && writeToProcessInput(processInput, buff, n)) {
+                n = from.read(buff);
+            }
+        } finally {
+            from.close();
+            try {
+                processInput.close();
+            } catch (IOException e) {
+                log.debug("Failed to close the process standard input.", e);
+            }
+        }
+    }
+
+    /**
+     * @return False if the process does not read its standard input anymore.
+     */
+    private static boolean writeToProcessInput(Writer processInput, char[] buff, int n) {
+        try {
+            processInput.write(buff, 0, n);
+            return true;
+        } catch (IOException e) {
+            log.debug("Failed to write to the process standard input.", e);
+            return false;
+        }
+    }
+
     /**
      * Attaches standard and error writer as well as input to a process.
      *
@@ -84,22 +268,90 @@ public class PerlProcessBuilderUtilities {
      * @param processOutput A data sink for the process standard output. If null nothing will ne attached.
      * @param processError  A data sink for the process' error output. If null nothing will be attached.
      * @param processInput  A data source to be streamed to the process. If null nothing will be attached.
+     * @return A handle to wait for the output and error to be completely piped.
      */
-    public void attachStreamsToProcess(Process process, Writer processOutput, Writer processError,
+    public PerlProcessStreams attachStreamsToProcess(Process process, Writer processOutput, Writer processError,
             Reader processInput) {
-        if (processOutput != null) {
-            // Attach to std output
-            attachToInputStream(new InputStreamReader(process.getInputStream()), processOutput);
+        return attachStreamsToProcess(process,
+                                      processOutput,
+                                      processError,
+                                      processInput,
+                                      PerlStreamSinks.fromBindings(null));
+    }
+
+    /**
+     * Attaches standard and error writer as well as input to a process. A stream with a byte sink is copied to
+     * it unchanged instead, a stream redirected to a file sink is not attached.
+     *
+     * @param process       Process which to attach Output, Error and Input to.
+     * @param processOutput A data sink for the process standard output. If null nothing will ne attached.
+     * @param processError  A data sink for the process' error output. If null nothing will be attached.
+     * @param processInput  A data source to be streamed to the process. If null nothing will be attached.
+     * @param sinks         Byte sinks of the streams, and charset of the writers and reader.
+     * @return A handle to wait for the output and error to be completely piped.
+     */
+    public PerlProcessStreams attachStreamsToProcess(Process process, Writer processOutput, Writer processError,
+            Reader processInput, PerlStreamSinks sinks) {
+        return attachStreamsToProcess(process,
+                                      process.getInputStream(),
+                                      process.getErrorStream(),
+                                      processOutput,
+                                      processError,
+                                      processInput,
+                                      sinks);
+    }
+
+    /**
+     * Attaches streams to a process as {@link #attachStreamsToProcess(Process, Writer, Writer, Reader,
+     * PerlStreamSinks)} does, reading its standard and error output from the given streams, which wrap those of
+     * the process, for instance to count the bytes read.
+     *
+     * @param process        Process which to attach Input to.
+     * @param standardOutput Standard output of the process.
+     * @param errorOutput    Error output of the process.
+     * @param processOutput  A data sink for the process standard output. If null nothing will be attached.
+     * @param processError   A data sink for the process' error output. If null nothing will be attached.
+     * @param processInput   A data source to be streamed to the process. If null nothing will be attached.
+     * @param sinks          Byte sinks of the streams, and charset of the writers and reader.
+     * @return A handle to wait for the output and error to be completely piped.
+     */
+    public PerlProcessStreams attachStreamsToProcess(Process process, InputStream standardOutput,
+            InputStream errorOutput, Writer processOutput, Writer processError, Reader processInput,
+            PerlStreamSinks sinks) {
+        List<ListenableFuture<?>> outputPumps = new ArrayList<>(2);
+        if (sinks.getOutputStream() != null) {
+            // Copy the bytes of the standard output as they are
+            outputPumps.add(attachToOutputStream(standardOutput, sinks.getOutputStream()));
+        } else if (processOutput != null && !sinks.hasOutputSink()) {
+            // Attach to std output, through an output stage if configured
+            Writer outputSink = PerlOutputStage.wrapIfConfigured(processOutput);
+            outputPumps.add(attachToInputStream(new InputStreamReader(standardOutput, sinks.getCharset()),
+                                                outputSink,
+                                                outputSink != processOutput));
         }
 
-        if (processError != null) {
-            // Attach error output
-            attachToInputStream(new InputStreamReader(process.getErrorStream()), processError);
+        if (sinks.getErrorStream() != null) {
+            // Copy the bytes of the error output as they are
+            outputPumps.add(attachToOutputStream(errorOutput, sinks.getErrorStream()));
+        } else if (processError != null && !sinks.hasErrorSink()) {
+            // Attach error output, through an output stage if configured
+            Writer errorSink = PerlOutputStage.wrapIfConfigured(processError);
+            outputPumps.add(attachToInputStream(new InputStreamReader(errorOutput, sinks.getCharset()),
+                                                errorSink,
+                                                errorSink != processError));
         }
 
-        if (processInput != null) {
-            // Attach process input
-            attachToInputStream(processInput, new OutputStreamWriter(process.getOutputStream()));
+        if (processInput instanceof PerlByteInput) {
+            // Copy the bytes of the input as they are, the process input is closed at their end
+            attachToProcessInput((PerlByteInput) processInput, process.getOutputStream());
+        } else if (processInput != null) {
+            // Attach process input, closed at the end of the source so that the process reads end of file
+            attachToInputStream(processInput,
+                                new OutputStreamWriter(process.getOutputStream(), sinks.getCharset()),
+                                true);
         }
+
+        // The input pump is not waited for, it may be blocked on its source after the process exited
+        return new PerlProcessStreams(outputPumps);
     }
 }
@@ -0,0 +1,124 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package processbuilder.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+
+import lombok.extern.log4j.Log4j;
+import processbuilder.PerlProcessBuilderFactory;
+
+
+/**
+ * Kills the processes left in the process group of a perl process started with setsid, whose process group
+ * id is its pid. Unlike a process table scan, a group without survivors only costs one kill -0, and the
+ * survivors are killed with a single signal to the group.
+ */
+@Log4j
+public class PerlProcessGroupKiller {
+
+    private static final String KILL_COMMAND = "kill";
+
+    private static final File NULL_FILE = new File("/dev/null");
+
+    private final PerlProcessBuilderFactory processBuilderFactory;
+
+    private volatile long processGroupId = -1;
+
+    public PerlProcessGroupKiller(PerlProcessBuilderFactory processBuilderFactory) {
+        this.processBuilderFactory = processBuilderFactory;
+    }
+
+    /**
+     * Tracks the process group led by a process started with setsid.
+     */
+    public void track(Process groupLeader) {
+        processGroupId = getPid(groupLeader);
+        if (processGroupId <= 0) {
+            log.warn("Process id of the perl process is unknown, its process group is not killed.");
+        }
+    }
+
+    /**
+     * @return True if processes are left in the tracked process group.
+     */
+    public boolean hasSurvivors() {
+        return processGroupId > 0 && signalGroup("0");
+    }
+
+    /**
+     * Kills the processes left in the tracked process group, if any.
+     */
+    public void kill() {
+        if (hasSurvivors()) {
+            log.debug("Killing the processes left in process group " + processGroupId);
+            signalGroup("KILL");
+        }
+    }
+
+    /**
+     * @return True if the signal was sent to at least one process of the group.
+     */
+    private boolean signalGroup(String signal) {
+        ProcessBuilder processBuilder = processBuilderFactory.getProcessBuilder(KILL_COMMAND,
+                                                                                "-" + signal,
+                                                                                "--",
+                                                                                "-" + processGroupId);
+        // kill reports an empty group on its error stream
+        processBuilder.redirectOutput(ProcessBuilder.Redirect.to(NULL_FILE));
+        processBuilder.redirectError(ProcessBuilder.Redirect.to(NULL_FILE));
+        try {
+            return processBuilder.start().waitFor() == 0;
+        } catch (IOException e) {
+            log.warn("Failed to signal process group " + processGroupId, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * @return The pid of a process, with Process.pid() from Java 9, or the pid field of the Unix process
+     * implementation before. -1 if unknown.
+     */
+    static long getPid(Process process) {
+        try {
+            return (Long) Process.class.getMethod("pid").invoke(process);
+        } catch (NoSuchMethodException e) {
+            try {
+                Field pid = process.getClass().getDeclaredField("pid");
+                pid.setAccessible(true);
+                return pid.getLong(process);
+            } catch (ReflectiveOperationException | RuntimeException fieldException) {
+                log.debug("Process id not available", fieldException);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Process id not available", e);
+        }
+        return -1;
+    }
+}
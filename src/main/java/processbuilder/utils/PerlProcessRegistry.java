@@ -0,0 +1,195 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package processbuilder.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.ow2.proactive.utils.CookieBasedProcessTreeKiller;
+
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import jsr223.perl.utils.PerlPropertyLoader;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j;
+
+
+/**
+ * Registry of the live perl processes started by the script engine, with what kills the processes they leave.
+ * Registering and unregistering a process are O(1) and do not touch the JVM shutdown hooks: a single hook,
+ * added with the registry, tears down the processes still registered when the JVM exits, in parallel.
+ */
+@Log4j
+public class PerlProcessRegistry {
+
+    public static final String SHUTDOWN_TIMEOUT_PROPERTY = "perl.shutdown.timeout.ms";
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder().setDaemon(true)
+                                                                                  .setNameFormat("perl-process-teardown-%d")
+                                                                                  .build();
+
+    private final Set<Registration> registrations = Sets.newConcurrentHashSet();
+
+    /**
+     * PerlProcessRegistryHolder is loaded on the first registered process, not before.
+     */
+    private static class PerlProcessRegistryHolder {
+        private static final PerlProcessRegistry INSTANCE = createRegistryWithShutdownHook();
+
+        private static PerlProcessRegistry createRegistryWithShutdownHook() {
+            final PerlProcessRegistry registry = new PerlProcessRegistry();
+            final long timeoutMillis = PerlPropertyLoader.getInstance().getLongProperty(SHUTDOWN_TIMEOUT_PROPERTY,
+                                                                                        10000);
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    registry.tearDown(timeoutMillis);
+                }
+            });
+            return registry;
+        }
+    }
+
+    public static PerlProcessRegistry getInstance() {
+        return PerlProcessRegistryHolder.INSTANCE;
+    }
+
+    /**
+     * Registers a started process, until {@link Registration#unregister()}.
+     *
+     * @param name               Name of the task running the process.
+     * @param process            The perl process.
+     * @param processTreeKiller  Killer of the processes left by the process, or null.
+     * @param processGroupKiller Killer of the processes left in the process group of the process, or null.
+     * @return The registration of the process.
+     */
+    public Registration register(String name, Process process, CookieBasedProcessTreeKiller processTreeKiller,
+            PerlProcessGroupKiller processGroupKiller) {
+        Registration registration = new Registration(name, process, processTreeKiller, processGroupKiller);
+        registrations.add(registration);
+        return registration;
+    }
+
+    /**
+     * @return The registered processes, the oldest first.
+     */
+    public List<Registration> getRunningProcesses() {
+        List<Registration> runningProcesses = new ArrayList<>(registrations);
+        Collections.sort(runningProcesses, new Comparator<Registration>() {
+            @Override
+            public int compare(Registration first, Registration second) {
+                return Long.compare(first.getStartTimeMillis(), second.getStartTimeMillis());
+            }
+        });
+        return runningProcesses;
+    }
+
+    /**
+     * Destroys the registered processes and kills the processes they left, in parallel.
+     *
+     * @param timeoutMillis Maximum time given to the teardown.
+     */
+    void tearDown(long timeoutMillis) {
+        List<Callable<Void>> teardowns = new ArrayList<>();
+        for (final Registration registration : registrations) {
+            teardowns.add(new Callable<Void>() {
+                @Override
+                public Void call() throws InterruptedException {
+                    registration.tearDown();
+                    return null;
+                }
+            });
+        }
+        if (teardowns.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(teardowns.size(), THREAD_FACTORY);
+        try {
+            executor.invokeAll(teardowns, timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A registered perl process.
+     */
+    @Getter
+    public class Registration {
+
+        private final String name;
+
+        private final long startTimeMillis = System.currentTimeMillis();
+
+        @Getter(AccessLevel.NONE)
+        private final Process process;
+
+        @Getter(AccessLevel.NONE)
+        private final CookieBasedProcessTreeKiller processTreeKiller;
+
+        @Getter(AccessLevel.NONE)
+        private final PerlProcessGroupKiller processGroupKiller;
+
+        private Registration(String name, Process process, CookieBasedProcessTreeKiller processTreeKiller,
+                PerlProcessGroupKiller processGroupKiller) {
+            this.name = name;
+            this.process = process;
+            this.processTreeKiller = processTreeKiller;
+            this.processGroupKiller = processGroupKiller;
+        }
+
+        public long getAgeMillis() {
+            return System.currentTimeMillis() - startTimeMillis;
+        }
+
+        public void unregister() {
+            registrations.remove(this);
+        }
+
+        private void tearDown() throws InterruptedException {
+            process.destroy();
+            process.waitFor();
+            if (processTreeKiller != null) {
+                processTreeKiller.kill();
+            }
+            if (processGroupKiller != null) {
+                processGroupKiller.kill();
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package processbuilder.utils;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+
+/**
+ * Handle on the pumps attached to a process by {@link PerlProcessBuilderUtilities#attachStreamsToProcess}.
+ * Allows to wait until the whole standard and error output of the process has been piped to the sinks.
+ */
+public class PerlProcessStreams {
+
+    private final List<ListenableFuture<?>> outputPumps;
+
+    private final ListenableFuture<?> outputCompletion;
+
+    private volatile long drainTimeMillis = -1;
+
+    PerlProcessStreams(List<ListenableFuture<?>> outputPumps) {
+        this.outputPumps = outputPumps;
+        this.outputCompletion = Futures.successfulAsList(outputPumps);
+    }
+
+    /**
+     * @return A future done once all output has been piped, to be notified without blocking a thread.
+     */
+    public ListenableFuture<?> getOutputCompletion() {
+        return outputCompletion;
+    }
+
+    /**
+     * @return True if all output has been piped.
+     */
+    public boolean isOutputDone() {
+        return outputCompletion.isDone();
+    }
+
+    /**
+     * Waits until the output pumps reached the end of the process streams, which happens once the process and
+     * the children holding its streams have exited.
+     *
+     * @param timeout Maximum time to wait.
+     * @param unit    Unit of the timeout.
+     * @return True if all output has been piped, false if the timeout elapsed before.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     */
+    public boolean awaitOutput(long timeout, TimeUnit unit) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(timeout);
+        boolean drained = true;
+        for (Future<?> pump : outputPumps) {
+            try {
+                pump.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                // The pump stopped on a failure, there is nothing more to wait for
+            } catch (TimeoutException e) {
+                drained = false;
+            }
+        }
+        drainTimeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return drained;
+    }
+
+    /**
+     * @return How long the last call to {@link #awaitOutput} waited, in milliseconds, or -1 if it was not called.
+     */
+    public long getDrainTimeMillis() {
+        return drainTimeMillis;
+    }
+}
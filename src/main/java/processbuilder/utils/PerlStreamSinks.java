@@ -0,0 +1,168 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package processbuilder.utils;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Map;
+
+import javax.script.Bindings;
+
+import org.ow2.proactive.scheduler.common.SchedulerConstants;
+
+import jsr223.perl.utils.PerlPropertyLoader;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j;
+
+
+/**
+ * Byte sinks and charset of the streams of a perl process, read from well-known bindings of a script context:
+ * <ul>
+ * <li>PERL_OUTPUT_STREAM: an OutputStream receiving the standard output bytes unchanged, or a File the standard
+ * output is redirected to,</li>
+ * <li>PERL_ERROR_STREAM: the same for the error output,</li>
+ * <li>PERL_CHARSET: name of the charset decoding the output written to the script context writers and encoding
+ * the script context reader, also read from the variables of a task. Configured with perl.stream.charset
+ * otherwise (default: the platform charset).</li>
+ * </ul>
+ * A stream with a byte sink is neither decoded nor written to the script context writer.
+ */
+@Log4j
+@AllArgsConstructor
+@Getter
+public class PerlStreamSinks {
+
+    public static final String OUTPUT_STREAM_BINDING = "PERL_OUTPUT_STREAM";
+
+    public static final String ERROR_STREAM_BINDING = "PERL_ERROR_STREAM";
+
+    public static final String CHARSET_BINDING = "PERL_CHARSET";
+
+    public static final String CHARSET_PROPERTY = "perl.stream.charset";
+
+    private final Object output;
+
+    private final Object error;
+
+    private final Charset charset;
+
+    /**
+     * @param bindings Bindings of a script context. If null, the streams have no byte sink and the configured
+     *                 charset.
+     */
+    public static PerlStreamSinks fromBindings(Bindings bindings) {
+        if (bindings == null) {
+            return new PerlStreamSinks(null, null, getConfiguredCharset());
+        }
+        return new PerlStreamSinks(getSink(bindings, OUTPUT_STREAM_BINDING),
+                                   getSink(bindings, ERROR_STREAM_BINDING),
+                                   getCharset(bindings));
+    }
+
+    /**
+     * Redirects the standard and error output of a process to the files of the file sinks, the process then
+     * writes them without any copy by the JVM.
+     */
+    public void redirect(ProcessBuilder processBuilder) {
+        if (output instanceof File) {
+            processBuilder.redirectOutput((File) output);
+        }
+        if (error instanceof File) {
+            processBuilder.redirectError((File) error);
+        }
+    }
+
+    /**
+     * @return The stream receiving the standard output bytes, or null.
+     */
+    public OutputStream getOutputStream() {
+        return output instanceof OutputStream ? (OutputStream) output : null;
+    }
+
+    /**
+     * @return The stream receiving the error output bytes, or null.
+     */
+    public OutputStream getErrorStream() {
+        return error instanceof OutputStream ? (OutputStream) error : null;
+    }
+
+    /**
+     * @return True if the standard output goes to a byte sink instead of the script context writer.
+     */
+    public boolean hasOutputSink() {
+        return output != null;
+    }
+
+    /**
+     * @return True if the error output goes to a byte sink instead of the script context error writer.
+     */
+    public boolean hasErrorSink() {
+        return error != null;
+    }
+
+    private static Object getSink(Bindings bindings, String name) {
+        Object sink = bindings.get(name);
+        if (sink == null || sink instanceof OutputStream || sink instanceof File) {
+            return sink;
+        }
+        log.warn("Binding " + name + " is neither an OutputStream nor a File, it is ignored.");
+        return null;
+    }
+
+    private static Charset getCharset(Bindings bindings) {
+        Object charset = bindings.get(CHARSET_BINDING);
+        if (charset == null) {
+            Object variables = bindings.get(SchedulerConstants.VARIABLES_BINDING_NAME);
+            if (variables instanceof Map) {
+                charset = ((Map<String, Serializable>) variables).get(CHARSET_BINDING);
+            }
+        }
+        if (charset instanceof Charset) {
+            return (Charset) charset;
+        }
+        return charset == null ? getConfiguredCharset() : forName(CHARSET_BINDING, charset.toString());
+    }
+
+    private static Charset getConfiguredCharset() {
+        String charset = PerlPropertyLoader.getInstance().getProperty(CHARSET_PROPERTY, "");
+        return charset.isEmpty() ? Charset.defaultCharset() : forName(CHARSET_PROPERTY, charset);
+    }
+
+    private static Charset forName(String source, String charset) {
+        try {
+            return Charset.forName(charset.trim());
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            log.warn(source + " names an unknown charset: " + charset + ". Default charset " +
+                     Charset.defaultCharset() + " is used.");
+            return Charset.defaultCharset();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package JSR223::Perl::Bindings;
+
+# Access to the script engine bindings when perl.bindings.transport is set to json.
+#
+#   use JSR223::Perl::Bindings;
+#   my $variables = JSR223::Perl::Bindings::get('variables');
+#   print $variables->{PA_JOB_ID};
+#
+# The bindings file is decoded on first access only, maps become hashes and lists become arrays.
+
+use strict;
+use warnings;
+
+my $json_class = eval { require JSON::XS; 'JSON::XS' } || do { require JSON::PP; 'JSON::PP' };
+
+my $loaded_file = '';
+my $bindings = {};
+
+sub all {
+    my $file = $ENV{JSR223_PERL_BINDINGS_FILE};
+    $file = '' unless defined $file;
+    # Reloaded when the file changes, a pooled worker runs several scripts
+    if ($file ne $loaded_file) {
+        $bindings = {};
+        if ($file ne '' && open(my $handle, '<:raw', $file)) {
+            local $/;
+            my $json = <$handle>;
+            close $handle;
+            $bindings = $json_class->new->utf8->allow_nonref->decode($json);
+        }
+        $loaded_file = $file;
+    }
+    return $bindings;
+}
+
+sub get {
+    my ($name) = @_;
+    return all()->{$name};
+}
+
+sub names {
+    return keys %{ all() };
+}
+
+1;
@@ -0,0 +1,74 @@
+package JSR223::Perl::Results;
+
+# Sends values back to the script engine. Once the script has exited, variables are merged into the
+# variables map and the result becomes the result binding.
+#
+#   use JSR223::Perl::Results;
+#   JSR223::Perl::Results::set_variable('COUNT', 42);
+#   JSR223::Perl::Results::set_variable_from_file('REPORT', '/tmp/report.txt');
+#   JSR223::Perl::Results::set_result('done');
+#
+# Records are appended to the file named by JSR223_PERL_RESULTS_FILE, see jsr223.perl.bindings.PerlResultsReader.
+# A value set several times keeps its last value. Character strings are sent UTF-8 encoded, byte strings as is.
+
+use strict;
+use warnings;
+
+sub set_variable {
+    my ($name, $value) = @_;
+    _append('V', $name, $value);
+}
+
+sub set_result {
+    my ($value) = @_;
+    _append('R', '', $value);
+}
+
+# Copies the file content into the variable, without reading the whole file in memory.
+sub set_variable_from_file {
+    my ($name, $path) = @_;
+    open(my $source, '<:raw', $path) or die "Cannot read $path: $!";
+    my $length = -s $source;
+    my $results = _open_results();
+    print $results _header('V', $name, $length), _bytes($name);
+    my $buffer;
+    while ($length > 0) {
+        my $read = read($source, $buffer, $length < 65536 ? $length : 65536);
+        die "Cannot read $path: " . (defined $read ? 'file truncated' : $!) unless $read;
+        print $results $buffer;
+        $length -= $read;
+    }
+    close $source;
+    close $results or die "Cannot write perl script engine results: $!";
+}
+
+sub _append {
+    my ($type, $name, $value) = @_;
+    my $bytes = _bytes($value);
+    my $results = _open_results();
+    print $results _header($type, $name, length($bytes)), _bytes($name), $bytes;
+    close $results or die "Cannot write perl script engine results: $!";
+}
+
+sub _open_results {
+    my $file = $ENV{JSR223_PERL_RESULTS_FILE};
+    die "JSR223_PERL_RESULTS_FILE is not set, results can only be sent from the perl script engine "
+        . "with perl.results.enabled=true\n"
+        unless defined $file && $file ne '';
+    open(my $results, '>>:raw', $file) or die "Cannot open perl script engine results $file: $!";
+    return $results;
+}
+
+sub _header {
+    my ($type, $name, $length) = @_;
+    return join(' ', $type, length(_bytes($name)), $length) . "\n";
+}
+
+sub _bytes {
+    my ($value) = @_;
+    my $bytes = defined $value ? "$value" : '';
+    utf8::encode($bytes) if utf8::is_utf8($bytes);
+    return $bytes;
+}
+
+1;
@@ -0,0 +1,48 @@
+package JSR223::Perl::Usage;
+
+# Reports the resource usage of a script to the script engine. Loaded by the engine with
+# perl -MJSR223::Perl::Usage when perl.resource.usage.enabled is true, scripts do not use it directly.
+#
+# When perl exits, "<name>=<value>" lines are written to the file named by JSR223_PERL_USAGE_FILE, see
+# jsr223.perl.limits.PerlResourceUsageReader. The variable is removed from the environment so that perl
+# processes started by the script do not overwrite the file.
+
+use strict;
+use warnings;
+
+my $usage_file = delete $ENV{JSR223_PERL_USAGE_FILE};
+my $pid = $$;
+
+# Reaching the soft CPU time limit ends the script with a die, so that the usage is still written
+$SIG{XCPU} = sub { die "CPU time limit exceeded\n" };
+
+sub _read_proc_values {
+    my ($path, %names) = @_;
+    my %values;
+    open(my $proc, '<', $path) or return %values;
+    while (my $line = <$proc>) {
+        if ($line =~ /^(\w+):\s+(\d+)/ && exists $names{$1}) {
+            $values{$names{$1}} = $2;
+        }
+    }
+    close($proc);
+    return %values;
+}
+
+END {
+    # Keeps the exit status of the script
+    local ($?, $!, $@);
+    if (defined $usage_file && $$ == $pid) {
+        my ($user, $system, $children_user, $children_system) = times;
+        my %usage = (CPU_USER_SECONDS   => $user + $children_user,
+                     CPU_SYSTEM_SECONDS => $system + $children_system,
+                     _read_proc_values('/proc/self/status', VmHWM => 'MAX_RSS_KB'),
+                     _read_proc_values('/proc/self/io', read_bytes => 'READ_BYTES', write_bytes => 'WRITE_BYTES'));
+        if (open(my $output, '>', $usage_file)) {
+            print $output "$_=$usage{$_}\n" for sort keys %usage;
+            close($output);
+        }
+    }
+}
+
+1;
@@ -0,0 +1,267 @@
+# Resident driver loop of a pooled perl worker, started by jsr223.perl.pool.PerlWorker.
+#
+# Requests are read from STDIN, responses are written to STDOUT. Both are length-prefixed:
+#   request:  "PING\n"                        response: "PONG\n"
+#   request:  "RUN <script hash or ->\n" "<env count>\n" { "<key length> <value length>\n" <key> <value> } "<script length>\n" <script>
+#   response: "<exit value> <stdout length> <stderr length>\n" <stdout> <stderr>
+#
+# Each task runs in a fresh package which is deleted afterwards, with %ENV reset to the worker environment
+# plus the task environment. The signal handlers of the worker are restored and a pending alarm is cancelled
+# after each task, so that they do not go off during the next one. The task STDOUT and STDERR are captured in
+# files so that output of child processes is captured as well. The task STDIN is empty.
+#
+# Scripts sent with a hash are compiled once into a sub which is reused for the next executions of the same
+# hash, up to the number of scripts given as first argument. Such scripts keep their package between executions.
+# Scripts declaring named subs or a __END__/__DATA__ section are always compiled for one execution, because
+# named subs would capture the lexical variables of the first execution only.
+#
+# Arguments: <number of compiled scripts kept> <1 to fork per script, else 0> <module>...
+# The modules are loaded once when the worker starts, and so are the modules listed by the JSR223_PERL_PRELOAD
+# variable of a task, before the task runs. When forking, each script runs in a child process which shares the
+# compiled modules of the worker copy-on-write and whose changes to the worker state are discarded. Scripts are
+# then compiled in the child, for one execution. The child runs in its own process group.
+#
+# When the worker receives SIGTERM, SIGINT or SIGHUP it kills the process group of a running child and removes
+# its capture directory before dying from the signal.
+
+# Defined before any lexical variable, so that the task does not see the driver's variables.
+sub run_task_code { eval $_[0]; }
+
+use strict;
+use warnings;
+use Config ();
+use Cwd ();
+use POSIX ();
+use File::Path ();
+use File::Spec ();
+use File::Temp ();
+use IO::Handle ();
+use Symbol ();
+
+our $in_task = 0;
+our $task_pid;
+
+BEGIN {
+    *CORE::GLOBAL::exit = sub (;$) {
+        my $exit_value = @_ ? $_[0] : 0;
+        die bless({ exit_value => $exit_value }, 'JSR223::Perl::Exit') if $in_task;
+        CORE::exit($exit_value);
+    };
+}
+
+open(my $control_in, '<&', \*STDIN) or die "Cannot duplicate STDIN: $!";
+open(my $control_out, '>&', \*STDOUT) or die "Cannot duplicate STDOUT: $!";
+binmode $control_in;
+binmode $control_out;
+$control_out->autoflush(1);
+open(STDIN, '<', File::Spec->devnull()) or die "Cannot open null device: $!";
+
+# Removed by stop_worker, and by die_from_signal when the worker is destroyed
+my $capture_dir = File::Temp::tempdir('jsr223-perl-worker-XXXXXX', TMPDIR => 1, CLEANUP => 1);
+my $stdout_file = File::Spec->catfile($capture_dir, 'stdout');
+my $stderr_file = File::Spec->catfile($capture_dir, 'stderr');
+my %worker_env = %ENV;
+my $worker_dir = Cwd::getcwd();
+my $task_count = 0;
+my ($max_compiled_scripts, $fork_per_script, @startup_modules) = @ARGV;
+$max_compiled_scripts ||= 0;
+$max_compiled_scripts = 0 if $fork_per_script;
+my %compiled_scripts;
+my @compiled_script_order;
+my %failed_modules;
+
+sub stop_worker {
+    # The capture directory is removed before exiting: the SIGTERM which follows the end of STDIN when the worker
+    # is destroyed could end the worker during its exit, before the cleanup of File::Temp
+    @SIG{qw(TERM INT HUP)} = ('IGNORE') x 3;
+    File::Path::rmtree($capture_dir);
+    CORE::exit(0);
+}
+
+sub read_exactly {
+    my ($length) = @_;
+    my $buffer = '';
+    while (length($buffer) < $length) {
+        my $read = read($control_in, $buffer, $length - length($buffer), length($buffer));
+        stop_worker() unless $read;
+    }
+    return $buffer;
+}
+
+sub read_line {
+    my $line = <$control_in>;
+    stop_worker() unless defined $line;
+    chomp $line;
+    return $line;
+}
+
+sub slurp {
+    my ($file) = @_;
+    open(my $handle, '<', $file) or return '';
+    binmode $handle;
+    local $/;
+    my $content = <$handle>;
+    close $handle;
+    return defined $content ? $content : '';
+}
+
+sub preload_modules {
+    for my $module (@_) {
+        next if $module !~ /^\w+(?:::\w+)*$/ || $failed_modules{$module};
+        (my $file = "$module.pm") =~ s{::}{/}g;
+        next if $INC{$file};
+        unless (eval { require $file; 1 }) {
+            $failed_modules{$module} = 1;
+            print STDERR "Failed to preload $module: $@";
+        }
+    }
+}
+
+sub task_inc {
+    my ($task_env) = @_;
+    # PERL5LIB is only read at startup, directories given by the task are added here
+    return ((grep { length } split(/\Q$Config::Config{path_sep}\E/, $task_env->{PERL5LIB} || '')), @INC);
+}
+
+sub is_cacheable {
+    my ($script) = @_;
+    return $script !~ /^__(?:END|DATA)__\b/m && $script !~ /^\s*sub\s+\w/m;
+}
+
+sub compiled_script {
+    my ($script_hash, $script) = @_;
+    if (my $compiled = $compiled_scripts{$script_hash}) {
+        @compiled_script_order = ((grep { $_ ne $script_hash } @compiled_script_order), $script_hash);
+        return $compiled->{code};
+    }
+    my $package = 'JSR223::Perl::Script' . ++$task_count;
+    my $code = run_task_code("package $package;\nno strict;\nno warnings;\nsub {\n#line 1\n$script\n;}");
+    if (ref($code) ne 'CODE') {
+        Symbol::delete_package($package);
+        return undef;
+    }
+    $compiled_scripts{$script_hash} = { code => $code, package => $package };
+    push @compiled_script_order, $script_hash;
+    while (@compiled_script_order > $max_compiled_scripts) {
+        my $evicted = delete $compiled_scripts{ shift @compiled_script_order };
+        Symbol::delete_package($evicted->{package});
+    }
+    return $code;
+}
+
+sub execute_task {
+    my ($script, $script_hash, $task_env) = @_;
+    my $package = 'JSR223::Perl::Task' . ++$task_count;
+
+    open(my $saved_stdout, '>&', \*STDOUT) or die "Cannot save STDOUT: $!";
+    open(my $saved_stderr, '>&', \*STDERR) or die "Cannot save STDERR: $!";
+    open(STDOUT, '>', $stdout_file) or die "Cannot capture STDOUT: $!";
+    open(STDERR, '>', $stderr_file) or die "Cannot capture STDERR: $!";
+
+    %ENV = (%worker_env, %$task_env);
+    my $exit_value = 0;
+    {
+        local %SIG = %SIG;
+        local $in_task = 1;
+        local ($/, $\, $,, $") = ("\n", undef, undef, ' ');
+        local ($_, @ARGV, $0);
+        $0 = '-';
+        local @INC = task_inc($task_env);
+        if ($script_hash ne '-' && $max_compiled_scripts > 0 && is_cacheable($script)) {
+            # On compilation failure $@ holds the compilation error
+            my $code = compiled_script($script_hash, $script);
+            eval { $code->() } if $code;
+        } else {
+            run_task_code("package $package;\nno strict;\nno warnings;\n#line 1\n$script\n;");
+        }
+        if (my $error = $@) {
+            if (ref($error) eq 'JSR223::Perl::Exit') {
+                $exit_value = $error->{exit_value};
+            } else {
+                print STDERR $error;
+                $exit_value = 255;
+            }
+        }
+    }
+    alarm 0;
+
+    STDOUT->flush();
+    STDERR->flush();
+    open(STDOUT, '>&', $saved_stdout) or die "Cannot restore STDOUT: $!";
+    open(STDERR, '>&', $saved_stderr) or die "Cannot restore STDERR: $!";
+    close $saved_stdout;
+    close $saved_stderr;
+
+    Symbol::delete_package($package);
+    %ENV = %worker_env;
+    chdir $worker_dir;
+
+    return $exit_value;
+}
+
+sub die_from_signal {
+    my ($signal) = @_;
+    # The worker is destroyed when it is recycled, evicted, shut down, or on timeout or cancellation: a forked
+    # script and its children are killed first, then the worker dies from the signal once its capture directory
+    # is removed, as the cleanup of File::Temp only runs on a normal exit
+    @SIG{qw(TERM INT HUP)} = ('IGNORE') x 3;
+    if ($task_pid) {
+        kill('KILL', $task_pid) unless kill('KILL', -$task_pid);
+        waitpid($task_pid, 0);
+    }
+    File::Path::rmtree($capture_dir);
+    $SIG{$signal} = 'DEFAULT';
+    kill($signal, $$);
+}
+
+sub run_task {
+    my ($script, $script_hash, $task_env) = @_;
+    if ($task_env->{JSR223_PERL_PRELOAD}) {
+        local @INC = task_inc($task_env);
+        preload_modules(split(/[\s,]+/, $task_env->{JSR223_PERL_PRELOAD}));
+    }
+    my $exit_value;
+    local $task_pid = $fork_per_script ? fork() : undef;
+    my $pid = $task_pid;
+    if (!defined $pid) {
+        # Not forking, or fork failed: the script runs in the worker itself
+        $exit_value = execute_task($script, $script_hash, $task_env);
+    } elsif ($pid == 0) {
+        # The script and its children run in their own process group, killed with the worker
+        POSIX::setpgid(0, 0);
+        @SIG{qw(TERM INT HUP)} = ('DEFAULT') x 3;
+        $exit_value = execute_task($script, '-', $task_env);
+        $exit_value = 255 unless defined $exit_value && $exit_value =~ /^-?\d+$/;
+        # END blocks and destructors of the worker, such as the capture directory cleanup, must not run
+        POSIX::_exit($exit_value & 255);
+    } else {
+        POSIX::setpgid($pid, $pid);
+        waitpid($pid, 0);
+        $exit_value = ($? & 127) ? 128 + ($? & 127) : $? >> 8;
+    }
+    return ($exit_value, slurp($stdout_file), slurp($stderr_file));
+}
+
+@SIG{qw(TERM INT HUP)} = (\&die_from_signal) x 3;
+preload_modules(@startup_modules);
+
+while (1) {
+    my ($command, $script_hash) = split / /, read_line();
+    if ($command eq 'PING') {
+        print $control_out "PONG\n";
+    } elsif ($command eq 'RUN' && defined $script_hash) {
+        my %task_env;
+        my $env_count = read_line();
+        for (1 .. $env_count) {
+            my ($key_length, $value_length) = split / /, read_line();
+            my $key = read_exactly($key_length);
+            $task_env{$key} = read_exactly($value_length);
+        }
+        my $script = read_exactly(read_line());
+        my ($exit_value, $stdout, $stderr) = run_task($script, $script_hash, \%task_env);
+        $exit_value = 255 unless defined $exit_value && $exit_value =~ /^-?\d+$/;
+        print $control_out join(' ', $exit_value, length($stdout), length($stderr)), "\n", $stdout, $stderr;
+    } else {
+        CORE::exit(2);
+    }
+}
@@ -30,6 +30,8 @@ import java.io.File;
 import org.junit.Assert;
 import org.junit.Test;
 
+import jsr223.perl.limits.PerlResourceLimits;
+
 
 public class PerlCommandCreatorTest {
 
@@ -55,4 +57,92 @@ public class PerlCommandCreatorTest {
         // Check if correct filename is used
         Assert.assertEquals("Correct filename must be used in command.", perlFile.getName(), command[1]);
     }
+
+    /**
+     * Check whether the standard input execution command reads the script from standard input.
+     */
+    @Test
+    public void testPerlStandardInputExecutionCommand() {
+        String[] command = perlCommandCreator.createPerlStandardInputExecutionCommand();
+
+        Assert.assertEquals("Perl command must be used as read from configuration.",
+                            PerlCommandCreator.getPerlCommand(),
+                            command[0]);
+        Assert.assertEquals("Script must be read from standard input.", "-", command[1]);
+    }
+
+    /**
+     * Check whether the evaluation command passes the code through the -e switch, followed by the arguments.
+     */
+    @Test
+    public void testPerlEvaluationCommand() {
+        String[] command = perlCommandCreator.createPerlEvaluationCommand("print $];", "first", "second");
+
+        Assert.assertEquals("Perl command must be used as read from configuration.",
+                            PerlCommandCreator.getPerlCommand(),
+                            command[0]);
+        Assert.assertEquals("Code must be passed with the -e switch.", "-e", command[1]);
+        Assert.assertEquals("Code must follow the -e switch.", "print $];", command[2]);
+        Assert.assertEquals("Arguments must follow the code.", "first", command[3]);
+        Assert.assertEquals("Arguments must follow the code.", "second", command[4]);
+    }
+
+    /**
+     * Check whether the syntax check command compiles the file with the -c switch.
+     */
+    @Test
+    public void testPerlSyntaxCheckCommand() {
+        File perlFile = new File("file.pl");
+        String[] command = perlCommandCreator.createPerlSyntaxCheckCommand(perlFile);
+
+        Assert.assertEquals("Perl command must be used as read from configuration.",
+                            PerlCommandCreator.getPerlCommand(),
+                            command[0]);
+        Assert.assertEquals("Script must only be compiled.", "-c", command[1]);
+        Assert.assertEquals("Correct filename must be used in command.", perlFile.getPath(), command[2]);
+    }
+
+    /**
+     * Check whether the module is loaded with the -M switch before the script of the command.
+     */
+    @Test
+    public void testModuleLoadingCommand() {
+        String[] perlCommand = perlCommandCreator.createPerlStandardInputExecutionCommand();
+        String[] command = perlCommandCreator.createModuleLoadingCommand(perlCommand, "JSR223::Perl::Usage");
+
+        Assert.assertArrayEquals("Module must be loaded before the script.",
+                                 new String[] { PerlCommandCreator.getPerlCommand(), "-MJSR223::Perl::Usage", "-" },
+                                 command);
+    }
+
+    /**
+     * Check whether the resource limited command applies the limits with ulimit before executing the command.
+     */
+    @Test
+    public void testResourceLimitedCommand() {
+        File perlFile = new File("file.pl");
+        String[] perlCommand = perlCommandCreator.createPerlExecutionCommand(perlFile);
+        String[] command = perlCommandCreator.createResourceLimitedCommand(perlCommand, new PerlResourceLimits(0, 0, 64));
+
+        Assert.assertEquals("Limits must be applied by the shell.", "sh", command[0]);
+        Assert.assertEquals("Limits must be applied by the shell.", "-c", command[1]);
+        Assert.assertEquals("Shell must replace itself with the command.", "ulimit -n 64 && exec \"$@\"", command[2]);
+        Assert.assertEquals("Perl command must follow the shell name.",
+                            PerlCommandCreator.getPerlCommand(),
+                            command[4]);
+        Assert.assertEquals("Correct filename must be used in command.", perlFile.getPath(), command[5]);
+    }
+
+    /**
+     * Check whether the session leader command starts the command with setsid.
+     */
+    @Test
+    public void testSessionLeaderCommand() {
+        String[] perlCommand = perlCommandCreator.createPerlEvaluationCommand("print 1;");
+        String[] command = perlCommandCreator.createSessionLeaderCommand(perlCommand);
+
+        Assert.assertEquals("Command must be started in a new session.", "setsid", command[0]);
+        Assert.assertEquals("Perl command must follow setsid.", PerlCommandCreator.getPerlCommand(), command[1]);
+        Assert.assertEquals("Code must follow the perl command.", "print 1;", command[3]);
+    }
 }
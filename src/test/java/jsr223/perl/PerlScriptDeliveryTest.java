@@ -0,0 +1,64 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.After;
+import org.junit.Test;
+
+
+public class PerlScriptDeliveryTest {
+
+    @After
+    public void clearConfiguration() {
+        System.clearProperty(PerlScriptDelivery.SCRIPT_DELIVERY_PROPERTY);
+        System.clearProperty(PerlScriptDelivery.ARGUMENT_MAX_LENGTH_PROPERTY);
+    }
+
+    @Test
+    public void testFileIsDefaultDelivery() {
+        assertThat(PerlScriptDelivery.forScript("print 1;", false), is(PerlScriptDelivery.FILE));
+    }
+
+    @Test
+    public void testStandardInputDeliveryFallsBackToFileWithReader() {
+        System.setProperty(PerlScriptDelivery.SCRIPT_DELIVERY_PROPERTY, "stdin");
+
+        assertThat(PerlScriptDelivery.forScript("print 1;", false), is(PerlScriptDelivery.STDIN));
+        assertThat(PerlScriptDelivery.forScript("print 1;", true), is(PerlScriptDelivery.FILE));
+    }
+
+    @Test
+    public void testArgumentDeliveryFallsBackToFileForLongScripts() {
+        System.setProperty(PerlScriptDelivery.SCRIPT_DELIVERY_PROPERTY, "argument");
+        System.setProperty(PerlScriptDelivery.ARGUMENT_MAX_LENGTH_PROPERTY, "10");
+
+        assertThat(PerlScriptDelivery.forScript("print 1;", true), is(PerlScriptDelivery.ARGUMENT));
+        assertThat(PerlScriptDelivery.forScript("print 'a longer script';", true), is(PerlScriptDelivery.FILE));
+    }
+}
@@ -105,4 +105,10 @@ public class PerlScriptEngineFactoryTest {
         assertThat(perlScriptEngineFactory.getLanguageName(),
                    is(perlScriptEngineFactory.PARAMETERS.get(ScriptEngine.LANGUAGE)));
     }
+
+    @Test
+    public void testThatPerlScriptEngineFactoryDeclaresMultithreadedEngines() {
+        assertThat(perlScriptEngineFactory.getParameter(PerlScriptEngineFactory.THREADING),
+                   is((Object) PerlScriptEngineFactory.MULTITHREADED));
+    }
 }
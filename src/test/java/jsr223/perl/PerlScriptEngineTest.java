@@ -0,0 +1,559 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Serializable;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.ow2.proactive.scheduler.common.SchedulerConstants;
+
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import jsr223.perl.batch.PerlBatchResult;
+import jsr223.perl.batch.PerlBatchScript;
+import jsr223.perl.bindings.PerlResultsReader;
+import jsr223.perl.limits.PerlResourceLimits;
+import jsr223.perl.limits.PerlResourceUsageReader;
+import jsr223.perl.metrics.PerlMetricsRegistry;
+import jsr223.perl.utils.PerlSyntaxChecker;
+import jsr223.perl.utils.PerlVersionGetter;
+import processbuilder.PerlProcessTreeTracking;
+import processbuilder.utils.PerlByteInput;
+import processbuilder.utils.PerlStreamSinks;
+
+
+public class PerlScriptEngineTest {
+
+    private final PerlScriptEngine perlScriptEngine = new PerlScriptEngine();
+
+    private final StringWriter output = new StringWriter();
+
+    private ScriptContext context;
+
+    @Before
+    public void createContext() {
+        String perlVersion = new PerlVersionGetter().getPerlVersion();
+        Assume.assumeTrue(!PerlVersionGetter.PERL_VERSION_IF_NOT_INSTALLED.equals(perlVersion));
+
+        context = new SimpleScriptContext();
+        context.setBindings(perlScriptEngine.createBindings(), ScriptContext.ENGINE_SCOPE);
+        context.setWriter(output);
+        context.setErrorWriter(new StringWriter());
+        context.setReader(null);
+        System.setProperty(PerlProcessEvaluation.TERMINATION_GRACE_PROPERTY, "500");
+    }
+
+    @After
+    public void clearProperties() {
+        System.clearProperty(PerlProcessEvaluation.TERMINATION_GRACE_PROPERTY);
+        System.clearProperty(PerlResourceUsageReader.USAGE_ENABLED_PROPERTY);
+        System.clearProperty(PerlResourceLimits.CPU_SECONDS_PROPERTY);
+        System.clearProperty(PerlProcessTreeTracking.TRACKING_PROPERTY);
+        System.clearProperty(PerlScriptDelivery.SCRIPT_DELIVERY_PROPERTY);
+        System.clearProperty(PerlResultsReader.RESULTS_ENABLED_PROPERTY);
+        System.clearProperty(PerlMetricsRegistry.VARIABLES_PROPERTY);
+        System.clearProperty(PerlSyntaxChecker.SYNTAX_CHECK_PROPERTY);
+    }
+
+    @Test
+    public void testEvalAsyncReturnsExitValueAfterOutput() throws Exception {
+        ListenableFuture<Object> evaluation = perlScriptEngine.evalAsync("print 'hello';", context);
+
+        assertThat(evaluation.get(10, TimeUnit.SECONDS), is((Object) 0));
+        assertThat(output.toString(), is("hello"));
+        assertThat(context.getBindings(ScriptContext.ENGINE_SCOPE).get(PerlScriptEngine.EXIT_VALUE_BINDING_NAME),
+                   is((Object) 0));
+    }
+
+    @Test
+    public void testEvalAsyncFailsOnNonZeroExitValue() throws Exception {
+        ListenableFuture<Object> evaluation = perlScriptEngine.evalAsync("exit 3;", context);
+
+        assertThat(failureOf(evaluation), instanceOf(ScriptException.class));
+        assertThat(context.getBindings(ScriptContext.ENGINE_SCOPE).get(PerlScriptEngine.EXIT_VALUE_BINDING_NAME),
+                   is((Object) 3));
+    }
+
+    @Test
+    public void testEvalAsyncTimeoutKillsProcessIgnoringTerm() throws Exception {
+        long start = System.currentTimeMillis();
+        ListenableFuture<Object> evaluation = perlScriptEngine.evalAsync("$SIG{TERM} = 'IGNORE'; sleep 30;",
+                                                                         context,
+                                                                         200,
+                                                                         TimeUnit.MILLISECONDS);
+
+        assertThat(failureOf(evaluation), instanceOf(TimeoutException.class));
+        assertThat(System.currentTimeMillis() - start, lessThan(5000L));
+    }
+
+    @Test
+    public void testEvalAsyncTimeoutCoversSyntaxCheck() throws Exception {
+        System.setProperty(PerlSyntaxChecker.SYNTAX_CHECK_PROPERTY, "true");
+        long start = System.currentTimeMillis();
+        ListenableFuture<Object> evaluation = perlScriptEngine.evalAsync("BEGIN { sleep 30 } print 1;",
+                                                                         context,
+                                                                         200,
+                                                                         TimeUnit.MILLISECONDS);
+
+        assertThat(System.currentTimeMillis() - start, lessThan(1000L));
+        assertThat(failureOf(evaluation), instanceOf(TimeoutException.class));
+        assertThat(System.currentTimeMillis() - start, lessThan(5000L));
+    }
+
+    @Test
+    public void testCallbackIsNotifiedOnCompletion() throws Exception {
+        final CountDownLatch completed = new CountDownLatch(1);
+        ListenableFuture<Object> evaluation = perlScriptEngine.evalAsync("print 1;", context);
+
+        Futures.addCallback(evaluation, new FutureCallback<Object>() {
+            @Override
+            public void onSuccess(Object result) {
+                completed.countDown();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+            }
+        }, MoreExecutors.directExecutor());
+
+        assertThat(completed.await(10, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void testCancelTerminatesProcess() throws Exception {
+        ListenableFuture<Object> evaluation = perlScriptEngine.evalAsync("print 'started'; sleep 30;", context);
+
+        assertThat(evaluation.cancel(true), is(true));
+        // A new evaluation is not held back by the cancelled one
+        assertThat(perlScriptEngine.evalAsync("exit 0;", context).get(10, TimeUnit.SECONDS), is((Object) 0));
+    }
+
+    @Test
+    public void testBatchReturnsResultsInOrder() throws Exception {
+        // Scripts end in random order
+        String script = "select(undef, undef, undef, rand(0.2)); print $ENV{index}; exit($ENV{index} % 2);";
+        List<PerlBatchScript> scripts = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Bindings bindings = perlScriptEngine.createBindings();
+            bindings.put("index", i);
+            scripts.add(new PerlBatchScript(script, bindings));
+        }
+
+        List<PerlBatchResult> results = perlScriptEngine.evalBatch(scripts, 4);
+
+        assertThat(results.size(), is(8));
+        for (int i = 0; i < 8; i++) {
+            PerlBatchResult result = results.get(i);
+            assertThat(result.getOutput(), is(String.valueOf(i)));
+            assertThat(result.getExitValue(), is(i % 2));
+            assertThat(result.isSuccessful(), is(i % 2 == 0));
+            Bindings bindings = result.getBindings();
+            assertThat(bindings.get(PerlScriptEngine.EXIT_VALUE_BINDING_NAME), is((Object) (i % 2)));
+        }
+        assertThat(results.get(1).getFailure(), instanceOf(ScriptException.class));
+    }
+
+    @Test
+    public void testBatchLeavesCallerBindingsUnchanged() throws Exception {
+        Bindings bindings = perlScriptEngine.createBindings();
+        bindings.put(PerlScriptEngine.EXIT_VALUE_BINDING_NAME, 42);
+        bindings.put("name", "batch");
+
+        List<PerlBatchScript> scripts = new ArrayList<>();
+        scripts.add(new PerlBatchScript("print $ENV{name};", bindings));
+
+        PerlBatchResult result = perlScriptEngine.evalBatch(scripts, 1).get(0);
+
+        assertThat(result.getOutput(), is("batch"));
+        assertThat(result.getBindings().get(PerlScriptEngine.EXIT_VALUE_BINDING_NAME), is((Object) 0));
+        assertThat(bindings.get(PerlScriptEngine.EXIT_VALUE_BINDING_NAME), is((Object) 42));
+        assertThat(bindings.size(), is(2));
+    }
+
+    @Test
+    public void testCompiledScriptIsEvaluatedManyTimes() throws Exception {
+        String script = "print \"compiled $ENV{name} \";";
+        PerlCompiledScript compiledScript = (PerlCompiledScript) perlScriptEngine.compile(script);
+        File scriptFile = compiledScript.getCachedScript().getFile();
+        perlScriptEngine.setContext(context);
+
+        for (String name : new String[] { "first", "second" }) {
+            Bindings bindings = perlScriptEngine.createBindings();
+            bindings.put("name", name);
+            assertThat(compiledScript.eval(bindings), is((Object) 0));
+        }
+        assertThat(scriptFile.isFile(), is(true));
+        compiledScript.close();
+
+        assertThat(output.toString(), is("compiled first compiled second "));
+        assertThat(scriptFile.exists(), is(false));
+    }
+
+    @Test
+    public void testFileOfCollectedCompiledScriptIsDeleted() throws Exception {
+        File scriptFile = ((PerlCompiledScript) perlScriptEngine.compile("print 'collected';")).getCachedScript()
+                                                                                              .getFile();
+
+        for (int i = 0; i < 100 && scriptFile.exists(); i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+
+        assertThat(scriptFile.exists(), is(false));
+    }
+
+    @Test(expected = ScriptException.class)
+    public void testClosedCompiledScriptIsNotEvaluated() throws Exception {
+        CompiledScript compiledScript = perlScriptEngine.compile("print 1;");
+        ((PerlCompiledScript) compiledScript).close();
+
+        compiledScript.eval(context);
+    }
+
+    @Test(expected = ScriptException.class)
+    public void testScriptNotCompilingIsRejected() throws Exception {
+        perlScriptEngine.compile("print 'unterminated;");
+    }
+
+    @Test
+    public void testResultsFileIsOnlyGivenWhenEnabled() throws Exception {
+        String script = "print exists $ENV{" + PerlResultsReader.RESULTS_FILE_VARIABLE + "} ? 'given ' : 'none ';";
+
+        perlScriptEngine.eval(script, context);
+        System.setProperty(PerlResultsReader.RESULTS_ENABLED_PROPERTY, "true");
+        perlScriptEngine.eval(script, context);
+
+        assertThat(output.toString(), is("none given "));
+    }
+
+    @Test
+    public void testScriptUsingHelperModulesIsCompiled() throws Exception {
+        System.setProperty(PerlResultsReader.RESULTS_ENABLED_PROPERTY, "true");
+        CompiledScript compiledScript = perlScriptEngine.compile("use JSR223::Perl::Results; " +
+                                                                 "JSR223::Perl::Results::set_result('compiled');");
+
+        compiledScript.eval(context);
+
+        assertThat(context.getBindings(ScriptContext.ENGINE_SCOPE).get(PerlResultsReader.RESULT_BINDING_NAME),
+                   is((Object) "compiled"));
+    }
+
+    @Test
+    public void testResourceUsageIsPublishedNextToExitValue() throws Exception {
+        System.setProperty(PerlResourceUsageReader.USAGE_ENABLED_PROPERTY, "true");
+
+        perlScriptEngine.eval("my $sum = 0; $sum += $_ for 1 .. 100000; print $sum;", context);
+
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        assertThat(output.toString(), is("5000050000"));
+        assertThat(bindings.get(PerlScriptEngine.EXIT_VALUE_BINDING_NAME), is((Object) 0));
+        assertThat(bindings.get(PerlResourceUsageReader.USAGE_BINDING_PREFIX + "CPU_USER_SECONDS"),
+                   instanceOf(Double.class));
+        assertThat(bindings.get(PerlResourceUsageReader.USAGE_BINDING_PREFIX + "CPU_SYSTEM_SECONDS"),
+                   instanceOf(Double.class));
+    }
+
+    @Test
+    public void testCpuLimitEndsScriptAndReportsUsage() throws Exception {
+        System.setProperty(PerlResourceUsageReader.USAGE_ENABLED_PROPERTY, "true");
+        System.setProperty(PerlResourceLimits.CPU_SECONDS_PROPERTY, "1");
+
+        try {
+            perlScriptEngine.eval("1 while 1;", context);
+            fail("The script must exceed its CPU time limit.");
+        } catch (ScriptException e) {
+            // Expected, the script dies on SIGXCPU
+        }
+
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        assertThat(bindings.get(PerlScriptEngine.EXIT_VALUE_BINDING_NAME), is(not((Object) 0)));
+        assertThat((Double) bindings.get(PerlResourceUsageReader.USAGE_BINDING_PREFIX + "CPU_USER_SECONDS") +
+                   (Double) bindings.get(PerlResourceUsageReader.USAGE_BINDING_PREFIX + "CPU_SYSTEM_SECONDS"),
+                   greaterThanOrEqualTo(0.9));
+    }
+
+    @Test
+    public void testChildrenLeftInProcessGroupAreKilled() throws Exception {
+        Assume.assumeTrue(new File("/usr/bin/setsid").exists() || new File("/bin/setsid").exists());
+        System.setProperty(PerlProcessTreeTracking.TRACKING_PROPERTY, "group");
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        bindings.put(SchedulerConstants.GENERIC_INFO_BINDING_NAME, new HashMap<String, String>());
+        bindings.put(SchedulerConstants.VARIABLES_BINDING_NAME, new HashMap<String, Serializable>());
+
+        perlScriptEngine.eval("if (my $pid = fork) { print $pid; exit 0 } close STDOUT; sleep 30;", context);
+
+        String childPid = output.toString();
+        boolean childAlive = true;
+        for (int i = 0; i < 100 && childAlive; i++) {
+            childAlive = new ProcessBuilder("kill", "-0", childPid).start().waitFor() == 0;
+            Thread.sleep(50);
+        }
+        assertThat(childAlive, is(false));
+    }
+
+    @Test
+    public void testReaderIsStreamedToScriptFile() throws Exception {
+        Object exitValue = perlScriptEngine.eval(new StringReader("print 'from reader';"), context);
+
+        assertThat(exitValue, is((Object) 0));
+        assertThat(output.toString(), is("from reader"));
+    }
+
+    @Test
+    public void testReaderIsStreamedToPerlStandardInput() throws Exception {
+        System.setProperty(PerlScriptDelivery.SCRIPT_DELIVERY_PROPERTY, "stdin");
+
+        perlScriptEngine.eval(new StringReader("print 'from standard input';"), context);
+
+        assertThat(output.toString(), is("from standard input"));
+    }
+
+    @Test(expected = ScriptException.class)
+    public void testReaderFailureIsReported() throws Exception {
+        perlScriptEngine.eval(new Reader() {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("Script not readable");
+            }
+
+            @Override
+            public void close() {
+            }
+        }, context);
+    }
+
+    @Test
+    public void testFileInputIsReadByPerl() throws Exception {
+        File inputFile = File.createTempFile("perl-input", ".bin");
+        try {
+            byte[] content = new byte[1 << 20];
+            for (int i = 0; i < content.length; i++) {
+                content[i] = (byte) i;
+            }
+            Files.write(content, inputFile);
+            context.setReader(PerlByteInput.fromFile(inputFile));
+
+            perlScriptEngine.eval("binmode STDIN; my $n = 0; $n += length while <STDIN>; print $n;", context);
+
+            assertThat(output.toString(), is(String.valueOf(content.length)));
+        } finally {
+            inputFile.delete();
+        }
+    }
+
+    @Test
+    public void testStreamInputIsCopiedToPerl() throws Exception {
+        byte[] content = new byte[] { (byte) 0xff, 0, (byte) 0x80, '\n' };
+        context.setReader(PerlByteInput.fromStream(new ByteArrayInputStream(content)));
+
+        perlScriptEngine.eval("binmode STDIN; local $/; print join ',', map { ord } split //, <STDIN>;", context);
+
+        assertThat(output.toString(), is("255,0,128,10"));
+    }
+
+    @Test
+    public void testOutputIsCopiedToByteSinkBinding() throws Exception {
+        ByteArrayOutputStream outputBytes = new ByteArrayOutputStream();
+        context.getBindings(ScriptContext.ENGINE_SCOPE).put(PerlStreamSinks.OUTPUT_STREAM_BINDING, outputBytes);
+
+        perlScriptEngine.eval("binmode STDOUT; print pack('C*', 255, 0, 233);", context);
+
+        assertThat(outputBytes.toByteArray(), is(new byte[] { (byte) 0xff, 0, (byte) 0xe9 }));
+        assertThat(output.toString(), is(""));
+    }
+
+    @Test
+    public void testOutputBytesAreCountedForEverySink() throws Exception {
+        Map<String, Serializable> variables = new HashMap<>();
+        context.getBindings(ScriptContext.ENGINE_SCOPE).put(SchedulerConstants.VARIABLES_BINDING_NAME, variables);
+        System.setProperty(PerlMetricsRegistry.VARIABLES_PROPERTY, "true");
+        String script = "binmode STDOUT; print pack('C*', 195, 169, 10); print STDERR 'e';";
+
+        perlScriptEngine.eval(script, context);
+        assertThat(variables.get("PERL_METRICS_STDOUT_BYTES"), is((Serializable) 3L));
+        assertThat(variables.get("PERL_METRICS_STDERR_BYTES"), is((Serializable) 1L));
+
+        context.getBindings(ScriptContext.ENGINE_SCOPE).put(PerlStreamSinks.OUTPUT_STREAM_BINDING,
+                                                            new ByteArrayOutputStream());
+        perlScriptEngine.eval(script, context);
+        assertThat(variables.get("PERL_METRICS_STDOUT_BYTES"), is((Serializable) 3L));
+
+        File outputFile = File.createTempFile("perl-output", ".bin");
+        try {
+            context.getBindings(ScriptContext.ENGINE_SCOPE).put(PerlStreamSinks.OUTPUT_STREAM_BINDING, outputFile);
+            perlScriptEngine.eval(script, context);
+            assertThat(variables.get("PERL_METRICS_STDOUT_BYTES"), is((Serializable) 3L));
+        } finally {
+            outputFile.delete();
+        }
+    }
+
+    @Test
+    public void testOutputIsRedirectedToFileSinkBinding() throws Exception {
+        File outputFile = File.createTempFile("perl-output", ".bin");
+        try {
+            context.getBindings(ScriptContext.ENGINE_SCOPE).put(PerlStreamSinks.OUTPUT_STREAM_BINDING, outputFile);
+
+            perlScriptEngine.eval("binmode STDOUT; print pack('C*', 255, 0, 233);", context);
+
+            assertThat(Files.toByteArray(outputFile), is(new byte[] { (byte) 0xff, 0, (byte) 0xe9 }));
+            assertThat(output.toString(), is(""));
+        } finally {
+            outputFile.delete();
+        }
+    }
+
+    @Test
+    public void testOutputIsDecodedWithCharsetBinding() throws Exception {
+        context.getBindings(ScriptContext.ENGINE_SCOPE).put(PerlStreamSinks.CHARSET_BINDING, "ISO-8859-1");
+
+        perlScriptEngine.eval("binmode STDOUT; print pack('C*', 99, 97, 102, 233);", context);
+
+        assertThat(output.toString(), is("caf\u00e9"));
+    }
+
+    @Test
+    public void testConcurrentEvaluationsDoNotShareState() throws Exception {
+        final String script = "select(undef, undef, undef, rand(0.05)); print \"$ENV{index} $ENV{name}\";";
+        final CompiledScript compiledScript = perlScriptEngine.compile(script);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Boolean>> evaluations = new ArrayList<>();
+            for (int i = 0; i < 128; i++) {
+                final int index = i;
+                evaluations.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        StringWriter evaluationOutput = new StringWriter();
+                        ScriptContext evaluationContext = new SimpleScriptContext();
+                        Bindings bindings = perlScriptEngine.createBindings();
+                        bindings.put("index", index);
+                        bindings.put("name", "task" + index);
+                        evaluationContext.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+                        evaluationContext.setWriter(evaluationOutput);
+                        evaluationContext.setErrorWriter(new StringWriter());
+                        evaluationContext.setReader(null);
+                        if (index % 2 == 0) {
+                            perlScriptEngine.eval(script, evaluationContext);
+                        } else {
+                            compiledScript.eval(evaluationContext);
+                        }
+                        return evaluationOutput.toString().equals(index + " task" + index) &&
+                               bindings.get(PerlScriptEngine.EXIT_VALUE_BINDING_NAME).equals(0);
+                    }
+                }));
+            }
+            for (Future<Boolean> evaluation : evaluations) {
+                assertThat(evaluation.get(60, TimeUnit.SECONDS), is(true));
+            }
+        } finally {
+            executor.shutdownNow();
+            ((PerlCompiledScript) compiledScript).close();
+        }
+    }
+
+    @Test
+    public void testConcurrentEvaluationsShareEngineBindings() throws Exception {
+        final Bindings bindings = perlScriptEngine.getBindings(ScriptContext.ENGINE_SCOPE);
+        for (int i = 0; i < 500; i++) {
+            bindings.put("binding" + i, "value" + i);
+        }
+        perlScriptEngine.getContext().setWriter(new StringWriter());
+        perlScriptEngine.getContext().setErrorWriter(new StringWriter());
+        perlScriptEngine.getContext().setReader(null);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Object>> evaluations = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                final int index = i;
+                evaluations.add(executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        // Written while other evaluations send the bindings to perl
+                        bindings.put("added" + index, index);
+                        return perlScriptEngine.eval("exit($ENV{binding499} eq 'value499' ? 0 : 1);");
+                    }
+                }));
+            }
+            for (Future<Object> evaluation : evaluations) {
+                assertThat(evaluation.get(60, TimeUnit.SECONDS), is((Object) 0));
+            }
+            assertThat(bindings.get(PerlScriptEngine.EXIT_VALUE_BINDING_NAME), is((Object) 0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Throwable failureOf(ListenableFuture<Object> evaluation) throws Exception {
+        try {
+            evaluation.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        throw new AssertionError("The evaluation did not fail.");
+    }
+
+}
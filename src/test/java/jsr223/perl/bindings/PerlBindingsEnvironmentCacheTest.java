@@ -0,0 +1,157 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.bindings;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+
+import org.junit.Test;
+
+
+public class PerlBindingsEnvironmentCacheTest {
+
+    private final PerlBindingsEnvironmentCache perlBindingsEnvironmentCache = new PerlBindingsEnvironmentCache(
+            new PerlStringBindingsAdder());
+
+    @Test
+    public void testUnchangedBindingsAreReused() {
+        Bindings bindings = new SimpleBindings();
+        Map<String, String> variables = new HashMap<>();
+        variables.put("PA_JOB_ID", "12");
+        bindings.put("variables", variables);
+
+        Map<String, String> firstEnvironment = addBindingsToEnvironment(bindings);
+        Map<String, String> secondEnvironment = addBindingsToEnvironment(bindings);
+
+        assertThat(secondEnvironment, hasEntry("variables_PA_JOB_ID", "12"));
+        assertThat(secondEnvironment.keySet().iterator().next(),
+                   is(sameInstance(firstEnvironment.keySet().iterator().next())));
+    }
+
+    @Test
+    public void testChangedBindingsAreFlattenedAgain() {
+        Bindings bindings = new SimpleBindings();
+        Map<String, String> variables = new HashMap<>();
+        variables.put("PA_JOB_ID", "12");
+        bindings.put("variables", variables);
+        String[] args = { "first" };
+        bindings.put("args", args);
+
+        Map<String, String> firstEnvironment = addBindingsToEnvironment(bindings);
+        variables.put("PA_JOB_ID", "13");
+        args[0] = "second";
+        Map<String, String> secondEnvironment = addBindingsToEnvironment(bindings);
+
+        assertThat(firstEnvironment, hasEntry("variables_PA_JOB_ID", "12"));
+        assertThat(secondEnvironment, hasEntry("variables_PA_JOB_ID", "13"));
+        assertThat(secondEnvironment, hasEntry("args_0", "second"));
+    }
+
+    @Test
+    public void testChangedNestedValuesAreFlattenedAgain() {
+        Bindings bindings = new SimpleBindings();
+        Map<String, Object> variables = new HashMap<>();
+        Map<String, String> nested = new HashMap<>();
+        nested.put("host", "first");
+        variables.put("nested", nested);
+        bindings.put("variables", variables);
+        List<Object> args = new ArrayList<>();
+        List<String> element = new ArrayList<>();
+        element.add("first");
+        args.add(element);
+        bindings.put("args", args);
+
+        addBindingsToEnvironment(bindings);
+        nested.put("host", "second");
+        element.set(0, "second");
+        Map<String, String> secondEnvironment = addBindingsToEnvironment(bindings);
+
+        assertThat(secondEnvironment, hasEntry("variables_nested", "{host=second}"));
+        assertThat(secondEnvironment, hasEntry("args_0", "[second]"));
+    }
+
+    @Test
+    public void testUnchangedNestedValuesAreReused() {
+        Bindings bindings = new SimpleBindings();
+        Map<String, Object> variables = new HashMap<>();
+        Map<String, String> nested = new HashMap<>();
+        nested.put("host", "first");
+        variables.put("nested", nested);
+        bindings.put("variables", variables);
+
+        Map<String, String> firstEnvironment = addBindingsToEnvironment(bindings);
+        Map<String, String> secondEnvironment = addBindingsToEnvironment(bindings);
+
+        assertThat(secondEnvironment, hasEntry("variables_nested", "{host=first}"));
+        assertThat(secondEnvironment.get("variables_nested"),
+                   is(sameInstance(firstEnvironment.get("variables_nested"))));
+    }
+
+    @Test
+    public void testObjectsAreFlattenedOnEveryEvaluation() {
+        Bindings bindings = new SimpleBindings();
+        StringBuilder value = new StringBuilder("first");
+        bindings.put("value", value);
+
+        Map<String, String> firstEnvironment = addBindingsToEnvironment(bindings);
+        value.append(" and second");
+        Map<String, String> secondEnvironment = addBindingsToEnvironment(bindings);
+
+        assertThat(secondEnvironment, hasEntry("value", "first and second"));
+        assertThat(secondEnvironment.get("value"), is(not(sameInstance(firstEnvironment.get("value")))));
+    }
+
+    @Test
+    public void testRemovedBindingsAreForgotten() {
+        Bindings bindings = new SimpleBindings();
+        bindings.put("first", "1");
+        bindings.put("second", "2");
+        addBindingsToEnvironment(bindings);
+
+        bindings.remove("second");
+        Map<String, String> environment = addBindingsToEnvironment(bindings);
+
+        assertThat(environment.containsKey("second"), is(false));
+        assertThat(perlBindingsEnvironmentCache.size(), is(1));
+    }
+
+    private Map<String, String> addBindingsToEnvironment(Bindings bindings) {
+        Map<String, String> environment = new HashMap<>();
+        perlBindingsEnvironmentCache.addBindingsToEnvironment(bindings, environment);
+        return environment;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.bindings;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.Collections;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+
+import org.junit.Test;
+
+
+public class PerlBindingsFilterTest {
+
+    @Test
+    public void testEverythingIsAcceptedByDefault() {
+        PerlBindingsFilter perlBindingsFilter = new PerlBindingsFilter("", "", true);
+        Bindings bindings = new SimpleBindings();
+        bindings.put("variables", Collections.emptyMap());
+        bindings.put("scheduler", new Object());
+
+        assertThat(perlBindingsFilter.filter(bindings), is(sameInstance(bindings)));
+    }
+
+    @Test
+    public void testExcludedNamesAndPrefixesAreRejected() {
+        PerlBindingsFilter perlBindingsFilter = new PerlBindingsFilter("", "localspace, cache*", true);
+
+        assertThat(perlBindingsFilter.accepts("localspace", "/tmp"), is(false));
+        assertThat(perlBindingsFilter.accepts("cachespace", "/tmp"), is(false));
+        assertThat(perlBindingsFilter.accepts("variables", Collections.emptyMap()), is(true));
+    }
+
+    @Test
+    public void testOnlyIncludedNamesAreAccepted() {
+        PerlBindingsFilter perlBindingsFilter = new PerlBindingsFilter("variables,generic*",
+                                                                   "genericInformationX",
+                                                                   true);
+
+        assertThat(perlBindingsFilter.accepts("variables", Collections.emptyMap()), is(true));
+        assertThat(perlBindingsFilter.accepts("genericInformation", Collections.emptyMap()), is(true));
+        assertThat(perlBindingsFilter.accepts("genericInformationX", Collections.emptyMap()), is(false));
+        assertThat(perlBindingsFilter.accepts("args", new String[0]), is(false));
+    }
+
+    @Test
+    public void testObjectsAreRejectedIfConfigured() {
+        PerlBindingsFilter perlBindingsFilter = new PerlBindingsFilter("", "", false);
+        Bindings bindings = new SimpleBindings();
+        bindings.put("name", "value");
+        bindings.put("count", 1);
+        bindings.put("args", new String[] { "a" });
+        bindings.put("scheduler", new Object());
+
+        Bindings filteredBindings = perlBindingsFilter.filter(bindings);
+
+        assertThat(filteredBindings.size(), is(3));
+        assertThat(filteredBindings.containsKey("scheduler"), is(false));
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.bindings;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+
+import org.junit.Test;
+
+
+public class PerlBindingsTest {
+
+    @Test
+    public void testSnapshotIsACopy() {
+        Bindings bindings = new PerlBindings();
+        bindings.put("name", "value");
+        bindings.put("nothing", null);
+
+        Bindings snapshot = PerlBindings.snapshot(bindings);
+        bindings.put("added", "later");
+
+        assertThat(snapshot, is(not(sameInstance(bindings))));
+        assertThat(snapshot.size(), is(2));
+        assertThat(snapshot.get("name"), is((Object) "value"));
+        assertThat(snapshot.containsKey("nothing"), is(true));
+    }
+
+    @Test
+    public void testOtherBindingsAreCopied() {
+        Bindings bindings = new SimpleBindings();
+        bindings.put("name", "value");
+
+        assertThat(PerlBindings.snapshot(bindings).get("name"), is((Object) "value"));
+        assertThat(PerlBindings.snapshot(null), is(nullValue()));
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.bindings;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+
+import jsr223.perl.PerlCommandCreator;
+import jsr223.perl.utils.PerlHelperModules;
+import jsr223.perl.utils.PerlVersionGetter;
+
+
+public class PerlJsonBindingsWriterTest {
+
+    private final PerlJsonBindingsWriter perlJsonBindingsWriter = new PerlJsonBindingsWriter();
+
+    private final PerlCommandCreator perlCommandCreator = new PerlCommandCreator();
+
+    @Test
+    public void testBindingsFileIsReadableByOwnerOnly() throws IOException {
+        File bindingsFile = perlJsonBindingsWriter.writeBindingsFile(new SimpleBindings());
+        try {
+            Assume.assumeTrue(bindingsFile.toPath().getFileSystem().supportedFileAttributeViews().contains("posix"));
+
+            assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(bindingsFile.toPath())),
+                       is("rw-------"));
+        } finally {
+            bindingsFile.delete();
+        }
+    }
+
+    @Test
+    public void testValuesKeepTheirType() throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("number", 42);
+        map.put("decimal", 1.5);
+        map.put("flag", true);
+        map.put("nothing", null);
+        map.put("list", Arrays.asList("a", 2));
+        map.put("array", new int[] { 1, 2 });
+
+        assertThat(toJson(map),
+                   is("{\"number\":42,\"decimal\":1.5,\"flag\":true,\"nothing\":null," +
+                      "\"list\":[\"a\",2],\"array\":[1,2]}"));
+    }
+
+    @Test
+    public void testStringsAreEscaped() throws IOException {
+        assertThat(toJson("quote \" backslash \\ newline \n control \u0001"),
+                   is("\"quote \\\" backslash \\\\ newline \\n control \\u0001\""));
+    }
+
+    @Test
+    public void testNonFiniteNumbersAndObjectsAreWrittenAsStrings() throws IOException {
+        assertThat(toJson(Arrays.asList(Double.NaN, new StringBuilder("text"))), is("[\"NaN\",\"text\"]"));
+    }
+
+    @Test
+    public void testBindingsFileIsDecodedByPerlModule() throws Exception {
+        String perlVersion = new PerlVersionGetter().getPerlVersion();
+        Assume.assumeTrue(!PerlVersionGetter.PERL_VERSION_IF_NOT_INSTALLED.equals(perlVersion));
+
+        Bindings bindings = new SimpleBindings();
+        Map<String, String> variables = new LinkedHashMap<>();
+        variables.put("PA_JOB_ID", "12");
+        bindings.put("variables", variables);
+        bindings.put("args", new String[] { "first", "second" });
+        File bindingsFile = perlJsonBindingsWriter.writeBindingsFile(bindings);
+        try {
+            String script = "use JSR223::Perl::Bindings; " +
+                            "print JSR223::Perl::Bindings::get('variables')->{PA_JOB_ID}, ' ', " +
+                            "JSR223::Perl::Bindings::get('args')->[1];";
+            ProcessBuilder processBuilder = new ProcessBuilder(perlCommandCreator.createPerlEvaluationCommand(script));
+            processBuilder.environment().put(PerlJsonBindingsWriter.BINDINGS_FILE_VARIABLE,
+                                             bindingsFile.getAbsolutePath());
+            PerlHelperModules.addToPerlLibraryPath(processBuilder.environment());
+            Process process = processBuilder.start();
+            String output = new String(ByteStreams.toByteArray(process.getInputStream()), Charsets.UTF_8);
+            process.waitFor(10, TimeUnit.SECONDS);
+
+            assertThat(output, is("12 second"));
+        } finally {
+            bindingsFile.delete();
+        }
+    }
+
+    private String toJson(Object value) throws IOException {
+        StringWriter json = new StringWriter();
+        perlJsonBindingsWriter.writeJson(value, json);
+        return json.toString();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.bindings;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.ow2.proactive.scheduler.common.SchedulerConstants;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import jsr223.perl.PerlCommandCreator;
+import jsr223.perl.utils.PerlHelperModules;
+import jsr223.perl.utils.PerlVersionGetter;
+
+
+public class PerlResultsReaderTest {
+
+    private final PerlResultsReader perlResultsReader = new PerlResultsReader();
+
+    private final PerlCommandCreator perlCommandCreator = new PerlCommandCreator();
+
+    private final Bindings bindings = new SimpleBindings();
+
+    private final Map<String, Serializable> variables = new HashMap<>();
+
+    @Before
+    public void addVariablesToBindings() {
+        bindings.put(SchedulerConstants.VARIABLES_BINDING_NAME, variables);
+    }
+
+    @Test
+    public void testVariablesAndResultAreMerged() throws IOException {
+        readResults("V 4 5\nNAMEfirst" + "V 4 6\nNAMEsecond" + "R 0 2\n42" + "V 5 0\nEMPTY");
+
+        assertThat(variables, hasEntry("NAME", (Serializable) "second"));
+        assertThat(variables, hasEntry("EMPTY", (Serializable) ""));
+        assertThat(bindings.get(PerlResultsReader.RESULT_BINDING_NAME), is((Object) "42"));
+    }
+
+    @Test
+    public void testLengthsAreInBytes() throws IOException {
+        readResults("V 8 12\nGREETING" + "héllo\nworld");
+
+        assertThat(variables, hasEntry("GREETING", (Serializable) "héllo\nworld"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedValueIsRejected() throws IOException {
+        readResults("V 4 10\nNAMEshort");
+    }
+
+    @Test(expected = IOException.class)
+    public void testMalformedHeaderIsRejected() throws IOException {
+        readResults("X 4\nNAME");
+    }
+
+    @Test
+    public void testMissingResultsFileIsIgnored() throws IOException {
+        File resultsFile = perlResultsReader.newResultsFile();
+        assertThat(resultsFile.delete(), is(true));
+
+        perlResultsReader.readResults(resultsFile, bindings);
+
+        assertThat(variables.isEmpty(), is(true));
+        assertThat(bindings.containsKey(PerlResultsReader.RESULT_BINDING_NAME), is(false));
+    }
+
+    @Test
+    public void testResultsFileIsReadableByOwnerOnly() throws IOException {
+        File resultsFile = perlResultsReader.newResultsFile();
+        try {
+            Assume.assumeTrue(resultsFile.toPath().getFileSystem().supportedFileAttributeViews().contains("posix"));
+
+            assertThat(PosixFilePermissions.toString(java.nio.file.Files.getPosixFilePermissions(resultsFile.toPath())),
+                       is("rw-------"));
+            perlResultsReader.readResults(resultsFile, bindings);
+            assertThat(variables.isEmpty(), is(true));
+        } finally {
+            resultsFile.delete();
+        }
+    }
+
+    @Test
+    public void testResultsAreSentByPerlModule() throws Exception {
+        String perlVersion = new PerlVersionGetter().getPerlVersion();
+        Assume.assumeTrue(!PerlVersionGetter.PERL_VERSION_IF_NOT_INSTALLED.equals(perlVersion));
+
+        File resultsFile = perlResultsReader.newResultsFile();
+        try {
+            String script = "use utf8; use JSR223::Perl::Results; " +
+                            "JSR223::Perl::Results::set_variable('GREETING', \"héllo\\n\"); " +
+                            "JSR223::Perl::Results::set_variable_from_file('SCRIPT', $0); " +
+                            "JSR223::Perl::Results::set_result(undef);";
+            File scriptFile = File.createTempFile("jsr223-perl-results-test-", ".pl");
+            scriptFile.deleteOnExit();
+            Files.write(script, scriptFile, Charsets.UTF_8);
+            ProcessBuilder processBuilder = new ProcessBuilder(perlCommandCreator.createPerlExecutionCommand(scriptFile));
+            processBuilder.environment().put(PerlResultsReader.RESULTS_FILE_VARIABLE, resultsFile.getAbsolutePath());
+            PerlHelperModules.addToPerlLibraryPath(processBuilder.environment());
+            Process process = processBuilder.inheritIO().start();
+            process.waitFor(10, TimeUnit.SECONDS);
+
+            perlResultsReader.readResults(resultsFile, bindings);
+
+            assertThat(variables, hasEntry("GREETING", (Serializable) "héllo\n"));
+            assertThat(variables, hasEntry("SCRIPT", (Serializable) script));
+            assertThat(bindings.get(PerlResultsReader.RESULT_BINDING_NAME), is((Object) ""));
+        } finally {
+            resultsFile.delete();
+        }
+    }
+
+    private void readResults(String records) throws IOException {
+        perlResultsReader.readResults(new ByteArrayInputStream(records.getBytes(Charsets.UTF_8)), bindings);
+    }
+}
@@ -116,4 +116,22 @@ public class PerlStringBindingsAdderTest {
 
         perlStringBindingsAdder.addBindingToStringMap(null, null);
     }
+
+    @Test
+    public void testAddScalarBindingsOnly() {
+        PerlStringBindingsAdder perlStringBindingsAdder = new PerlStringBindingsAdder();
+
+        Bindings bindings = new SimpleBindings();
+        Map<String, String> variables = new HashMap<>();
+        bindings.put("name", "EchoUbuntu");
+        bindings.put("count", 3);
+        bindings.put("long", "a value longer than the limit");
+        bindings.put("map", new HashMap<String, String>());
+
+        perlStringBindingsAdder.addScalarBindingsToStringMap(bindings, variables, 10);
+
+        assertThat(variables, hasEntry("name", "EchoUbuntu"));
+        assertThat(variables, hasEntry("count", "3"));
+        assertThat(variables.size(), is(2));
+    }
 }
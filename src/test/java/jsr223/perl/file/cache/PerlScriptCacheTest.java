@@ -0,0 +1,171 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.file.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class PerlScriptCacheTest {
+
+    private File cacheDirectory;
+
+    @Before
+    public void createCacheDirectory() throws IOException {
+        cacheDirectory = Files.createTempDirectory("jsr223-perl-cache-test").toFile();
+    }
+
+    @After
+    public void deleteCacheDirectory() {
+        File[] files = cacheDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        cacheDirectory.delete();
+    }
+
+    @Test
+    public void testIdenticalScriptsShareOneFile() throws IOException {
+        PerlScriptCache perlScriptCache = new PerlScriptCache(cacheDirectory, 10, 1024);
+
+        PerlScriptCache.CachedScript first = perlScriptCache.acquire("print 'Hello';");
+        PerlScriptCache.CachedScript second = perlScriptCache.acquire("print 'Hello';");
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(first.getFile().getName(), is(PerlScriptCache.hash("print 'Hello';") + ".pl"));
+        assertThat(new String(Files.readAllBytes(first.getFile().toPath())), is("print 'Hello';"));
+        assertThat(perlScriptCache.size(), is(1));
+    }
+
+    @Test
+    public void testAcquiredScriptIsAcquiredAgainOrRewritten() throws IOException {
+        PerlScriptCache perlScriptCache = new PerlScriptCache(cacheDirectory, 10, 1024);
+        PerlScriptCache.CachedScript first = perlScriptCache.acquire("print 1;");
+
+        assertThat(perlScriptCache.acquire(first, "print 1;"), is(sameInstance(first)));
+
+        assertThat(first.getFile().delete(), is(true));
+        PerlScriptCache.CachedScript rewritten = perlScriptCache.acquire(first, "print 1;");
+        assertThat(rewritten.getFile().isFile(), is(true));
+    }
+
+    @Test
+    public void testScriptDeletedWhenReleasedIsKeptWhileAcquired() throws IOException {
+        PerlScriptCache perlScriptCache = new PerlScriptCache(cacheDirectory, 10, 1024);
+        PerlScriptCache.CachedScript first = perlScriptCache.acquire("print 1;");
+        PerlScriptCache.CachedScript second = perlScriptCache.acquire(first, "print 1;");
+        perlScriptCache.deleteWhenReleased(first);
+
+        perlScriptCache.release(first);
+        assertThat(second.getFile().isFile(), is(true));
+
+        perlScriptCache.release(second);
+        assertThat(second.getFile().exists(), is(false));
+        assertThat(perlScriptCache.size(), is(0));
+    }
+
+    @Test
+    public void testScriptFileIsReusedByAnotherCache() throws IOException {
+        PerlScriptCache.CachedScript first = new PerlScriptCache(cacheDirectory, 10, 1024).acquire("print 1;");
+        long lastModified = first.getFile().lastModified();
+
+        PerlScriptCache.CachedScript second = new PerlScriptCache(cacheDirectory, 10, 1024).acquire("print 1;");
+
+        assertThat(second.getFile(), is(first.getFile()));
+        assertThat(second.getFile().lastModified(), is(lastModified));
+    }
+
+    @Test
+    public void testPlantedFileWithSameLengthIsRewritten() throws IOException {
+        File scriptFile = new File(cacheDirectory, PerlScriptCache.hash("print 1;") + ".pl");
+        Files.write(scriptFile.toPath(), "print 2;".getBytes());
+
+        PerlScriptCache.CachedScript cachedScript = new PerlScriptCache(cacheDirectory, 10, 1024).acquire("print 1;");
+
+        assertThat(cachedScript.getFile(), is(scriptFile));
+        assertThat(new String(Files.readAllBytes(scriptFile.toPath())), is("print 1;"));
+    }
+
+    @Test
+    public void testCacheDirectoryIsCreatedForOwnerOnly() throws IOException {
+        Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        File directory = new File(cacheDirectory, "cache");
+
+        PerlScriptCache.CachedScript cachedScript = new PerlScriptCache(directory, 10, 1024).acquire("print 1;");
+
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(directory.toPath())),
+                   is("rwx------"));
+        assertThat(cachedScript.getFile().delete(), is(true));
+        assertThat(directory.delete(), is(true));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedReleasedScriptIsEvicted() throws IOException {
+        PerlScriptCache perlScriptCache = new PerlScriptCache(cacheDirectory, 2, 1024);
+
+        PerlScriptCache.CachedScript first = perlScriptCache.acquire("print 1;");
+        PerlScriptCache.CachedScript second = perlScriptCache.acquire("print 2;");
+        perlScriptCache.release(first);
+        perlScriptCache.release(second);
+        PerlScriptCache.CachedScript third = perlScriptCache.acquire("print 3;");
+
+        assertThat(perlScriptCache.size(), is(2));
+        assertThat(first.getFile().exists(), is(false));
+        assertThat(second.getFile().exists(), is(true));
+        assertThat(third.getFile().exists(), is(true));
+    }
+
+    @Test
+    public void testAcquiredScriptIsNotEvicted() throws IOException {
+        PerlScriptCache perlScriptCache = new PerlScriptCache(cacheDirectory, 10, 10);
+
+        PerlScriptCache.CachedScript first = perlScriptCache.acquire("print 'first';");
+        PerlScriptCache.CachedScript second = perlScriptCache.acquire("print 'second';");
+
+        assertThat(first.getFile().exists(), is(true));
+        assertThat(second.getFile().exists(), is(true));
+
+        perlScriptCache.release(first);
+
+        assertThat(first.getFile().exists(), is(false));
+        assertThat(second.getFile(), is(not(first.getFile())));
+    }
+}
@@ -30,6 +30,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 
@@ -65,4 +66,18 @@ public class PerlScriptFileWriterTest {
         assertThat(new File(fileOnDisk.getAbsolutePath()).exists(), is(true));
         assertThat(Files.readAllBytes(Paths.get(fileOnDisk.getAbsolutePath())), is(fileContent.getBytes()));
     }
+
+    @Test
+    public void testReaderIsStreamedToDisk() throws IOException {
+        PerlScriptFileWriter perlScriptFileWriter = new PerlScriptFileWriter();
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            content.append("print ").append(i).append(";\n");
+        }
+
+        File fileOnDisk = perlScriptFileWriter.forceFileToDisk(new StringReader(content.toString()));
+        fileOnDisk.deleteOnExit();
+
+        assertThat(new String(Files.readAllBytes(fileOnDisk.toPath())), is(content.toString()));
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.limits;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+
+
+public class PerlResourceLimitsTest {
+
+    @Test
+    public void testNoLimitIsDisabled() {
+        PerlResourceLimits limits = new PerlResourceLimits(0, 0, 0);
+
+        assertThat(limits.isEnabled(), is(false));
+        assertThat(limits.toUlimitCommands(), is(""));
+    }
+
+    @Test
+    public void testEveryLimitIsApplied() {
+        PerlResourceLimits limits = new PerlResourceLimits(10, 1048576, 64);
+
+        assertThat(limits.isEnabled(), is(true));
+        assertThat(limits.toUlimitCommands(),
+                   is("ulimit -S -t 10 && ulimit -H -t 11 && ulimit -v 1048576 && ulimit -n 64"));
+    }
+
+    @Test
+    public void testOnlyConfiguredLimitsAreApplied() {
+        assertThat(new PerlResourceLimits(0, 0, 64).toUlimitCommands(), is("ulimit -n 64"));
+    }
+}
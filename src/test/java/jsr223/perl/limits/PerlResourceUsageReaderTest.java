@@ -0,0 +1,108 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.limits;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.ow2.proactive.scheduler.common.SchedulerConstants;
+
+
+public class PerlResourceUsageReaderTest {
+
+    private final PerlResourceUsageReader reader = new PerlResourceUsageReader();
+
+    private File usageFile;
+
+    @Before
+    public void createUsageFile() throws IOException {
+        usageFile = reader.newUsageFile();
+    }
+
+    @After
+    public void deleteUsageFile() {
+        usageFile.delete();
+    }
+
+    @Test
+    public void testUsageFileIsReadableByOwnerOnly() throws Exception {
+        Assume.assumeTrue(usageFile.toPath().getFileSystem().supportedFileAttributeViews().contains("posix"));
+
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(usageFile.toPath())),
+                   is("rw-------"));
+    }
+
+    @Test
+    public void testUsageIsPublishedInBindingsAndVariables() throws Exception {
+        String usage = "CPU_SYSTEM_SECONDS=0.25\nCPU_USER_SECONDS=1.5\nMAX_RSS_KB=5120\nWRITE_BYTES=4096\n";
+        Files.write(usageFile.toPath(), usage.getBytes(StandardCharsets.UTF_8));
+        Map<String, Serializable> variables = new HashMap<>();
+        Bindings bindings = new SimpleBindings();
+        bindings.put(SchedulerConstants.VARIABLES_BINDING_NAME, variables);
+
+        reader.readUsage(usageFile, bindings);
+
+        assertThat(bindings.get("PERL_USAGE_CPU_USER_SECONDS"), is((Object) 1.5));
+        assertThat(bindings.get("PERL_USAGE_CPU_SYSTEM_SECONDS"), is((Object) 0.25));
+        assertThat(bindings.get("PERL_USAGE_MAX_RSS_KB"), is((Object) 5120L));
+        assertThat(variables.get("PERL_USAGE_WRITE_BYTES"), is((Serializable) 4096L));
+    }
+
+    @Test
+    public void testMalformedValuesAreIgnored() throws Exception {
+        Files.write(usageFile.toPath(), "MAX_RSS_KB=unknown\nnot a value\n".getBytes(StandardCharsets.UTF_8));
+        Bindings bindings = new SimpleBindings();
+
+        assertThat(reader.readUsage(usageFile, bindings).isEmpty(), is(true));
+        assertThat(bindings.get("PERL_USAGE_MAX_RSS_KB"), is(nullValue()));
+    }
+
+    @Test
+    public void testMissingFileIsIgnored() throws Exception {
+        assertThat(usageFile.delete(), is(true));
+        Bindings bindings = new SimpleBindings();
+
+        assertThat(reader.readUsage(usageFile, bindings).isEmpty(), is(true));
+        assertThat(bindings.isEmpty(), is(true));
+    }
+}
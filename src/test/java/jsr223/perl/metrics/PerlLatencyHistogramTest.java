@@ -0,0 +1,77 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.metrics;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+
+public class PerlLatencyHistogramTest {
+
+    @Test
+    public void testPercentilesOfRecordedDurations() {
+        PerlLatencyHistogram histogram = new PerlLatencyHistogram(1000);
+        for (int i = 100; i >= 1; i--) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertThat(histogram.getPercentileMillis(50), is(50.0));
+        assertThat(histogram.getPercentileMillis(99), is(99.0));
+        assertThat(histogram.getPercentileMillis(100), is(100.0));
+    }
+
+    @Test
+    public void testOnlyMostRecentDurationsAreKept() {
+        PerlLatencyHistogram histogram = new PerlLatencyHistogram(2);
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(100));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(2));
+
+        assertThat(histogram.getSampleCount(), is(2));
+        assertThat(histogram.getPercentileMillis(100), is(2.0));
+    }
+
+    @Test
+    public void testNotPositiveSizeKeepsOneDuration() {
+        PerlLatencyHistogram histogram = new PerlLatencyHistogram(0);
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(2));
+
+        assertThat(histogram.getSampleCount(), is(1));
+        assertThat(histogram.getPercentileMillis(50), is(2.0));
+    }
+
+    @Test
+    public void testEmptyHistogram() {
+        PerlLatencyHistogram histogram = new PerlLatencyHistogram(10);
+
+        assertThat(histogram.getPercentileMillis(99), is(0.0));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.metrics;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+
+
+public class PerlMetricsRegistryTest {
+
+    private final PerlMetricsRegistry registry = new PerlMetricsRegistry(100);
+
+    @After
+    public void clearProperties() {
+        System.clearProperty(PerlMetricsRegistry.VARIABLES_PROPERTY);
+    }
+
+    @Test
+    public void testOutcomesAreCounted() {
+        registry.record(metricsWithExitValue(0), null);
+        registry.record(metricsWithExitValue(2), null);
+        registry.record(new PerlEvaluationMetrics(), null);
+        PerlEvaluationMetrics timedOut = new PerlEvaluationMetrics();
+        timedOut.setTimedOut(true);
+        registry.record(timedOut, null);
+
+        assertThat(registry.getEvaluationCount(), is(4L));
+        assertThat(registry.getNonZeroExitCount(), is(1L));
+        assertThat(registry.getFailureCount(), is(1L));
+        assertThat(registry.getTimeoutCount(), is(1L));
+    }
+
+    @Test
+    public void testOutputAndEnvironmentSizesAreRecorded() throws IOException {
+        PerlEvaluationMetrics metrics = metricsWithExitValue(0);
+        // Bytes are counted, not characters
+        InputStream output = metrics.countOutput(new ByteArrayInputStream("h\u00e9llo".getBytes(Charsets.UTF_8)));
+        ByteStreams.exhaust(output);
+        metrics.addOutputBytes(1);
+        Map<String, String> environment = new HashMap<>();
+        environment.put("KEY", "value");
+        metrics.setEnvironment(environment);
+
+        registry.record(metrics, null);
+
+        assertThat(registry.getStandardOutputBytes(), is(7L));
+        assertThat(registry.getStandardErrorBytes(), is(0L));
+        assertThat(registry.getLastEnvironmentSize(), is(10L));
+        assertThat(registry.getMaximumEnvironmentSize(), is(10L));
+    }
+
+    @Test
+    public void testPeakOfRunningProcesses() {
+        registry.processStarted();
+        registry.processStarted();
+        registry.processEnded();
+
+        assertThat(registry.getRunningProcessCount(), is(1));
+        assertThat(registry.getPeakRunningProcessCount(), is(2));
+    }
+
+    @Test
+    public void testPhasesAreRecorded() {
+        PerlEvaluationMetrics metrics = metricsWithExitValue(0);
+        metrics.mark(PerlPhase.ENVIRONMENT);
+
+        registry.record(metrics, null);
+
+        assertThat(registry.getPhaseP50Millis().containsKey(PerlPhase.ENVIRONMENT.name()), is(true));
+        assertThat(registry.getPhaseP99Millis().get(PerlPhase.EXECUTION.name()), is(0.0));
+    }
+
+    @Test
+    public void testMetricsAreAddedToVariablesOnRequest() {
+        Map<String, Serializable> variables = new HashMap<>();
+        PerlEvaluationMetrics metrics = metricsWithExitValue(0);
+        metrics.mark(PerlPhase.EXECUTION);
+
+        registry.record(metrics, variables);
+        assertThat(variables.isEmpty(), is(true));
+
+        System.setProperty(PerlMetricsRegistry.VARIABLES_PROPERTY, "true");
+        registry.record(metrics, variables);
+        assertThat(variables.containsKey("PERL_METRICS_EXECUTION_MS"), is(true));
+        assertThat(variables.containsKey("PERL_METRICS_TOTAL_MS"), is(true));
+        assertThat(variables.get("PERL_METRICS_STDOUT_BYTES"), is((Serializable) 0L));
+        assertThat(variables.containsKey("PERL_METRICS_PROCESS_START_MS"), is(false));
+    }
+
+    @Test
+    public void testRegistryIsRegisteredAsMBean() throws Exception {
+        PerlMetricsRegistry.getInstance();
+
+        assertThat(ManagementFactory.getPlatformMBeanServer()
+                                    .isRegistered(new ObjectName(PerlMetricsRegistry.OBJECT_NAME)),
+                   is(true));
+    }
+
+    private static PerlEvaluationMetrics metricsWithExitValue(int exitValue) {
+        PerlEvaluationMetrics metrics = new PerlEvaluationMetrics();
+        metrics.setExitValue(exitValue);
+        return metrics;
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.pool;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import jsr223.perl.metrics.PerlEvaluationMetrics;
+import jsr223.perl.utils.PerlVersionGetter;
+import processbuilder.PerlSingletonPerlProcessBuilderFactory;
+
+
+public class PerlWorkerPoolTest {
+
+    private PerlWorkerPool perlWorkerPool;
+
+    @Before
+    public void createPool() {
+        Assume.assumeTrue(!PerlVersionGetter.PERL_VERSION_IF_NOT_INSTALLED.equals(new PerlVersionGetter().getPerlVersion()));
+        perlWorkerPool = new PerlWorkerPool(PerlSingletonPerlProcessBuilderFactory.getInstance(),
+                                            2,
+                                            0,
+                                            3,
+                                            10,
+                                            60000,
+                                            60000);
+    }
+
+    @After
+    public void shutdownPool() {
+        if (perlWorkerPool != null) {
+            perlWorkerPool.shutdown();
+        }
+    }
+
+    @Test
+    public void testScriptOutputAndEnvironmentAreCaptured() throws Exception {
+        StringWriter output = new StringWriter();
+        StringWriter error = new StringWriter();
+        Map<String, String> environment = new HashMap<>();
+        environment.put("name", "EchoUbuntu");
+
+        int exitValue = perlWorkerPool.execute("print \"Hello $ENV{name}\"; print STDERR 'warning';",
+                                               null,
+                                               environment,
+                                               output,
+                                               error);
+
+        assertThat(exitValue, is(0));
+        assertThat(output.toString(), is("Hello EchoUbuntu"));
+        assertThat(error.toString(), is("warning"));
+    }
+
+    @Test
+    public void testExitValueIsReturnedWithoutStoppingWorker() throws Exception {
+        assertThat(execute("exit 3;"), is(3));
+        assertThat(execute("die 'failure';"), is(255));
+        assertThat(perlWorkerPool.getIdleWorkerCount(), is(1));
+    }
+
+    @Test
+    public void testScriptsAreIsolated() throws Exception {
+        Map<String, String> environment = Collections.singletonMap("leaked", "value");
+        perlWorkerPool.execute("our $counter = 41; sub helper { 1 }", null, environment, null, null);
+
+        StringWriter output = new StringWriter();
+        perlWorkerPool.execute("print defined($counter) || defined(&helper) || exists($ENV{leaked}) ? 'leaked' : 'isolated';",
+                               null,
+                               Collections.<String, String> emptyMap(),
+                               output,
+                               null);
+
+        assertThat(output.toString(), is("isolated"));
+    }
+
+    @Test
+    public void testForkedScriptsShareModulesLoadedByWorker() throws Exception {
+        perlWorkerPool.shutdown();
+        perlWorkerPool = new PerlWorkerPool(PerlSingletonPerlProcessBuilderFactory.getInstance(),
+                                            1,
+                                            0,
+                                            10,
+                                            10,
+                                            60000,
+                                            60000,
+                                            PerlWorkerPool.DEFAULT_PING_TIMEOUT_MILLIS,
+                                            true,
+                                            Collections.singletonList("List::Util"));
+        // Variables of the main package are kept by the worker, unless the script runs in a child
+        String script = "print exists($INC{'List/Util.pm'}) + exists($INC{'Text/Wrap.pm'});" +
+                        "print ' leaked' if $main::changed; $main::changed = 1; exit 3;";
+        Map<String, String> environment = Collections.singletonMap(PerlWorkerPool.PRELOAD_VARIABLE, "Text::Wrap");
+
+        for (int i = 0; i < 2; i++) {
+            StringWriter output = new StringWriter();
+            int exitValue = perlWorkerPool.execute(script, null, environment, output, null);
+
+            assertThat(output.toString(), is("2"));
+            assertThat(exitValue, is(3));
+        }
+    }
+
+    @Test
+    public void testForkedScriptIsKilledWithDestroyedWorker() throws Exception {
+        perlWorkerPool.shutdown();
+        perlWorkerPool = new PerlWorkerPool(PerlSingletonPerlProcessBuilderFactory.getInstance(),
+                                            1,
+                                            0,
+                                            10,
+                                            10,
+                                            60000,
+                                            60000,
+                                            PerlWorkerPool.DEFAULT_PING_TIMEOUT_MILLIS,
+                                            true,
+                                            Collections.<String> emptyList());
+        final File marker = new File(Files.createTempDir(), "marker");
+        final Map<String, String> environment = Collections.singletonMap("marker", marker.getPath());
+        Thread execution = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    perlWorkerPool.execute("sleep 2; open(my $marker, '>', $ENV{marker}); close $marker;",
+                                           null,
+                                           environment,
+                                           null,
+                                           null);
+                } catch (IOException | InterruptedException e) {
+                    // Expected, the execution is interrupted
+                }
+            }
+        });
+        execution.start();
+        Thread.sleep(500);
+
+        // The interrupted execution destroys its worker
+        execution.interrupt();
+        execution.join(10000);
+        Thread.sleep(3000);
+
+        assertThat(marker.exists(), is(false));
+        marker.getParentFile().delete();
+    }
+
+    @Test
+    public void testWorkerIsRecycledAfterMaximumExecutions() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            execute("print $$;");
+        }
+
+        assertThat(perlWorkerPool.getIdleWorkerCount(), is(0));
+    }
+
+    @Test
+    public void testCrashedWorkerIsReplaced() throws Exception {
+        try {
+            execute("kill 'KILL', $$;");
+        } catch (IOException e) {
+            // Expected, the worker died while executing the script
+        }
+
+        assertThat(execute("exit 0;"), is(0));
+    }
+
+    @Test
+    public void testHungWorkerIsKilledByHealthCheck() throws Exception {
+        perlWorkerPool.shutdown();
+        perlWorkerPool = new PerlWorkerPool(PerlSingletonPerlProcessBuilderFactory.getInstance(),
+                                            1,
+                                            0,
+                                            10,
+                                            10,
+                                            60000,
+                                            100,
+                                            200,
+                                            false,
+                                            Collections.<String> emptyList());
+        StringWriter output = new StringWriter();
+        perlWorkerPool.execute("print $$;", null, Collections.<String, String> emptyMap(), output, null);
+        String workerPid = output.toString();
+        try {
+            // A stopped worker never answers to ping
+            signal("STOP", workerPid);
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (isProcessAlive(workerPid) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+
+            assertThat(isProcessAlive(workerPid), is(false));
+            assertThat(execute("exit 3;"), is(3));
+        } finally {
+            signal("KILL", workerPid);
+        }
+    }
+
+    @Test
+    public void testBusyWorkersCountTowardsPoolSize() throws Exception {
+        perlWorkerPool.shutdown();
+        perlWorkerPool = new PerlWorkerPool(PerlSingletonPerlProcessBuilderFactory.getInstance(),
+                                            1,
+                                            1,
+                                            10,
+                                            10,
+                                            60000,
+                                            100);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> busy = executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return execute("sleep 1;");
+                }
+            });
+            Thread.sleep(500);
+
+            // The only worker allowed is busy, the maintenance does not start an idle one
+            assertThat(perlWorkerPool.getIdleWorkerCount(), is(0));
+            assertThat(busy.get(10, TimeUnit.SECONDS), is(0));
+            assertThat(perlWorkerPool.getIdleWorkerCount(), is(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSignalHandlersAndAlarmDoNotOutliveTask() throws Exception {
+        StringWriter output = new StringWriter();
+        StringWriter error = new StringWriter();
+        perlWorkerPool.execute("$SIG{ALRM} = sub { print STDERR 'leaked' }; alarm 1;",
+                               null,
+                               Collections.<String, String> emptyMap(),
+                               output,
+                               error);
+
+        perlWorkerPool.execute("select(undef, undef, undef, 1.5); print 'second';",
+                               null,
+                               Collections.<String, String> emptyMap(),
+                               output,
+                               error);
+
+        assertThat(output.toString(), is("second"));
+        assertThat(error.toString(), is(""));
+    }
+
+    @Test
+    public void testCaptureDirectoryIsRemovedWithDestroyedWorker() throws Exception {
+        Assume.assumeTrue(System.getProperty("os.name").toLowerCase().startsWith("lin"));
+        perlWorkerPool.shutdown();
+        perlWorkerPool = new PerlWorkerPool(PerlSingletonPerlProcessBuilderFactory.getInstance(),
+                                            1,
+                                            0,
+                                            1,
+                                            10,
+                                            60000,
+                                            60000);
+        StringWriter output = new StringWriter();
+
+        // The worker is recycled after this script, its standard output is a file of the capture directory
+        perlWorkerPool.execute("print readlink(\"/proc/$$/fd/1\");",
+                               null,
+                               Collections.<String, String> emptyMap(),
+                               output,
+                               null);
+        File captureDirectory = new File(output.toString()).getParentFile();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (captureDirectory.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+
+        assertThat(captureDirectory.getName().startsWith("jsr223-perl-worker-"), is(true));
+        assertThat(captureDirectory.exists(), is(false));
+    }
+
+    @Test
+    public void testOutputBytesAreAddedToMetrics() throws Exception {
+        PerlEvaluationMetrics metrics = new PerlEvaluationMetrics();
+        StringWriter output = new StringWriter();
+
+        perlWorkerPool.execute("binmode STDOUT; print pack('C*', 195, 169); print STDERR 'e';",
+                               null,
+                               Collections.<String, String> emptyMap(),
+                               output,
+                               null,
+                               metrics);
+
+        assertThat(metrics.getOutputBytes(), is(2L));
+        assertThat(metrics.getErrorBytes(), is(1L));
+    }
+
+    @Test
+    public void testCompiledScriptIsReusedForSameHash() throws Exception {
+        String script = "print $ENV{run}; BEGIN { print 'compiled ' }";
+        Map<String, String> environment = new HashMap<>();
+        StringWriter output = new StringWriter();
+
+        environment.put("run", "first ");
+        perlWorkerPool.execute(script, "hash", environment, output, null);
+        environment.put("run", "second");
+        perlWorkerPool.execute(script, "hash", environment, output, null);
+
+        assertThat(output.toString(), is("compiled first second"));
+    }
+
+    private static void signal(String signal, String pid) throws Exception {
+        new ProcessBuilder("perl", "-e", "kill $ARGV[0], $ARGV[1]", signal, pid).start().waitFor();
+    }
+
+    private static boolean isProcessAlive(String pid) throws Exception {
+        return new ProcessBuilder("perl", "-e", "exit(kill(0, $ARGV[0]) ? 0 : 1)", pid).start().waitFor() == 0;
+    }
+
+    private int execute(String script) throws Exception {
+        return perlWorkerPool.execute(script, null, Collections.<String, String> emptyMap(), null, null);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+
+public class PerlPropertyLoaderTest {
+
+    private final PerlPropertyLoader perlPropertyLoader = PerlPropertyLoader.getInstance();
+
+    @Test
+    public void testPropertyIsReadFromConfigurationFile() {
+        assertThat(perlPropertyLoader.getProperty("perl.sudo.command", null), is("test-sudo"));
+        assertThat(perlPropertyLoader.getBooleanProperty("perl.use.sudo", false), is(true));
+    }
+
+    @Test
+    public void testMissingPropertyReturnsDefaultValue() {
+        assertThat(perlPropertyLoader.getProperty("perl.not.configured", "default"), is("default"));
+        assertThat(perlPropertyLoader.getIntProperty("perl.not.configured", 42), is(42));
+    }
+
+    @Test
+    public void testSystemPropertyOverridesConfigurationFile() {
+        System.setProperty("perl.sudo.command", "overridden-sudo");
+        try {
+            assertThat(perlPropertyLoader.getProperty("perl.sudo.command", null), is("overridden-sudo"));
+        } finally {
+            System.clearProperty("perl.sudo.command");
+        }
+    }
+
+    @Test
+    public void testInvalidNumberReturnsDefaultValue() {
+        System.setProperty("perl.test.number", "not-a-number");
+        try {
+            assertThat(perlPropertyLoader.getLongProperty("perl.test.number", 7L), is(7L));
+        } finally {
+            System.clearProperty("perl.test.number");
+        }
+    }
+
+    @Test
+    public void testEnumPropertyIsCaseInsensitive() {
+        System.setProperty("perl.test.unit", "minutes");
+        try {
+            assertThat(perlPropertyLoader.getEnumProperty("perl.test.unit", TimeUnit.SECONDS), is(TimeUnit.MINUTES));
+        } finally {
+            System.clearProperty("perl.test.unit");
+        }
+    }
+
+    @Test
+    public void testUnknownEnumPropertyReturnsDefaultValue() {
+        System.setProperty("perl.test.unit", "fortnights");
+        try {
+            assertThat(perlPropertyLoader.getEnumProperty("perl.test.unit", TimeUnit.SECONDS), is(TimeUnit.SECONDS));
+        } finally {
+            System.clearProperty("perl.test.unit");
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import javax.script.ScriptException;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import processbuilder.PerlProcessBuilderFactory;
+import processbuilder.PerlSingletonPerlProcessBuilderFactory;
+
+
+public class PerlSyntaxCheckerTest {
+
+    private final CountingFactory factory = new CountingFactory();
+
+    private final PerlSyntaxChecker perlSyntaxChecker = new PerlSyntaxChecker(factory, 2, 10000);
+
+    @Before
+    public void assumePerlIsInstalled() {
+        Assume.assumeTrue(!PerlVersionGetter.PERL_VERSION_IF_NOT_INSTALLED.equals(new PerlVersionGetter().getPerlVersion()));
+    }
+
+    @Test
+    public void testValidScriptIsCheckedOnce() throws ScriptException {
+        perlSyntaxChecker.checkSyntax("print 'checked';");
+        perlSyntaxChecker.checkSyntax("print 'checked';");
+
+        assertThat(factory.processCount, is(1));
+        assertThat(perlSyntaxChecker.size(), is(1));
+    }
+
+    @Test
+    public void testScriptUsingHelperModulesCompiles() throws ScriptException {
+        perlSyntaxChecker.checkSyntax("use JSR223::Perl::Results; use JSR223::Perl::Bindings; print 1;");
+
+        assertThat(perlSyntaxChecker.size(), is(1));
+    }
+
+    @Test
+    public void testMissingModuleIsReportedButNotKept() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                perlSyntaxChecker.checkSyntax("use JSR223::Perl::NoSuchModule; print 1;");
+                throw new AssertionError("The script must not compile.");
+            } catch (ScriptException e) {
+                assertThat(e.getMessage(), containsString("Can't locate"));
+            }
+        }
+        assertThat(factory.processCount, is(2));
+        assertThat(perlSyntaxChecker.size(), is(0));
+    }
+
+    @Test
+    public void testInvalidScriptFailsWithLineNumber() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                perlSyntaxChecker.checkSyntax("print 1;\nprint 'unterminated;\n");
+                throw new AssertionError("The script must not compile.");
+            } catch (ScriptException e) {
+                assertThat(e.getMessage(), containsString("does not compile"));
+                assertThat(e.getLineNumber(), is(2));
+            }
+        }
+        assertThat(factory.processCount, is(1));
+    }
+
+    @Test
+    public void testLeastRecentlyCheckedScriptIsForgotten() throws ScriptException {
+        perlSyntaxChecker.checkSyntax("print 1;");
+        perlSyntaxChecker.checkSyntax("print 2;");
+        perlSyntaxChecker.checkSyntax("print 3;");
+        perlSyntaxChecker.checkSyntax("print 1;");
+
+        assertThat(factory.processCount, is(4));
+        assertThat(perlSyntaxChecker.size(), is(2));
+    }
+
+    @Test
+    public void testSlowCheckIsKilledAndNotKept() throws ScriptException {
+        PerlSyntaxChecker slowChecker = new PerlSyntaxChecker(factory, 2, 200);
+        long start = System.currentTimeMillis();
+
+        slowChecker.checkSyntax("BEGIN { sleep 30 } print 1;");
+
+        assertThat(System.currentTimeMillis() - start, lessThan(5000L));
+        assertThat(slowChecker.size(), is(0));
+    }
+
+    private static class CountingFactory implements PerlProcessBuilderFactory {
+        private int processCount;
+
+        @Override
+        public ProcessBuilder getProcessBuilder(String... command) {
+            processCount++;
+            return PerlSingletonPerlProcessBuilderFactory.getInstance().getProcessBuilder(command);
+        }
+    }
+}
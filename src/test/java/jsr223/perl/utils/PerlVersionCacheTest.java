@@ -0,0 +1,98 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package jsr223.perl.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+
+public class PerlVersionCacheTest {
+
+    private File cacheFile;
+
+    @After
+    public void deleteCacheFile() {
+        System.clearProperty(PerlVersionCache.VERSION_CACHE_FILE_PROPERTY);
+        if (cacheFile != null) {
+            cacheFile.delete();
+        }
+    }
+
+    @Test
+    public void testVersionIsReadFromCacheFile() throws Exception {
+        File perlBinary = PerlVersionCache.findPerlBinary();
+        Assume.assumeTrue(perlBinary != null);
+
+        cacheFile = File.createTempFile("perl-version-cache", ".properties");
+        Properties cachedVersions = new Properties();
+        cachedVersions.setProperty(perlBinary.getAbsolutePath() + "@" + perlBinary.lastModified(), "cached-version");
+        try (OutputStream output = new FileOutputStream(cacheFile)) {
+            cachedVersions.store(output, null);
+        }
+        System.setProperty(PerlVersionCache.VERSION_CACHE_FILE_PROPERTY, cacheFile.getAbsolutePath());
+
+        assertThat(new PerlVersionCache().resolvePerlVersion(), is("cached-version"));
+    }
+
+    @Test
+    public void testResolvedVersionIsWrittenToCacheFile() throws Exception {
+        File perlBinary = PerlVersionCache.findPerlBinary();
+        Assume.assumeTrue(perlBinary != null);
+
+        cacheFile = File.createTempFile("perl-version-cache", ".properties");
+        cacheFile.delete();
+        System.setProperty(PerlVersionCache.VERSION_CACHE_FILE_PROPERTY, cacheFile.getAbsolutePath());
+
+        String version = new PerlVersionCache().resolvePerlVersion();
+
+        Properties cachedVersions = new Properties();
+        try (InputStream input = new FileInputStream(cacheFile)) {
+            cachedVersions.load(input);
+        }
+        assertThat(cachedVersions.getProperty(perlBinary.getAbsolutePath() + "@" + perlBinary.lastModified()),
+                   is(version));
+    }
+
+    @Test
+    public void testVersionIsResolvedOnce() {
+        String version = PerlVersionCache.getPerlVersion();
+
+        assertThat(version, is(notNullValue()));
+        assertThat(PerlVersionCache.getPerlVersion(), is(version));
+    }
+}
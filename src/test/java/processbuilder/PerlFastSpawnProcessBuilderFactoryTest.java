@@ -0,0 +1,84 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package processbuilder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.util.Map;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+
+public class PerlFastSpawnProcessBuilderFactoryTest {
+
+    @Test
+    public void testMinimalEnvironmentKeepsListedVariablesOnly() {
+        PerlFastSpawnProcessBuilderFactory factory = new PerlFastSpawnProcessBuilderFactory(true, "PATH, HOME");
+
+        Map<String, String> environment = factory.getProcessBuilder("perl").environment();
+
+        for (String name : environment.keySet()) {
+            assertThat(name.equals("PATH") || name.equals("HOME"), is(true));
+        }
+        assertThat(environment.get("PATH"), is(System.getenv("PATH")));
+    }
+
+    @Test
+    public void testFullEnvironmentByDefault() {
+        PerlFastSpawnProcessBuilderFactory factory = new PerlFastSpawnProcessBuilderFactory(false, "PATH");
+
+        assertThat(factory.getProcessBuilder("perl").environment(), is(System.getenv()));
+    }
+
+    @Test
+    public void testStandardInputReadsNullDevice() {
+        Assume.assumeTrue(new File("/dev/null").exists());
+        PerlFastSpawnProcessBuilderFactory factory = new PerlFastSpawnProcessBuilderFactory(false, "");
+
+        ProcessBuilder processBuilder = factory.getProcessBuilder("perl");
+
+        assertThat(processBuilder.redirectInput().file(), is(new File("/dev/null")));
+    }
+
+    @Test
+    public void testOnlyLaunchMechanismsSupportedByJdkAreSelected() {
+        assertThat(PerlFastSpawnProcessBuilderFactory.getSupportedLaunchMechanism("POSIX_SPAWN", "Linux", 8),
+                   is(nullValue()));
+        assertThat(PerlFastSpawnProcessBuilderFactory.getSupportedLaunchMechanism("AUTO", "Linux", 8), is("VFORK"));
+        assertThat(PerlFastSpawnProcessBuilderFactory.getSupportedLaunchMechanism("auto", "Linux", 17),
+                   is("POSIX_SPAWN"));
+        assertThat(PerlFastSpawnProcessBuilderFactory.getSupportedLaunchMechanism("VFORK", "Mac OS X", 8),
+                   is(nullValue()));
+        assertThat(PerlFastSpawnProcessBuilderFactory.getSupportedLaunchMechanism("AUTO", "Mac OS X", 8),
+                   is("POSIX_SPAWN"));
+        assertThat(PerlFastSpawnProcessBuilderFactory.getSupportedLaunchMechanism("AUTO", "Windows 10", 8),
+                   is(nullValue()));
+    }
+}
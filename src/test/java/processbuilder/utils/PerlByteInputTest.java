@@ -0,0 +1,72 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package processbuilder.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.google.common.io.CharStreams;
+import com.google.common.io.Files;
+
+
+public class PerlByteInputTest {
+
+    @Test
+    public void testInputIsDecodedAsUtf8() throws IOException {
+        byte[] content = "café\n".getBytes(StandardCharsets.UTF_8);
+
+        try (PerlByteInput input = PerlByteInput.fromStream(new ByteArrayInputStream(content))) {
+            assertThat(CharStreams.toString(input), is("café\n"));
+        }
+    }
+
+    @Test
+    public void testFileIsOnlyReturnedForFileInput() throws IOException {
+        File file = File.createTempFile("perl-input", ".txt");
+        try {
+            Files.write("input".getBytes(StandardCharsets.UTF_8), file);
+            PerlByteInput input = PerlByteInput.fromFile(file);
+
+            assertThat(PerlByteInput.getFile(input), is(file));
+            assertThat(CharStreams.toString(input), is("input"));
+            assertThat(PerlByteInput.getFile(PerlByteInput.fromStream(new ByteArrayInputStream(new byte[0]))),
+                       is(nullValue()));
+            assertThat(PerlByteInput.getFile(new StringReader("input")), is(nullValue()));
+            assertThat(PerlByteInput.getFile(null), is(nullValue()));
+        } finally {
+            file.delete();
+        }
+    }
+}
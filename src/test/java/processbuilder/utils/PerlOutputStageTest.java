@@ -0,0 +1,158 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package processbuilder.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class PerlOutputStageTest {
+
+    private File spillDirectory;
+
+    private final FlushCountingWriter sink = new FlushCountingWriter();
+
+    @Before
+    public void createSpillDirectory() throws IOException {
+        spillDirectory = Files.createTempDirectory("jsr223-perl-output-test").toFile();
+    }
+
+    @After
+    public void deleteSpillDirectory() {
+        File[] files = spillDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        spillDirectory.delete();
+    }
+
+    @Test
+    public void testFullBatchIsForwardedUpToLastLineSeparator() throws IOException {
+        PerlOutputStage stage = createStage(16, 0, 0, 0, 1024, 1);
+
+        stage.write("first\nsecond\nthird");
+        assertThat(sink.toString(), is("first\nsecond\n"));
+        assertThat(sink.flushCount, is(1));
+
+        stage.close();
+        assertThat(sink.toString(), is("first\nsecond\nthird"));
+    }
+
+    @Test
+    public void testBatchIsForwardedOnFlushAfterWindow() throws Exception {
+        PerlOutputStage stage = createStage(1024, 0, 0, 0, 1024, 1);
+
+        stage.write("line\n");
+        stage.flush();
+        assertThat(sink.toString(), is("line\n"));
+
+        stage.close();
+        assertThat(sink.toString(), is("line\n"));
+    }
+
+    @Test
+    public void testRateLimitDropsCharacters() throws IOException {
+        PerlOutputStage stage = createStage(4, 0, 8, 0, 1024, 1);
+
+        stage.write("abcd\nefgh\nijkl\n");
+        stage.close();
+
+        assertThat(sink.toString(), startsWith("abcd\nefg"));
+        assertThat(sink.toString(), containsString("7 characters dropped by the output rate limit"));
+    }
+
+    @Test
+    public void testOutputAfterThresholdIsSpilledWithTailForwarded() throws IOException {
+        PerlOutputStage stage = createStage(8, 0, 0, 10, 4, 2);
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            output.append(i).append('\n');
+        }
+
+        stage.write(output.toString());
+        stage.close();
+
+        assertThat(stage.getSpilledCharacters(), is((long) output.length() - 10));
+        assertThat(sink.toString(), startsWith("0\n1\n2\n3\n4\n"));
+        assertThat(sink.toString(), containsString("characters written to " + spillDirectory.getPath()));
+        assertThat(sink.toString(), endsWith("\n99\n"));
+        assertThat(spillDirectory.listFiles().length, is(2));
+    }
+
+    @Test
+    public void testSpilledOutputWithoutTailIsForwardedWithNoticeOnly() throws IOException {
+        PerlOutputStage stage = createStage(8, 0, 0, 10, 0, 2);
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            output.append(i).append('\n');
+        }
+
+        stage.write(output.toString());
+        stage.close();
+
+        assertThat(stage.getSpilledCharacters(), is((long) output.length() - 10));
+        assertThat(sink.toString(), startsWith("0\n1\n2\n3\n4\n"));
+        assertThat(sink.toString(), containsString("characters written to " + spillDirectory.getPath()));
+        assertThat(sink.toString(), endsWith("* ...]\n"));
+    }
+
+    private PerlOutputStage createStage(int batchSize, long windowMillis, long rateLimit, long spillThreshold,
+            int tailSize, int spillFiles) {
+        return new PerlOutputStage(sink,
+                                   batchSize,
+                                   windowMillis,
+                                   rateLimit,
+                                   spillThreshold,
+                                   tailSize,
+                                   spillDirectory,
+                                   64,
+                                   spillFiles);
+    }
+
+    private static class FlushCountingWriter extends StringWriter {
+        private int flushCount;
+
+        @Override
+        public void flush() {
+            flushCount++;
+            super.flush();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package processbuilder.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+
+public class PerlProcessBuilderUtilitiesTest {
+
+    @Test
+    public void testPipeCopiesAllData() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            content.append("line ").append(i).append('\n');
+        }
+        StringWriter sink = new StringWriter();
+
+        PerlProcessBuilderUtilities.pipe(new StringReader(content.toString()), sink);
+
+        assertThat(sink.toString(), is(content.toString()));
+    }
+
+    @Test
+    public void testLineFlushPolicyFlushesChunksWithLineSeparator() throws IOException {
+        FlushCountingWriter sink = new FlushCountingWriter();
+
+        PerlProcessBuilderUtilities.pipe(new StringReader("no line separator"), sink, PerlFlushPolicy.LINE);
+        assertThat(sink.flushCount, is(1));
+
+        PerlProcessBuilderUtilities.pipe(new StringReader("line\n"), sink, PerlFlushPolicy.LINE);
+        assertThat(sink.flushCount, is(3));
+    }
+
+    @Test
+    public void testExitFlushPolicyFlushesOnce() throws IOException {
+        FlushCountingWriter sink = new FlushCountingWriter();
+
+        PerlProcessBuilderUtilities.pipe(new StringReader("first\nsecond\n"), sink, PerlFlushPolicy.EXIT);
+
+        assertThat(sink.flushCount, is(1));
+        assertThat(sink.toString(), is("first\nsecond\n"));
+    }
+
+    @Test
+    public void testProcessInputIsClosedAtEndOfSource() throws Exception {
+        Assume.assumeTrue(System.getProperty("os.name").toLowerCase().startsWith("lin"));
+
+        Process process = new ProcessBuilder("cat").start();
+        new PerlProcessBuilderUtilities().attachStreamsToProcess(process,
+                                                                 new StringWriter(),
+                                                                 new StringWriter(),
+                                                                 new StringReader("input"));
+
+        // cat only exits once it reads the end of its input
+        assertThat(process.waitFor(10, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void testByteInputIsCopiedToProcessInput() throws Exception {
+        Assume.assumeTrue(System.getProperty("os.name").toLowerCase().startsWith("lin"));
+        byte[] content = new byte[] { (byte) 0xff, (byte) 0xfe, 0, 'a' };
+
+        Process process = new ProcessBuilder("od", "-A", "n", "-t", "u1").start();
+        StringWriter output = new StringWriter();
+        PerlByteInput input = PerlByteInput.fromStream(new ByteArrayInputStream(content));
+        PerlProcessStreams processStreams = new PerlProcessBuilderUtilities().attachStreamsToProcess(process,
+                                                                                                     output,
+                                                                                                     null,
+                                                                                                     input);
+
+        assertThat(process.waitFor(10, TimeUnit.SECONDS), is(true));
+        assertThat(processStreams.awaitOutput(10, TimeUnit.SECONDS), is(true));
+        assertThat(output.toString().trim().split("\\s+"), is(new String[] { "255", "254", "0", "97" }));
+    }
+
+    @Test
+    public void testOutputBytesAreCopiedToByteSink() throws Exception {
+        Assume.assumeTrue(System.getProperty("os.name").toLowerCase().startsWith("lin"));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        StringWriter writer = new StringWriter();
+
+        Process process = new ProcessBuilder("printf", "\\377\\000\\351").start();
+        PerlStreamSinks sinks = new PerlStreamSinks(output, null, StandardCharsets.UTF_8);
+        PerlProcessStreams processStreams = new PerlProcessBuilderUtilities().attachStreamsToProcess(process,
+                                                                                                     writer,
+                                                                                                     null,
+                                                                                                     null,
+                                                                                                     sinks);
+
+        assertThat(process.waitFor(10, TimeUnit.SECONDS), is(true));
+        assertThat(processStreams.awaitOutput(10, TimeUnit.SECONDS), is(true));
+        assertThat(output.toByteArray(), is(new byte[] { (byte) 0xff, 0, (byte) 0xe9 }));
+        assertThat(writer.toString(), is(""));
+    }
+
+    @Test
+    public void testOutputIsDecodedWithCharsetOfSinks() throws Exception {
+        Assume.assumeTrue(System.getProperty("os.name").toLowerCase().startsWith("lin"));
+        StringWriter writer = new StringWriter();
+
+        Process process = new ProcessBuilder("printf", "caf\\351").start();
+        PerlStreamSinks sinks = new PerlStreamSinks(null, null, StandardCharsets.ISO_8859_1);
+        PerlProcessStreams processStreams = new PerlProcessBuilderUtilities().attachStreamsToProcess(process,
+                                                                                                     writer,
+                                                                                                     null,
+                                                                                                     null,
+                                                                                                     sinks);
+
+        assertThat(process.waitFor(10, TimeUnit.SECONDS), is(true));
+        assertThat(processStreams.awaitOutput(10, TimeUnit.SECONDS), is(true));
+        assertThat(writer.toString(), is("caf\u00e9"));
+    }
+
+    @Test
+    public void testSourceIsPipedToProcessInputUntilProcessExits() throws Exception {
+        Assume.assumeTrue(System.getProperty("os.name").toLowerCase().startsWith("lin"));
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            content.append("line ").append(i).append('\n');
+        }
+
+        // head stops reading after the first line, the rest of the source is not written
+        Process process = new ProcessBuilder("head", "-n", "1").start();
+        PerlProcessBuilderUtilities.pipeToProcessInput(new StringReader(content.toString()), process);
+
+        assertThat(process.waitFor(10, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void testAwaitOutputReturnsOnceOutputIsCompletelyPiped() throws Exception {
+        Assume.assumeTrue(System.getProperty("os.name").toLowerCase().startsWith("lin"));
+
+        StringWriter output = new StringWriter();
+        Process process = new ProcessBuilder("seq", "1", "100000").start();
+        PerlProcessStreams processStreams = new PerlProcessBuilderUtilities().attachStreamsToProcess(process,
+                                                                                                     output,
+                                                                                                     null,
+                                                                                                     null);
+        process.waitFor();
+
+        assertThat(processStreams.awaitOutput(10, TimeUnit.SECONDS), is(true));
+        assertThat(output.toString().endsWith("\n99999\n100000\n"), is(true));
+        assertThat(processStreams.getDrainTimeMillis() >= 0, is(true));
+    }
+
+    @Test
+    public void testAwaitOutputTimesOutWhenOutputIsHeldOpen() throws Exception {
+        Assume.assumeTrue(System.getProperty("os.name").toLowerCase().startsWith("lin"));
+
+        // The background child keeps the output open after the shell exited. The shell lingers a little so that
+        // the pump is reading before the exit, otherwise the JDK drains and closes the stream on exit.
+        Process process = new ProcessBuilder("sh", "-c", "sleep 5 & sleep 0.5").start();
+        PerlProcessStreams processStreams = new PerlProcessBuilderUtilities().attachStreamsToProcess(process,
+                                                                                                     new StringWriter(),
+                                                                                                     null,
+                                                                                                     null);
+        process.waitFor();
+
+        assertThat(processStreams.awaitOutput(100, TimeUnit.MILLISECONDS), is(false));
+    }
+
+    private static class FlushCountingWriter extends StringWriter {
+        private int flushCount;
+
+        @Override
+        public void flush() {
+            flushCount++;
+            super.flush();
+        }
+    }
+}
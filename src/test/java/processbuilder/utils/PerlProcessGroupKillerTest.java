@@ -0,0 +1,90 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package processbuilder.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import jsr223.perl.utils.PerlVersionGetter;
+import processbuilder.PerlProcessBuilderFactory;
+import processbuilder.PerlSingletonPerlProcessBuilderFactory;
+
+
+public class PerlProcessGroupKillerTest {
+
+    private final PerlProcessBuilderFactory factory = PerlSingletonPerlProcessBuilderFactory.getInstance();
+
+    private final PerlProcessGroupKiller killer = new PerlProcessGroupKiller(factory);
+
+    @Before
+    public void assumeSetsidAndPerl() {
+        Assume.assumeTrue(new File("/usr/bin/setsid").exists() || new File("/bin/setsid").exists());
+        String perlVersion = new PerlVersionGetter().getPerlVersion();
+        Assume.assumeTrue(!PerlVersionGetter.PERL_VERSION_IF_NOT_INSTALLED.equals(perlVersion));
+    }
+
+    @Test
+    public void testGroupWithoutChildrenHasNoSurvivors() throws Exception {
+        Process leader = factory.getProcessBuilder("setsid", "perl", "-e", "1").start();
+        leader.waitFor();
+        killer.track(leader);
+
+        assertThat(PerlProcessGroupKiller.getPid(leader), greaterThan(0L));
+        assertThat(killer.hasSurvivors(), is(false));
+    }
+
+    @Test
+    public void testChildLeftInGroupIsKilled() throws Exception {
+        Process leader = factory.getProcessBuilder("setsid",
+                                                   "perl",
+                                                   "-e",
+                                                   "$| = 1; if (my $pid = fork) { print \"$pid\\n\"; exit 0 } " +
+                                                         "close STDOUT; sleep 30;")
+                                .start();
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(leader.getInputStream()))) {
+            assertThat(Long.parseLong(output.readLine()), greaterThan(0L));
+        }
+        leader.waitFor();
+        killer.track(leader);
+        assertThat(killer.hasSurvivors(), is(true));
+
+        killer.kill();
+
+        for (int i = 0; i < 100 && killer.hasSurvivors(); i++) {
+            Thread.sleep(50);
+        }
+        assertThat(killer.hasSurvivors(), is(false));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package processbuilder.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+
+public class PerlProcessRegistryTest {
+
+    private final PerlProcessRegistry registry = new PerlProcessRegistry();
+
+    private Process first;
+
+    private Process second;
+
+    @After
+    public void destroyProcesses() {
+        for (Process process : new Process[] { first, second }) {
+            if (process != null) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    @Test
+    public void testRunningProcessesAreListedOldestFirst() throws Exception {
+        Assume.assumeTrue(System.getProperty("os.name").toLowerCase().startsWith("lin"));
+        first = new ProcessBuilder("sleep", "30").start();
+        PerlProcessRegistry.Registration firstRegistration = registry.register("Job1Task1", first, null, null);
+        Thread.sleep(10);
+        second = new ProcessBuilder("sleep", "30").start();
+        registry.register("Job1Task2", second, null, null);
+
+        List<PerlProcessRegistry.Registration> runningProcesses = registry.getRunningProcesses();
+
+        assertThat(runningProcesses.size(), is(2));
+        assertThat(runningProcesses.get(0).getName(), is("Job1Task1"));
+        assertThat(runningProcesses.get(1).getName(), is("Job1Task2"));
+        assertThat(runningProcesses.get(0).getAgeMillis(), greaterThanOrEqualTo(10L));
+
+        firstRegistration.unregister();
+
+        assertThat(registry.getRunningProcesses().size(), is(1));
+        assertThat(registry.getRunningProcesses().get(0).getName(), is("Job1Task2"));
+    }
+
+    @Test
+    public void testTearDownDestroysRegisteredProcesses() throws Exception {
+        Assume.assumeTrue(System.getProperty("os.name").toLowerCase().startsWith("lin"));
+        first = new ProcessBuilder("sleep", "30").start();
+        second = new ProcessBuilder("sleep", "30").start();
+        registry.register("Job1Task1", first, null, null);
+        registry.register("Job1Task2", second, null, null).unregister();
+
+        registry.tearDown(5000);
+
+        assertThat(first.isAlive(), is(false));
+        assertThat(second.waitFor(100, TimeUnit.MILLISECONDS), is(false));
+    }
+}
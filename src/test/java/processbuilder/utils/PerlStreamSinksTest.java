@@ -0,0 +1,114 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package processbuilder.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+
+import org.junit.After;
+import org.junit.Test;
+import org.ow2.proactive.scheduler.common.SchedulerConstants;
+
+
+public class PerlStreamSinksTest {
+
+    @After
+    public void clearProperties() {
+        System.clearProperty(PerlStreamSinks.CHARSET_PROPERTY);
+    }
+
+    @Test
+    public void testNoBindingsHaveNoSinkAndTheConfiguredCharset() {
+        System.setProperty(PerlStreamSinks.CHARSET_PROPERTY, "UTF-16");
+
+        PerlStreamSinks sinks = PerlStreamSinks.fromBindings(null);
+
+        assertThat(sinks.hasOutputSink(), is(false));
+        assertThat(sinks.hasErrorSink(), is(false));
+        assertThat(sinks.getCharset(), is(StandardCharsets.UTF_16));
+    }
+
+    @Test
+    public void testStreamAndFileSinksAreRead() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        File error = new File("error.log");
+        Bindings bindings = new SimpleBindings();
+        bindings.put(PerlStreamSinks.OUTPUT_STREAM_BINDING, output);
+        bindings.put(PerlStreamSinks.ERROR_STREAM_BINDING, error);
+
+        PerlStreamSinks sinks = PerlStreamSinks.fromBindings(bindings);
+
+        assertThat(sinks.getOutputStream(), is((Object) output));
+        assertThat(sinks.getErrorStream(), is(nullValue()));
+        assertThat(sinks.hasErrorSink(), is(true));
+
+        ProcessBuilder processBuilder = new ProcessBuilder("perl");
+        sinks.redirect(processBuilder);
+        assertThat(processBuilder.redirectOutput(), is(ProcessBuilder.Redirect.PIPE));
+        assertThat(processBuilder.redirectError().file(), is(error));
+    }
+
+    @Test
+    public void testSinkOfAnotherTypeIsIgnored() {
+        Bindings bindings = new SimpleBindings();
+        bindings.put(PerlStreamSinks.OUTPUT_STREAM_BINDING, "output.log");
+
+        assertThat(PerlStreamSinks.fromBindings(bindings).hasOutputSink(), is(false));
+    }
+
+    @Test
+    public void testCharsetIsReadFromBindingThenVariables() {
+        Map<String, Serializable> variables = new HashMap<>();
+        variables.put(PerlStreamSinks.CHARSET_BINDING, "ISO-8859-1");
+        Bindings bindings = new SimpleBindings();
+        bindings.put(SchedulerConstants.VARIABLES_BINDING_NAME, variables);
+
+        assertThat(PerlStreamSinks.fromBindings(bindings).getCharset(), is(StandardCharsets.ISO_8859_1));
+
+        bindings.put(PerlStreamSinks.CHARSET_BINDING, StandardCharsets.UTF_16BE);
+        assertThat(PerlStreamSinks.fromBindings(bindings).getCharset(), is(StandardCharsets.UTF_16BE));
+    }
+
+    @Test
+    public void testUnknownCharsetFallsBackToDefaultCharset() {
+        Bindings bindings = new SimpleBindings();
+        bindings.put(PerlStreamSinks.CHARSET_BINDING, "no-such-charset");
+
+        assertThat(PerlStreamSinks.fromBindings(bindings).getCharset(), is(Charset.defaultCharset()));
+    }
+}